@@ -0,0 +1,290 @@
+package com.painter.web_painter.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import com.painter.web_painter.model.*;
+
+/**
+ * Compact binary drawing format (".bin"), version 1:
+ *
+ * <pre>
+ * "WPB" version:u8 count:varint shape*
+ * shape    = kind:u8 id:str color:dict fillColor:dict x:f64 y:f64 strokeWidth:f64 fields
+ * fields   = the subtype's doubles as f64, or for freehand: n:varint mode:u8 points
+ * points   = mode 0: n * (x:f64 y:f64)
+ *            mode 1: n * (dx:zigzag-varint dy:zigzag-varint) in 1/256 px steps from the previous point
+ * str      = 0 for null, else (byteLength + 1):varint UTF-8 bytes
+ * dict     = 0 for null, i for the i-th color seen so far, or (seen + 1) followed by a new str
+ * </pre>
+ *
+ * Everything except freehand coordinates is stored verbatim, and mode 1 is only used when every
+ * coordinate of the stroke is an exact multiple of 1/256, so a save/load round trip is lossless.
+ */
+final class BinaryDrawingCodec {
+    static final int VERSION = 1;
+    private static final byte[] MAGIC = { 'W', 'P', 'B' };
+    private static final double SCALE = 256; // power of two: scaling is exact
+    private static final double MAX_FIXED = 1L << 52;
+
+    private static final String[] KINDS = { "rectangle", "square", "circle", "ellipse", "triangle", "line",
+            "freehand" };
+
+    private BinaryDrawingCodec() {
+    }
+
+    // --- WRITE ---
+    static void write(List<Shape> shapes, OutputStream target) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(target, 1 << 16));
+        Map<String, Integer> colors = new HashMap<>();
+        out.write(MAGIC);
+        out.writeByte(VERSION);
+        writeVarint(out, shapes.size());
+        for (Shape s : shapes)
+            writeShape(out, s, colors);
+        out.flush();
+    }
+
+    // One shape; colors is the dictionary shared by everything written to the same stream
+    static void writeShape(DataOutputStream out, Shape s, Map<String, Integer> colors) throws IOException {
+        out.writeByte(kindOf(s));
+        writeString(out, s.getId());
+        writeColor(out, colors, s.getColor());
+        writeColor(out, colors, s.getFillColor());
+        out.writeDouble(s.getX());
+        out.writeDouble(s.getY());
+        out.writeDouble(s.getStrokeWidth());
+        if (s instanceof Rectangle) {
+            out.writeDouble(((Rectangle) s).getWidth());
+            out.writeDouble(((Rectangle) s).getHeight());
+        } else if (s instanceof Square) {
+            out.writeDouble(((Square) s).getSideLength());
+        } else if (s instanceof Circle) {
+            out.writeDouble(((Circle) s).getRadius());
+        } else if (s instanceof Ellipse) {
+            out.writeDouble(((Ellipse) s).getRadiusX());
+            out.writeDouble(((Ellipse) s).getRadiusY());
+        } else if (s instanceof Triangle) {
+            Triangle t = (Triangle) s;
+            out.writeDouble(t.getX2());
+            out.writeDouble(t.getY2());
+            out.writeDouble(t.getX3());
+            out.writeDouble(t.getY3());
+        } else if (s instanceof LineSegment) {
+            out.writeDouble(((LineSegment) s).getX2());
+            out.writeDouble(((LineSegment) s).getY2());
+        } else if (s instanceof FreehandShape) {
+            writePoints(out, ((FreehandShape) s).getPoints());
+        }
+    }
+
+    private static int kindOf(Shape s) {
+        if (s instanceof Rectangle)
+            return 0;
+        if (s instanceof Square)
+            return 1;
+        if (s instanceof Circle)
+            return 2;
+        if (s instanceof Ellipse)
+            return 3;
+        if (s instanceof Triangle)
+            return 4;
+        if (s instanceof LineSegment)
+            return 5;
+        if (s instanceof FreehandShape)
+            return 6;
+        throw new IllegalArgumentException("Unknown shape type " + s.getClass().getSimpleName());
+    }
+
+    private static void writePoints(DataOutputStream out, PackedPoints points) throws IOException {
+        int n = points.size();
+        writeVarint(out, n);
+        boolean fixed = true;
+        for (int i = 0; i < n && fixed; i++)
+            fixed = isFixed(points.getX(i)) && isFixed(points.getY(i));
+        out.writeByte(fixed ? 1 : 0);
+        if (!fixed) {
+            for (int i = 0; i < n; i++) {
+                out.writeDouble(points.getX(i));
+                out.writeDouble(points.getY(i));
+            }
+            return;
+        }
+        long px = 0, py = 0;
+        for (int i = 0; i < n; i++) {
+            long x = (long) (points.getX(i) * SCALE);
+            long y = (long) (points.getY(i) * SCALE);
+            writeVarint(out, zigzag(x - px));
+            writeVarint(out, zigzag(y - py));
+            px = x;
+            py = y;
+        }
+    }
+
+    // Exact in fixed point: a multiple of 1/SCALE, not -0.0 and small enough not to overflow deltas
+    private static boolean isFixed(double v) {
+        double q = v * SCALE;
+        return q == Math.rint(q) && Math.abs(q) < MAX_FIXED && !(v == 0 && 1 / v < 0);
+    }
+
+    private static void writeColor(DataOutputStream out, Map<String, Integer> colors, String color)
+            throws IOException {
+        if (color == null) {
+            writeVarint(out, 0);
+            return;
+        }
+        Integer index = colors.get(color);
+        if (index != null) {
+            writeVarint(out, index);
+            return;
+        }
+        colors.put(color, colors.size() + 1);
+        writeVarint(out, colors.size());
+        writeString(out, color);
+    }
+
+    static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            writeVarint(out, 0);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length + 1L);
+        out.write(bytes);
+    }
+
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    static void writeVarint(DataOutputStream out, long v) throws IOException {
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    // --- READ ---
+    // beforePoints is called with the point count of each stroke before its points are allocated,
+    // so limits can reject oversized input without reading it
+    static void read(InputStream source, Consumer<Long> beforePoints, Consumer<Shape> sink) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(source, 1 << 16));
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (magic[0] != MAGIC[0] || magic[1] != MAGIC[1] || magic[2] != MAGIC[2])
+            throw new IllegalArgumentException("Not a binary drawing");
+        int version = in.readUnsignedByte();
+        if (version != VERSION)
+            throw new IllegalArgumentException("Unsupported binary drawing version " + version);
+        List<String> colors = new ArrayList<>();
+        long count = readVarint(in);
+        for (long i = 0; i < count; i++)
+            sink.accept(readShape(in, colors, beforePoints));
+    }
+
+    static Shape readShape(DataInputStream in, List<String> colors, Consumer<Long> beforePoints) throws IOException {
+        int kind = in.readUnsignedByte();
+        if (kind >= KINDS.length)
+            throw new IllegalArgumentException("Unknown shape kind " + kind);
+        String id = readString(in);
+        String color = readColor(in, colors);
+        String fillColor = readColor(in, colors);
+        double x = in.readDouble(), y = in.readDouble(), strokeWidth = in.readDouble();
+        Shape s;
+        switch (kind) {
+            case 0 -> s = new Rectangle(x, y, in.readDouble(), in.readDouble(), color, fillColor);
+            case 1 -> s = new Square(x, y, in.readDouble(), color, fillColor);
+            case 2 -> s = new Circle(x, y, in.readDouble(), color, fillColor);
+            case 3 -> s = new Ellipse(x, y, in.readDouble(), in.readDouble(), color, fillColor);
+            case 4 -> s = new Triangle(x, y, in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble(),
+                    color, fillColor);
+            case 5 -> s = new LineSegment(x, y, in.readDouble(), in.readDouble(), color);
+            default -> s = new FreehandShape(readPoints(in, beforePoints), color, fillColor);
+        }
+        // constructors may derive these, so set the stored values explicitly
+        s.setId(id);
+        s.setX(x);
+        s.setY(y);
+        s.setColor(color);
+        s.setFillColor(fillColor);
+        s.setStrokeWidth(strokeWidth);
+        return s;
+    }
+
+    private static PackedPoints readPoints(DataInputStream in, Consumer<Long> beforePoints) throws IOException {
+        long n = readVarint(in);
+        beforePoints.accept(n);
+        if (n > Integer.MAX_VALUE / 2)
+            throw new IllegalArgumentException("Stroke has too many points");
+        int mode = in.readUnsignedByte();
+        // the count is untrusted until the points are actually there, so let add() grow past a small start
+        PackedPoints points = new PackedPoints((int) Math.min(n, 4096));
+        if (mode == 0) {
+            for (int i = 0; i < n; i++)
+                points.add(in.readDouble(), in.readDouble());
+            return points;
+        }
+        if (mode != 1)
+            throw new IllegalArgumentException("Unknown point encoding " + mode);
+        long x = 0, y = 0;
+        for (int i = 0; i < n; i++) {
+            x += unzigzag(readVarint(in));
+            y += unzigzag(readVarint(in));
+            points.add(x / SCALE, y / SCALE);
+        }
+        return points;
+    }
+
+    private static String readColor(DataInputStream in, List<String> colors) throws IOException {
+        long code = readVarint(in);
+        if (code == 0)
+            return null;
+        if (code <= colors.size())
+            return colors.get((int) code - 1);
+        if (code != colors.size() + 1)
+            throw new IllegalArgumentException("Bad color reference " + code);
+        String color = readString(in);
+        colors.add(color);
+        return color;
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        long len = readVarint(in);
+        if (len == 0)
+            return null;
+        if (len - 1 > 1 << 16)
+            throw new IllegalArgumentException("String too long");
+        byte[] bytes = new byte[(int) len - 1];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    static long readVarint(DataInputStream in) throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0)
+                throw new EOFException();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return v;
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+}
@@ -0,0 +1,230 @@
+package com.painter.web_painter.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import com.painter.web_painter.model.ChangeSet;
+import com.painter.web_painter.model.LoadProgress;
+import com.painter.web_painter.model.Shape;
+
+/**
+ * State of one board: its shapes, undo/redo history and the per-client selection/clipboard.
+ * Concurrency model: one writer at a time holds the board lock and mutates the store, history and
+ * client states; after each write a new {@link BoardSnapshot} is published through a volatile field,
+ * so plain reads never take the lock and never see a half-applied change. Each client's selection is
+ * published the same way, as ids that readers resolve against the snapshot.
+ */
+public class Board {
+    static final int MAX_CLIENTS = 1024;
+
+    private final String id;
+    private final ShapeStore shapes = new ShapeStore();
+    private final ShapeJsonCache json = new ShapeJsonCache();
+    private final BoardHistory history;
+    private final BoardTimeline timeline;
+    private final Map<String, Selection> selections = new ConcurrentHashMap<>(); // written under the lock
+    private final Map<String, ClientState> clients = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ClientState> eldest) {
+            if (size() <= MAX_CLIENTS)
+                return false;
+            selections.remove(eldest.getKey());
+            return true;
+        }
+    }; // guarded by lock, least recently used first
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile BoardSnapshot snapshot;
+    private volatile long lastAccess = System.currentTimeMillis();
+    private volatile LoadProgress loadProgress; // latest import, polled while a large upload is parsed
+    private boolean retired = false; // guarded by lock
+    private BoardJournal journal; // null when journaling is off; appended to under the lock
+    private final DirtyRegions dirtyRegions;
+
+    // What one client has selected/copied on this board; guarded by the board lock. Only the
+    // MAX_CLIENTS most recently active clients are kept: one that comes back after being dropped
+    // starts with nothing selected, like a client the board has never seen
+    public static class ClientState {
+        String selectedShapeId = null;
+        Set<String> selectedIds = new LinkedHashSet<>(); // marquee/lasso selection, bottom to top
+        String clipboardShapeId = null;
+        Shape moveOrigin = null; // selected shape as it was when the drag started
+        long moveVersion; // board version when the drag started
+    }
+
+    // A client's selection as last published: the single selected shape and the marquee/lasso ids
+    public record Selection(String shapeId, List<String> ids) {
+        static final Selection NONE = new Selection(null, List.of());
+    }
+
+    public Board(String id, long historyMaxBytes, BoardTimeline.Settings timeline) {
+        this.id = id;
+        this.history = new BoardHistory(historyMaxBytes);
+        this.timeline = new BoardTimeline(id, timeline);
+        ShapeList empty = shapes.list();
+        this.snapshot = new BoardSnapshot(shapes.getVersion(), empty, json);
+        this.dirtyRegions = new DirtyRegions(shapes.getVersion());
+        this.timeline.record(empty.changesSince(Long.MIN_VALUE), empty);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public ShapeStore getShapes() {
+        return shapes;
+    }
+
+    public BoardHistory getHistory() {
+        return history;
+    }
+
+    public BoardTimeline getTimeline() {
+        return timeline;
+    }
+
+    // Called under the lock
+    public ClientState client(String clientId) {
+        return clients.computeIfAbsent(clientId, k -> new ClientState());
+    }
+
+    public void lock() {
+        lock.lock();
+    }
+
+    public boolean tryLock() {
+        return lock.tryLock();
+    }
+
+    public void unlock() {
+        lock.unlock();
+    }
+
+    // True when the current writer re-entered the lock (a batch running regular operations);
+    // only the outermost one publishes
+    public boolean isNested() {
+        return lock.getHoldCount() > 1;
+    }
+
+    // Called by the writer before releasing the lock; a no-op when nothing changed.
+    // The delta since the last published version is what goes into the timeline and the journal. It is
+    // journaled first: if that fails nothing is published and the store and history are put back as
+    // last published, so readers and watchers never see a change that isn't durable.
+    public void publish() {
+        if (snapshot.version() == shapes.getVersion()) {
+            history.checkpoint();
+            return;
+        }
+        ShapeList list = shapes.list();
+        ChangeSet changes = list.changesSince(snapshot.version());
+        if (journal != null) {
+            try {
+                journal.append(changes, shapes);
+            } catch (IOException e) {
+                rollBack(changes);
+                throw new UncheckedIOException("Could not journal board " + id, e);
+            } catch (RuntimeException e) {
+                rollBack(changes);
+                throw e;
+            }
+        }
+        history.checkpoint();
+        dirtyRegions.record(shapes.getVersion(), shapes.drainDirty());
+        snapshot = new BoardSnapshot(shapes.getVersion(), list, json);
+        timeline.record(changes, list);
+    }
+
+    // Restores every shape the unpublished changes touched as the published snapshot has it (all of them
+    // after a full delta, which lists no deletions) and takes back what the change recorded for undo. The
+    // store's version still moves on, so the next publish journals those shapes again, unchanged.
+    private void rollBack(ChangeSet changes) {
+        history.revert();
+        ShapeList published = (ShapeList) snapshot.shapes();
+        if (changes.full()) {
+            shapes.clear();
+            for (int i = 0; i < published.size(); i++)
+                shapes.insert(published.get(i), published.z(i));
+            return;
+        }
+        Set<String> touched = new HashSet<>(changes.deleted());
+        for (ChangeSet.Upsert u : changes.upserts())
+            touched.add(u.shape().getId());
+        for (String shapeId : touched)
+            shapes.remove(shapeId);
+        for (int i = 0; i < published.size(); i++)
+            if (touched.contains(published.id(i)))
+                shapes.insert(published.get(i), published.z(i));
+    }
+
+    public DirtyRegions getDirtyRegions() {
+        return dirtyRegions;
+    }
+
+    BoardJournal getJournal() {
+        return journal;
+    }
+
+    void setJournal(BoardJournal journal) {
+        this.journal = journal;
+    }
+
+    public BoardSnapshot snapshot() {
+        return snapshot;
+    }
+
+    // Called by the writer before releasing the lock, after publish(); skipped when nothing changed
+    public void publishSelection(String clientId, ClientState client) {
+        if (!sameSelection(selections.getOrDefault(clientId, Selection.NONE), client))
+            selections.put(clientId, new Selection(client.selectedShapeId, List.copyOf(client.selectedIds)));
+    }
+
+    private static boolean sameSelection(Selection published, ClientState client) {
+        if (!Objects.equals(published.shapeId(), client.selectedShapeId)
+                || published.ids().size() != client.selectedIds.size())
+            return false;
+        Iterator<String> ids = published.ids().iterator();
+        for (String id : client.selectedIds)
+            if (!id.equals(ids.next()))
+                return false;
+        return true;
+    }
+
+    // What the client had selected when its last write was published; lock-free
+    public Selection selection(String clientId) {
+        return selections.getOrDefault(clientId, Selection.NONE);
+    }
+
+    // Set once the board was passivated; writers that still hold a reference must fetch it again
+    public boolean isRetired() {
+        return retired;
+    }
+
+    public void retire() {
+        retired = true;
+        timeline.discard();
+    }
+
+    public void touch() {
+        lastAccess = System.currentTimeMillis();
+    }
+
+    public long getLastAccess() {
+        return lastAccess;
+    }
+
+    public LoadProgress getLoadProgress() {
+        return loadProgress;
+    }
+
+    public void setLoadProgress(LoadProgress loadProgress) {
+        this.loadProgress = loadProgress;
+    }
+}
@@ -0,0 +1,153 @@
+package com.painter.web_painter.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.painter.web_painter.model.ChangeSet;
+
+/**
+ * Pushes board changes to read-only viewers. Every tick (painter.watch.tick-ms) each watched board's
+ * published version is compared with what each viewer was sent; a viewer that is behind gets one
+ * {@link ChangeSet} (the ?since= delta, a full resync the first time) that brings it to the latest version.
+ * Writers are never involved and never waited for: each fan-out takes the published snapshot once and
+ * builds every update from it (deltas from its frozen change log, resyncs from its shapes), so all viewers
+ * of a tick are brought to the same version. Viewers that were sent the same version share one serialized
+ * message. Fan-out and sends run on virtual threads, with at most one
+ * send in flight per viewer: a slow viewer is skipped while its send is pending and then gets a single
+ * delta covering everything it missed, so its updates coalesce instead of queueing up.
+ */
+@Component
+public class BoardBroadcaster {
+    private static final Logger log = LoggerFactory.getLogger(BoardBroadcaster.class);
+
+    // Receives the JSON of each update; may block, it runs on its own virtual thread
+    public interface Viewer {
+        void send(String json) throws IOException;
+    }
+
+    private static final class Watcher {
+        final Viewer viewer;
+        final AtomicBoolean sending = new AtomicBoolean();
+        volatile long seen = Long.MIN_VALUE; // version of the last update delivered
+
+        Watcher(Viewer viewer) {
+            this.viewer = viewer;
+        }
+    }
+
+    // Viewers of one board; busy while a fan-out for it runs
+    private static final class Audience {
+        final Map<Viewer, Watcher> watchers = new ConcurrentHashMap<>();
+        final AtomicBoolean busy = new AtomicBoolean();
+    }
+
+    private record Update(long version, String json) {
+    }
+
+    private final PaintService paintService;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<String, Audience> audiences = new ConcurrentHashMap<>();
+    private final ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor();
+    private final int maxViewers;
+
+    public BoardBroadcaster(PaintService paintService,
+            @Value("${painter.watch.max-viewers:1000}") int maxViewers) {
+        this.paintService = paintService;
+        this.maxViewers = maxViewers;
+    }
+
+    // The viewer gets the whole board on the next tick and every change after that. False if the board
+    // already has maxViewers viewers; an invalid board id throws IllegalArgumentException.
+    public boolean subscribe(String boardId, Viewer viewer) {
+        paintService.getVersion(BoardSession.of(boardId, null)); // validates and loads the board
+        AtomicBoolean added = new AtomicBoolean();
+        audiences.compute(boardId, (k, audience) -> {
+            if (audience == null)
+                audience = new Audience();
+            if (audience.watchers.size() < maxViewers) {
+                audience.watchers.put(viewer, new Watcher(viewer));
+                added.set(true);
+            }
+            return audience;
+        });
+        return added.get();
+    }
+
+    public void unsubscribe(String boardId, Viewer viewer) {
+        audiences.computeIfPresent(boardId, (k, audience) -> {
+            audience.watchers.remove(viewer);
+            return audience.watchers.isEmpty() ? null : audience;
+        });
+    }
+
+    public int getViewerCount(String boardId) {
+        Audience audience = audiences.get(boardId);
+        return audience == null ? 0 : audience.watchers.size();
+    }
+
+    // Only dispatches: a board whose previous fan-out is still running is skipped this time
+    @Scheduled(fixedDelayString = "${painter.watch.tick-ms:33}")
+    public void tick() {
+        audiences.forEach((boardId, audience) -> {
+            if (audience.busy.compareAndSet(false, true))
+                threads.execute(() -> {
+                    try {
+                        fanOut(boardId, audience);
+                    } catch (RuntimeException e) {
+                        log.warn("Could not broadcast board {}", boardId, e);
+                    } finally {
+                        audience.busy.set(false);
+                    }
+                });
+        });
+    }
+
+    private void fanOut(String boardId, Audience audience) {
+        BoardSnapshot snapshot = paintService.getSnapshot(BoardSession.of(boardId, null));
+        Map<Long, Update> updates = new HashMap<>(); // by the version the viewers were last sent
+        for (Watcher w : audience.watchers.values()) {
+            if (w.seen == snapshot.version() || !w.sending.compareAndSet(false, true))
+                continue;
+            Update update = updates.computeIfAbsent(w.seen, since -> update(snapshot, since));
+            threads.execute(() -> send(w, update));
+        }
+    }
+
+    private Update update(BoardSnapshot snapshot, long since) {
+        ChangeSet changes = paintService.getChangesSince(snapshot, since);
+        try {
+            return new Update(changes.version(), mapper.writeValueAsString(changes));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void send(Watcher w, Update update) {
+        try {
+            w.viewer.send(update.json());
+            w.seen = update.version();
+        } catch (IOException | RuntimeException e) {
+            // Viewer went away; whoever subscribed it unsubscribes it when it closes
+        } finally {
+            w.sending.set(false);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        threads.shutdownNow();
+    }
+}
@@ -0,0 +1,156 @@
+package com.painter.web_painter.Service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Undo/redo stacks of {@link HistoryEntry} deltas with a cap on retained memory.
+ * When the budget is exceeded the oldest undo entries are dropped first; the newest one is always kept.
+ * Every stack operation since the last {@link #checkpoint} also leaves its inverse behind, so the board
+ * can {@link #revert} the history of a change it could not publish.
+ */
+public class BoardHistory {
+    private final Deque<HistoryEntry> undoStack = new ArrayDeque<>();
+    private final Deque<HistoryEntry> redoStack = new ArrayDeque<>();
+    private final long maxBytes;
+    private long retainedBytes = 0;
+    private HistoryEntry batch; // entries recorded during a batch are merged here
+    private final List<Runnable> inverses = new ArrayList<>(); // since the last checkpoint, oldest first
+
+    public BoardHistory(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    // A new user action invalidates everything that could be redone
+    public void record(HistoryEntry entry) {
+        if (entry == null || entry.isEmpty())
+            return;
+        if (batch != null) {
+            batch.append(entry);
+            return;
+        }
+        clearRedo();
+        pushUndo(entry);
+    }
+
+    // Until endBatch/abortBatch, recorded entries are collected into a single one
+    public void beginBatch() {
+        if (batch != null)
+            throw new IllegalStateException("Batches can't be nested");
+        batch = new HistoryEntry();
+    }
+
+    // Records everything collected since beginBatch as one undo step
+    public void endBatch() {
+        HistoryEntry collected = batch;
+        batch = null;
+        record(collected);
+    }
+
+    // Drops the batch without recording it and hands back what it collected, so the caller can revert it
+    public HistoryEntry abortBatch() {
+        HistoryEntry collected = batch;
+        batch = null;
+        return collected;
+    }
+
+    public boolean isBatching() {
+        return batch != null;
+    }
+
+    public void pushUndo(HistoryEntry entry) {
+        push(undoStack, entry);
+    }
+
+    public void pushRedo(HistoryEntry entry) {
+        push(redoStack, entry);
+    }
+
+    public HistoryEntry popUndo() {
+        return pop(undoStack);
+    }
+
+    public HistoryEntry popRedo() {
+        return pop(redoStack);
+    }
+
+    public void clearRedo() {
+        if (redoStack.isEmpty())
+            return;
+        List<HistoryEntry> cleared = new ArrayList<>(redoStack);
+        long bytes = 0;
+        for (HistoryEntry e : cleared)
+            bytes += e.getEstimatedBytes();
+        retainedBytes -= bytes;
+        redoStack.clear();
+        long restored = bytes;
+        inverses.add(() -> {
+            redoStack.addAll(cleared);
+            retainedBytes += restored;
+        });
+    }
+
+    // The stacks as they are now can't be reverted any more: called once a change was published
+    public void checkpoint() {
+        inverses.clear();
+    }
+
+    // Puts the stacks back as they were at the last checkpoint
+    public void revert() {
+        for (int i = inverses.size() - 1; i >= 0; i--)
+            inverses.get(i).run();
+        inverses.clear();
+    }
+
+    private void push(Deque<HistoryEntry> stack, HistoryEntry entry) {
+        stack.push(entry);
+        retainedBytes += entry.getEstimatedBytes();
+        inverses.add(() -> {
+            stack.pop();
+            retainedBytes -= entry.getEstimatedBytes();
+        });
+        trim();
+    }
+
+    private HistoryEntry pop(Deque<HistoryEntry> stack) {
+        HistoryEntry e = stack.poll();
+        if (e == null)
+            return null;
+        retainedBytes -= e.getEstimatedBytes();
+        inverses.add(() -> {
+            stack.push(e);
+            retainedBytes += e.getEstimatedBytes();
+        });
+        return e;
+    }
+
+    private void trim() {
+        while (retainedBytes > maxBytes && undoStack.size() > 1)
+            dropOldest(undoStack);
+        while (retainedBytes > maxBytes && !redoStack.isEmpty() && undoStack.size() + redoStack.size() > 1)
+            dropOldest(redoStack);
+    }
+
+    private void dropOldest(Deque<HistoryEntry> stack) {
+        HistoryEntry e = stack.removeLast();
+        retainedBytes -= e.getEstimatedBytes();
+        inverses.add(() -> {
+            stack.addLast(e);
+            retainedBytes += e.getEstimatedBytes();
+        });
+    }
+
+    public int getUndoDepth() {
+        return undoStack.size();
+    }
+
+    public int getRedoDepth() {
+        return redoStack.size();
+    }
+
+    public long getRetainedBytes() {
+        return retainedBytes;
+    }
+}
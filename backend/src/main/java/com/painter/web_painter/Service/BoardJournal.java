@@ -0,0 +1,263 @@
+package com.painter.web_painter.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.painter.web_painter.model.ChangeSet;
+import com.painter.web_painter.model.Shape;
+
+/**
+ * Write-ahead journal of one board, kept in a single memory-mapped segment file:
+ *
+ * <pre>
+ * "WPJ" version:u8 record* 0:i32
+ * record  = length:i32 crc32c:i32 payload
+ * payload = version:i64 full:u8 upserts:varint (z:i64 shape)* deleted:varint id:str*
+ * </pre>
+ *
+ * The first record is always a full snapshot; every later one is the delta of one published board
+ * version. Appends only copy into the mapping (safe against a process crash), {@link #sync()} is
+ * called on a timer to fsync them in batches. Once the deltas outgrow the snapshot (or the segment
+ * is full) the segment is compacted: a new file holding just a fresh snapshot is written, synced and
+ * atomically renamed over the old one. So replay never reads more than ~3x the board size and each
+ * byte of state is rewritten at most once per two bytes of deltas.
+ * A journal this code can't read at all (another format version, no intact snapshot, a record that doesn't
+ * decode) is never overwritten: it is moved aside to "&lt;name&gt;.corrupt-&lt;millis&gt;" and the board starts empty.
+ */
+final class BoardJournal {
+    private static final Logger log = LoggerFactory.getLogger(BoardJournal.class);
+    private static final byte[] MAGIC = { 'W', 'P', 'J', 1 };
+    private static final int HEADER = 8; // length + crc
+    private static final int COMPACT_RATIO = 2;
+
+    private final Path file;
+    private final long minSegmentBytes;
+    private FileChannel channel;
+    private MappedByteBuffer buf;
+    private int snapshotEnd;
+    private boolean dirty;
+
+    private BoardJournal(Path file, long minSegmentBytes) {
+        this.file = file;
+        this.minSegmentBytes = minSegmentBytes;
+    }
+
+    // Thrown by replay when nothing in the file can be trusted
+    private static final class UnreadableJournalException extends IOException {
+        UnreadableJournalException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    // Replays the journal (if any) into store, then keeps appending to it. A torn or corrupt tail after an
+    // intact snapshot is dropped by writing a fresh snapshot of what could be replayed; an unreadable
+    // journal is set aside and the board starts empty.
+    static BoardJournal open(Path file, ShapeStore store, long minSegmentBytes) throws IOException {
+        BoardJournal journal = new BoardJournal(file, minSegmentBytes);
+        if (Files.exists(file)) {
+            try {
+                if (journal.replay(store))
+                    return journal;
+            } catch (UnreadableJournalException e) {
+                journal.channel.close();
+                journal.buf = null;
+                store.clear();
+                Path aside = file.resolveSibling(file.getFileName() + ".corrupt-" + System.currentTimeMillis());
+                Files.move(file, aside);
+                log.warn("Journal {} can't be replayed ({}), moved it to {} and starting the board empty", file,
+                        e.getMessage(), aside.getFileName(), e.getCause());
+            }
+        }
+        journal.compact(store, 0);
+        return journal;
+    }
+
+    // Reads every intact record into store; true if the file ended cleanly and can be appended to,
+    // false if it has a torn tail after the snapshot
+    private boolean replay(ShapeStore store) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        if (size < MAGIC.length + 4)
+            throw new UnreadableJournalException("only " + size + " bytes", null);
+        if (size > Integer.MAX_VALUE)
+            throw new UnreadableJournalException(size + " bytes is more than one segment can hold", null);
+        buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        for (byte b : MAGIC)
+            if (buf.get() != b)
+                throw new UnreadableJournalException("not a version " + MAGIC[3] + " journal", null);
+        CRC32C crc = new CRC32C();
+        while (buf.remaining() >= 4) {
+            int start = buf.position();
+            int length = buf.getInt();
+            if (length == 0) {
+                if (snapshotEnd == 0)
+                    break;
+                buf.position(start);
+                return true;
+            }
+            if (length < 0 || buf.remaining() < length + 4)
+                break;
+            int expected = buf.getInt();
+            byte[] payload = new byte[length];
+            buf.get(payload);
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != expected)
+                break;
+            try {
+                apply(store, decode(payload));
+            } catch (IOException | RuntimeException e) {
+                // the checksum matched, so this is not a torn write but something this code can't read
+                throw new UnreadableJournalException("record at offset " + start + " doesn't decode", e);
+            }
+            if (snapshotEnd == 0)
+                snapshotEnd = buf.position();
+        }
+        if (snapshotEnd == 0)
+            throw new UnreadableJournalException("no intact snapshot record", null);
+        channel.close();
+        return false;
+    }
+
+    // Full records reset the board; deltas drop every touched id first so the z keys they carry are free
+    static void apply(ShapeStore store, ChangeSet changes) {
+        if (changes.full())
+            store.clear();
+        for (String id : changes.deleted())
+            store.remove(id);
+        for (ChangeSet.Upsert u : changes.upserts())
+            store.remove(u.shape().getId());
+        for (ChangeSet.Upsert u : changes.upserts())
+            store.insert(u.shape(), u.z());
+    }
+
+    // Called by the board writer under its lock with the delta of the version being published
+    synchronized void append(ChangeSet changes, ShapeStore store) throws IOException {
+        if (buf == null)
+            throw new ClosedChannelException();
+        byte[] payload = encode(changes);
+        int needed = HEADER + payload.length + 4; // keep room for the zero end marker
+        long deltas = buf.position() - snapshotEnd;
+        boolean outgrown = deltas > COMPACT_RATIO * (long) snapshotEnd && deltas > minSegmentBytes / 2;
+        if (needed > buf.remaining() || outgrown) {
+            compact(store, needed); // the snapshot already contains this change
+            return;
+        }
+        put(buf, payload);
+        buf.putInt(buf.position(), 0);
+        dirty = true;
+    }
+
+    // fsyncs everything appended since the last call; the mapping is captured so writers aren't blocked
+    void sync() {
+        MappedByteBuffer target;
+        synchronized (this) {
+            if (!dirty || buf == null)
+                return;
+            dirty = false;
+            target = buf;
+        }
+        target.force();
+    }
+
+    synchronized void close() throws IOException {
+        if (buf == null)
+            return;
+        buf.force();
+        buf = null;
+        channel.close();
+    }
+
+    long getBytes() {
+        MappedByteBuffer b = buf;
+        return b == null ? 0 : b.position();
+    }
+
+    // Writes a new segment with just a snapshot of the store, syncs it and swaps it in atomically
+    private void compact(ShapeStore store, int spare) throws IOException {
+        byte[] snapshot = encode(store.changesSince(Long.MIN_VALUE));
+        long size = Math.max(minSegmentBytes,
+                (MAGIC.length + HEADER + (long) snapshot.length) * (COMPACT_RATIO + 2) + spare + 4);
+        if (size > Integer.MAX_VALUE)
+            throw new IOException("Board is too large for a single journal segment");
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.deleteIfExists(tmp);
+        FileChannel next = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        MappedByteBuffer mapped = next.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        mapped.put(MAGIC);
+        put(mapped, snapshot);
+        mapped.force();
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (channel != null)
+            channel.close();
+        channel = next;
+        buf = mapped;
+        snapshotEnd = mapped.position();
+        dirty = false;
+    }
+
+    private static void put(MappedByteBuffer target, byte[] payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        target.putInt(payload.length);
+        target.putInt((int) crc.getValue());
+        target.put(payload);
+    }
+
+    // --- RECORD CODEC (shapes use the binary drawing format) ---
+    static byte[] encode(ChangeSet changes) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        Map<String, Integer> colors = new HashMap<>();
+        out.writeLong(changes.version());
+        out.writeByte(changes.full() ? 1 : 0);
+        BinaryDrawingCodec.writeVarint(out, changes.upserts().size());
+        for (ChangeSet.Upsert u : changes.upserts()) {
+            out.writeLong(u.z());
+            BinaryDrawingCodec.writeShape(out, u.shape(), colors);
+        }
+        BinaryDrawingCodec.writeVarint(out, changes.deleted().size());
+        for (String id : changes.deleted())
+            BinaryDrawingCodec.writeString(out, id);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    static ChangeSet decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        List<String> colors = new ArrayList<>();
+        long version = in.readLong();
+        boolean full = in.readByte() == 1;
+        long count = BinaryDrawingCodec.readVarint(in);
+        List<ChangeSet.Upsert> upserts = new ArrayList<>();
+        for (long i = 0; i < count; i++) {
+            long z = in.readLong();
+            Shape s = BinaryDrawingCodec.readShape(in, colors, n -> {
+            });
+            upserts.add(new ChangeSet.Upsert(z, s));
+        }
+        count = BinaryDrawingCodec.readVarint(in);
+        List<String> deleted = new ArrayList<>();
+        for (long i = 0; i < count; i++)
+            deleted.add(BinaryDrawingCodec.readString(in));
+        return new ChangeSet(version, full, upserts, deleted);
+    }
+}
@@ -0,0 +1,70 @@
+package com.painter.web_painter.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Per-board gauges (tagged board=&lt;id&gt;): shape and freehand point counts, undo/redo depth and the
+ * bytes the history retains. Rows are rebuilt on a timer from the resident boards, so passivated
+ * boards drop out and the tag set stays bounded by what is in memory. The values are read without
+ * the board lock; a gauge may be one write behind, which is fine for monitoring.
+ */
+@Component
+public class BoardMetrics implements MeterBinder {
+    private final BoardRegistry boards;
+    private volatile MultiGauge shapes;
+    private volatile MultiGauge points;
+    private volatile MultiGauge undoDepth;
+    private volatile MultiGauge redoDepth;
+    private volatile MultiGauge historyBytes;
+
+    public BoardMetrics(BoardRegistry boards) {
+        this.boards = boards;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("painter.boards.active", boards, b -> b.getActiveBoards().size())
+                .description("Boards resident in memory").register(registry);
+        shapes = MultiGauge.builder("painter.board.shapes").description("Shapes on the board").register(registry);
+        points = MultiGauge.builder("painter.board.points").description("Freehand points on the board")
+                .register(registry);
+        undoDepth = MultiGauge.builder("painter.history.undo.depth").description("Undo entries kept")
+                .register(registry);
+        redoDepth = MultiGauge.builder("painter.history.redo.depth").description("Redo entries kept")
+                .register(registry);
+        historyBytes = MultiGauge.builder("painter.history.retained").baseUnit("bytes")
+                .description("Estimated memory held by undo/redo entries").register(registry);
+        refresh();
+    }
+
+    @Scheduled(fixedDelayString = "${painter.metrics.refresh-ms:10000}")
+    public void refresh() {
+        if (shapes == null)
+            return;
+        List<MultiGauge.Row<?>> shapeRows = new ArrayList<>(), pointRows = new ArrayList<>();
+        List<MultiGauge.Row<?>> undoRows = new ArrayList<>(), redoRows = new ArrayList<>();
+        List<MultiGauge.Row<?>> byteRows = new ArrayList<>();
+        for (Board board : boards.getActiveBoards()) {
+            Tags tags = Tags.of("board", board.getId());
+            BoardHistory history = board.getHistory();
+            shapeRows.add(MultiGauge.Row.of(tags, board.snapshot().shapes().size()));
+            pointRows.add(MultiGauge.Row.of(tags, board.getShapes().getPointCount()));
+            undoRows.add(MultiGauge.Row.of(tags, history.getUndoDepth()));
+            redoRows.add(MultiGauge.Row.of(tags, history.getRedoDepth()));
+            byteRows.add(MultiGauge.Row.of(tags, history.getRetainedBytes()));
+        }
+        shapes.register(shapeRows, true);
+        points.register(pointRows, true);
+        undoDepth.register(undoRows, true);
+        redoDepth.register(redoRows, true);
+        historyBytes.register(byteRows, true);
+    }
+}
@@ -0,0 +1,213 @@
+package com.painter.web_painter.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.painter.web_painter.model.Shape;
+
+/**
+ * All boards of this node, keyed by board id. Boards idle for longer than the TTL are written to
+ * painter.boards.dir and dropped from memory; the next request for them reloads the shapes lazily.
+ * Undo history and client selections are not kept across passivation.
+ * With painter.journal.enabled every published change also goes to a per-board journal
+ * ({@link BoardJournal}), so boards survive a restart or crash; they are replayed on first use. Journals are
+ * fsynced every painter.journal.fsync-ms on a thread of their own, so the durability window never waits
+ * behind other scheduled work.
+ * Each board also keeps a {@link BoardTimeline} of its published versions (keyframes optionally
+ * spilled to painter.timeline.spill-dir).
+ */
+@Component
+public class BoardRegistry {
+    private static final Logger log = LoggerFactory.getLogger(BoardRegistry.class);
+    private static final Pattern BOARD_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    private final Map<String, Board> boards = new ConcurrentHashMap<>();
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Path dir;
+    private final long idleTtlMs;
+    private final long historyMaxBytes;
+    private final boolean journaled;
+    private final long segmentBytes;
+    private final BoardTimeline.Settings timeline;
+    private final ExecutorService spiller; // null when keyframes stay in heap
+    private final ScheduledExecutorService fsync; // null when journaling is off
+
+    public BoardRegistry(String dir, long idleTtlMs, long historyMaxBytes) {
+        this(dir, idleTtlMs, historyMaxBytes, false, 0);
+    }
+
+    public BoardRegistry(String dir, long idleTtlMs, long historyMaxBytes, boolean journaled, long segmentBytes) {
+        this(dir, idleTtlMs, historyMaxBytes, journaled, segmentBytes, 50,
+                BoardTimeline.Settings.IN_HEAP.keyframeInterval(), BoardTimeline.Settings.IN_HEAP.maxBytes(), "");
+    }
+
+    @Autowired
+    public BoardRegistry(@Value("${painter.boards.dir:boards}") String dir,
+            @Value("${painter.boards.idle-ttl-ms:1800000}") long idleTtlMs,
+            @Value("${painter.history.max-bytes:67108864}") long historyMaxBytes,
+            @Value("${painter.journal.enabled:true}") boolean journaled,
+            @Value("${painter.journal.segment-bytes:16777216}") long segmentBytes,
+            @Value("${painter.journal.fsync-ms:50}") long fsyncMs,
+            @Value("${painter.timeline.keyframe-interval:50}") int keyframeInterval,
+            @Value("${painter.timeline.max-bytes:67108864}") long timelineMaxBytes,
+            @Value("${painter.timeline.spill-dir:}") String spillDir) {
+        if (keyframeInterval < 1)
+            throw new IllegalArgumentException("painter.timeline.keyframe-interval must be at least 1");
+        this.dir = Path.of(dir);
+        this.idleTtlMs = idleTtlMs;
+        this.historyMaxBytes = historyMaxBytes;
+        this.journaled = journaled;
+        this.segmentBytes = segmentBytes;
+        this.spiller = spillDir.isBlank() ? null
+                : Executors.newSingleThreadExecutor(Thread.ofVirtual().name("keyframe-spill").factory());
+        this.timeline = new BoardTimeline.Settings(keyframeInterval, timelineMaxBytes,
+                spillDir.isBlank() ? null : Path.of(spillDir), spiller);
+        this.fsync = journaled ? Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("journal-fsync").daemon(true).factory()) : null;
+        if (fsync != null)
+            fsync.scheduleWithFixedDelay(this::syncJournals, fsyncMs, fsyncMs, TimeUnit.MILLISECONDS);
+    }
+
+    public Board get(String boardId) {
+        if (!BOARD_ID.matcher(boardId).matches())
+            throw new IllegalArgumentException("Invalid board id: " + boardId);
+        Board board = boards.computeIfAbsent(boardId, this::activate);
+        board.touch();
+        return board;
+    }
+
+    public Collection<Board> getActiveBoards() {
+        return boards.values();
+    }
+
+    @Scheduled(fixedDelayString = "${painter.boards.sweep-ms:60000}")
+    public void passivateIdle() {
+        long cutoff = System.currentTimeMillis() - idleTtlMs;
+        for (String id : boards.keySet())
+            boards.computeIfPresent(id, (k, board) -> board.getLastAccess() < cutoff ? passivate(board) : board);
+    }
+
+    // Group commit: appends since the last tick are fsynced together. A failure is logged and retried on
+    // the next tick (an exception escaping would cancel the periodic task)
+    public void syncJournals() {
+        for (Board board : boards.values()) {
+            BoardJournal journal = board.getJournal();
+            try {
+                if (journal != null)
+                    journal.sync();
+            } catch (RuntimeException e) {
+                log.warn("Could not fsync the journal of board {}", board.getId(), e);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (fsync != null)
+            fsync.shutdownNow(); // close() below forces what is left
+        for (Board board : boards.values()) {
+            board.lock();
+            try {
+                board.getTimeline().discard();
+                if (board.getJournal() != null)
+                    board.getJournal().close();
+            } catch (IOException e) {
+                log.error("Could not close journal of board {}", board.getId(), e);
+            } finally {
+                board.unlock();
+            }
+        }
+        if (spiller != null)
+            spiller.shutdownNow();
+    }
+
+    // Runs inside computeIfAbsent, so a board is never loaded twice
+    private Board activate(String boardId) {
+        Board board = new Board(boardId, historyMaxBytes, timeline);
+        Path file = fileOf(boardId);
+        if (journaled && Files.exists(journalOf(boardId))) {
+            try {
+                BoardJournal journal = BoardJournal.open(journalOf(boardId), board.getShapes(), segmentBytes);
+                board.publish(); // the replayed state is already in the journal
+                board.setJournal(journal);
+                return board;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not replay board " + boardId, e);
+            }
+        }
+        if (Files.exists(file)) {
+            try {
+                List<Shape> loaded = mapper.readValue(file.toFile(), new TypeReference<List<Shape>>() {
+                });
+                for (Shape s : loaded)
+                    board.getShapes().add(s);
+                board.publish();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not reload board " + boardId, e);
+            }
+        }
+        if (journaled) {
+            // the journal starts with a snapshot of whatever was loaded, which supersedes the JSON file
+            try {
+                board.setJournal(BoardJournal.open(journalOf(boardId), board.getShapes(), segmentBytes));
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not start journal for board " + boardId, e);
+            }
+        }
+        return board;
+    }
+
+    // Returns null so computeIfPresent drops the board; if a writer is busy or saving fails it stays resident
+    private Board passivate(Board board) {
+        if (!board.tryLock())
+            return board;
+        try {
+            if (board.getJournal() != null) {
+                board.getJournal().close(); // already durable, just flush and unmap
+                board.retire();
+                return null;
+            }
+            Files.createDirectories(dir);
+            Path tmp = fileOf(board.getId() + ".tmp");
+            mapper.writeValue(tmp.toFile(), board.snapshot().shapes());
+            Files.move(tmp, fileOf(board.getId()), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            board.retire();
+            return null;
+        } catch (IOException e) {
+            log.warn("Could not passivate board {}, keeping it in memory", board.getId(), e);
+            return board;
+        } finally {
+            board.unlock();
+        }
+    }
+
+    private Path fileOf(String boardId) {
+        return dir.resolve(boardId + ".json");
+    }
+
+    private Path journalOf(String boardId) {
+        return dir.resolve(boardId + ".journal");
+    }
+}
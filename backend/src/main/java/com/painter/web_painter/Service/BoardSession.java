@@ -0,0 +1,27 @@
+package com.painter.web_painter.Service;
+
+import java.util.regex.Pattern;
+
+/**
+ * Who is asking: the board being edited and the client (browser tab) editing it.
+ * Selection and clipboard are kept per client, everything else per board.
+ * Both ids come straight from request headers or query strings, so they are checked here: at most
+ * 64 letters, digits, '_' or '-'. Anything else is refused with an IllegalArgumentException.
+ */
+public record BoardSession(String boardId, String clientId) {
+    public static final String DEFAULT = "default";
+    private static final Pattern ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    public static BoardSession of(String boardId, String clientId) {
+        return new BoardSession(id("board", boardId), id("client", clientId));
+    }
+
+    private static String id(String what, String id) {
+        if (id == null || id.isBlank())
+            return DEFAULT;
+        if (!ID.matcher(id).matches())
+            throw new IllegalArgumentException(
+                    "Invalid " + what + " id: " + id.substring(0, Math.min(id.length(), 64)));
+        return id;
+    }
+}
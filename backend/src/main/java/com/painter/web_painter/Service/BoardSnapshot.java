@@ -0,0 +1,18 @@
+package com.painter.web_painter.Service;
+
+import java.util.List;
+import com.painter.web_painter.model.Shape;
+
+/**
+ * Immutable view of a board at one version. Shapes in a published board are never modified
+ * in place (writers replace them with edited copies), so readers can serialize this freely.
+ * A board's own snapshot holds its {@link ShapeList}, which also answers lookups, viewport queries
+ * and deltas as of this version; json is the board's cache of serialized shapes. Views derived from
+ * the board (viewport queries) hold plain lists and have no cache.
+ */
+public record BoardSnapshot(long version, List<Shape> shapes, ShapeJsonCache json) {
+
+    public BoardSnapshot(long version, List<Shape> shapes) {
+        this(version, shapes, null);
+    }
+}
@@ -0,0 +1,234 @@
+package com.painter.web_painter.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.FileSystemUtils;
+import com.painter.web_painter.model.ChangeSet;
+import com.painter.web_painter.model.Shape;
+import com.painter.web_painter.model.TimelineEntry;
+
+/**
+ * Random-access history of one board: every published version is kept as its forward delta, and
+ * every keyframeInterval versions as a full keyframe instead. Materializing a version starts from the
+ * closest keyframe at or before it and applies the deltas after that, so it costs one keyframe plus at
+ * most keyframeInterval deltas however deep the timeline is.
+ * With a spill directory keyframes are written there in the journal's record format (in the
+ * background, off the board lock) and dropped from heap. Once the retained estimate passes maxBytes
+ * the oldest keyframe and its deltas go first; the newest keyframe is always kept. Like the undo
+ * history, the timeline starts over when a board is reloaded.
+ */
+public class BoardTimeline {
+    private static final Logger log = LoggerFactory.getLogger(BoardTimeline.class);
+
+    // spillDir == null keeps keyframes in heap; spiller runs the writes
+    public record Settings(int keyframeInterval, long maxBytes, Path spillDir, Executor spiller) {
+        public static final Settings IN_HEAP = new Settings(50, 64L << 20, null, null);
+    }
+
+    // A full board state, in heap until (and unless) it was spilled to file; guarded by the timeline
+    private static final class Keyframe {
+        final long version;
+        volatile ShapeList shapes;
+        final Path file;
+        final long heapBytes;
+        boolean dropped;
+
+        Keyframe(long version, ShapeList shapes, Path file) {
+            this.version = version;
+            this.shapes = shapes;
+            this.file = file;
+            this.heapBytes = 64 + 32L * shapes.size(); // chunks are shared with the board until it rewrites them
+        }
+
+        ChangeSet load() throws IOException {
+            ShapeList s = shapes;
+            return s != null ? state(s) : BoardJournal.decode(Files.readAllBytes(file));
+        }
+
+        ChangeSet state(ShapeList s) {
+            return new ChangeSet(version, true, s.upserts(), List.of());
+        }
+    }
+
+    // keyframe != null: the full state at this version, delta unused
+    private record Step(long version, long time, int changes, ChangeSet delta, Keyframe keyframe, long bytes) {
+    }
+
+    private final Settings settings;
+    private final Path dir;
+    private final List<Step> steps = new ArrayList<>();
+    private int sinceKeyframe;
+    private long retainedBytes;
+
+    public BoardTimeline(String boardId, Settings settings) {
+        this.settings = settings;
+        this.dir = settings.spillDir() == null ? null : settings.spillDir().resolve(boardId);
+        if (dir != null) {
+            try {
+                FileSystemUtils.deleteRecursively(dir); // keyframes of an earlier run
+                Files.createDirectories(dir);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not prepare " + dir, e);
+            }
+        }
+    }
+
+    // Called by the board writer under its lock with the delta of the version being published and the
+    // shapes it publishes
+    synchronized void record(ChangeSet delta, ShapeList shapes) {
+        int changes = delta.upserts().size() + delta.deleted().size();
+        Step step;
+        if (steps.isEmpty() || delta.full() || ++sinceKeyframe >= settings.keyframeInterval()) {
+            sinceKeyframe = 0;
+            Path file = dir == null ? null : dir.resolve(delta.version() + ".keyframe");
+            Keyframe k = new Keyframe(delta.version(), shapes, file);
+            step = new Step(delta.version(), System.currentTimeMillis(), changes, null, k, k.heapBytes);
+            if (k.file != null)
+                settings.spiller().execute(() -> spill(k));
+        } else {
+            long bytes = 64;
+            for (ChangeSet.Upsert u : delta.upserts())
+                bytes += 16 + HistoryEntry.estimateBytes(u.shape());
+            bytes += 48L * delta.deleted().size();
+            step = new Step(delta.version(), System.currentTimeMillis(), changes, delta, null, bytes);
+        }
+        steps.add(step);
+        retainedBytes += step.bytes();
+        trim();
+    }
+
+    private void spill(Keyframe k) {
+        synchronized (this) {
+            if (k.dropped)
+                return;
+        }
+        try {
+            byte[] bytes = BoardJournal.encode(k.state(k.shapes));
+            Files.write(k.file, bytes);
+            synchronized (this) {
+                if (k.dropped) {
+                    Files.deleteIfExists(k.file);
+                    return;
+                }
+                k.shapes = null;
+                retainedBytes -= k.heapBytes;
+            }
+        } catch (IOException e) {
+            synchronized (this) {
+                if (!k.dropped)
+                    log.warn("Could not spill keyframe {}, keeping it in memory", k.file, e);
+            }
+        }
+    }
+
+    // Drops the oldest keyframe with its deltas while there is a newer keyframe to start from
+    private void trim() {
+        while (retainedBytes > settings.maxBytes()) {
+            int next = 1;
+            while (next < steps.size() && steps.get(next).keyframe() == null)
+                next++;
+            if (next == steps.size())
+                return;
+            for (Step s : steps.subList(0, next)) {
+                if (s.keyframe() == null)
+                    retainedBytes -= s.bytes();
+                else
+                    drop(s.keyframe());
+            }
+            steps.subList(0, next).clear();
+        }
+    }
+
+    // A spilled keyframe's heap share was already released when it was written out
+    private void drop(Keyframe k) {
+        k.dropped = true;
+        if (k.shapes != null) {
+            retainedBytes -= k.heapBytes;
+        } else {
+            try {
+                Files.deleteIfExists(k.file);
+            } catch (IOException e) {
+                log.warn("Could not delete keyframe {}", k.file, e);
+            }
+        }
+    }
+
+    public synchronized List<TimelineEntry> versions() {
+        List<TimelineEntry> versions = new ArrayList<>(steps.size());
+        for (Step s : steps)
+            versions.add(new TimelineEntry(s.version(), s.time(), s.changes()));
+        return versions;
+    }
+
+    // The board as it was at that version, bottom to top, or null if the version isn't (or no longer) kept
+    public List<Shape> shapesAt(long version) throws IOException {
+        Keyframe start;
+        List<Step> deltas;
+        synchronized (this) {
+            int i = indexOf(version);
+            if (i < 0)
+                return null;
+            int k = i;
+            while (steps.get(k).keyframe() == null)
+                k--;
+            start = steps.get(k).keyframe();
+            deltas = new ArrayList<>(steps.subList(k + 1, i + 1));
+        }
+        ShapeStore store = new ShapeStore();
+        try {
+            BoardJournal.apply(store, start.load());
+        } catch (NoSuchFileException e) {
+            return null; // trimmed meanwhile
+        }
+        for (Step s : deltas)
+            BoardJournal.apply(store, s.delta());
+        return store.list();
+    }
+
+    private int indexOf(long version) {
+        int lo = 0, hi = steps.size() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long v = steps.get(mid).version();
+            if (v == version)
+                return mid;
+            if (v < version)
+                lo = mid + 1;
+            else
+                hi = mid - 1;
+        }
+        return -1;
+    }
+
+    public synchronized int size() {
+        return steps.size();
+    }
+
+    public synchronized long getRetainedBytes() {
+        return retainedBytes;
+    }
+
+    // Deletes the spilled keyframes; called when the board is unloaded
+    public synchronized void discard() {
+        for (Step s : steps)
+            if (s.keyframe() != null)
+                s.keyframe().dropped = true;
+        steps.clear();
+        retainedBytes = 0;
+        if (dir != null) {
+            try {
+                FileSystemUtils.deleteRecursively(dir);
+            } catch (IOException e) {
+                log.warn("Could not delete keyframes in {}", dir, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.painter.web_painter.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Remembers, per shape id, the last board version that touched it. Each id appears once, so a
+ * delta since version v costs O(changed shapes). Ids of deleted shapes (tombstones) are capped; dropping
+ * old ones raises the horizon, and clients older than that get a full resync. Every other entry is a
+ * shape still on the board, so the log is sized by the store it describes and never by how many edits
+ * were made: however large the board, an edit doesn't push other clients into a resync. Clearing the
+ * board just moves the horizon up.
+ * Every touch is also appended to a plain (version, id) log that {@link #freeze} hands out as is: entries
+ * past a frozen length are never read through it, and compacting the log builds new arrays, so a published
+ * view needs no copying. Compaction runs once superseded entries make up half of the log.
+ */
+public class ChangeLog {
+    private static final int MAX_TOMBSTONES = 10_000;
+
+    private final TreeMap<Long, String> idByVersion = new TreeMap<>();
+    private final Map<String, Long> versionById = new HashMap<>();
+    private final TreeMap<Long, String> tombstones = new TreeMap<>();
+    // Versions start from the clock so a client holding a version from before a restart
+    // is below the horizon and gets a full resync instead of a bogus delta
+    private long version = System.currentTimeMillis() * 1000;
+    private long horizon = version;
+    private long[] logVersions = new long[16];
+    private String[] logIds = new String[16];
+    private int logSize;
+
+    // The log as it was at one version; changedSince answers what the live log answered then
+    public static final class Frozen {
+        private final long version, horizon;
+        private final long[] versions;
+        private final String[] ids;
+        private final int size;
+
+        private Frozen(long version, long horizon, long[] versions, String[] ids, int size) {
+            this.version = version;
+            this.horizon = horizon;
+            this.versions = versions;
+            this.ids = ids;
+            this.size = size;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public long getHorizon() {
+            return horizon;
+        }
+
+        // Ids changed after the given version (deleted or not), each once in the order of its last change
+        public Collection<String> changedSince(long since) {
+            int from = Arrays.binarySearch(versions, 0, size, since);
+            from = from < 0 ? -from - 1 : from + 1;
+            Set<String> seen = new HashSet<>();
+            List<String> changed = new ArrayList<>();
+            for (int i = size - 1; i >= from; i--)
+                if (seen.add(ids[i]))
+                    changed.add(ids[i]);
+            return changed.reversed();
+        }
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    // Oldest version a delta can still be computed from
+    public long getHorizon() {
+        return horizon;
+    }
+
+    public void touched(String id) {
+        log(id);
+    }
+
+    public void deleted(String id) {
+        log(id);
+        tombstones.put(version, id);
+        while (tombstones.size() > MAX_TOMBSTONES) {
+            Map.Entry<Long, String> oldest = tombstones.pollFirstEntry();
+            horizon = oldest.getKey();
+            if (oldest.getKey().equals(versionById.get(oldest.getValue()))) {
+                versionById.remove(oldest.getValue());
+                idByVersion.remove(oldest.getKey());
+            }
+        }
+    }
+
+    // Everything was removed: no delta reaches back past this version
+    public void cleared() {
+        version++;
+        idByVersion.clear();
+        versionById.clear();
+        tombstones.clear();
+        horizon = version;
+        logVersions = new long[16];
+        logIds = new String[16];
+        logSize = 0;
+    }
+
+    private void log(String id) {
+        version++;
+        Long previous = versionById.put(id, version);
+        if (previous != null) {
+            idByVersion.remove(previous);
+            tombstones.remove(previous);
+        }
+        idByVersion.put(version, id);
+        append(version, id);
+    }
+
+    private void append(long v, String id) {
+        if (logSize == logVersions.length) {
+            if (logSize >= 2 * idByVersion.size() + 16) {
+                compact(); // idByVersion already has this entry
+                return;
+            }
+            logVersions = Arrays.copyOf(logVersions, logSize * 2);
+            logIds = Arrays.copyOf(logIds, logSize * 2);
+        }
+        logVersions[logSize] = v;
+        logIds[logSize++] = id;
+    }
+
+    // New arrays with only the entries still in idByVersion (frozen views keep the old ones)
+    private void compact() {
+        int n = Math.max(16, 2 * idByVersion.size());
+        long[] versions = new long[n];
+        String[] ids = new String[n];
+        int i = 0;
+        for (Map.Entry<Long, String> e : idByVersion.entrySet()) {
+            versions[i] = e.getKey();
+            ids[i++] = e.getValue();
+        }
+        logVersions = versions;
+        logIds = ids;
+        logSize = i;
+    }
+
+    // Immutable view of the log as it is now
+    public Frozen freeze() {
+        return new Frozen(version, horizon, logVersions, logIds, logSize);
+    }
+
+    // Whether the id was touched after that version; true when the log no longer reaches back that far
+    public boolean changedSince(String id, long since) {
+        Long v = versionById.get(id);
+        return v != null ? v > since : since < horizon;
+    }
+
+    // Ids changed after the given version (deleted or not); caller checks which still exist
+    public Collection<String> changedSince(long since) {
+        NavigableMap<Long, String> tail = idByVersion.tailMap(since, false);
+        return tail.values();
+    }
+}
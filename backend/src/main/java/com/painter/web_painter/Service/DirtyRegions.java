@@ -0,0 +1,56 @@
+package com.painter.web_painter.Service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import com.painter.web_painter.model.Bounds;
+
+/**
+ * Which areas of a board were repainted by each published version, for cached renderings that
+ * need to know whether they are still current. Like {@link ChangeLog} it only remembers the most
+ * recent versions; asking about anything older answers "unknown".
+ */
+public class DirtyRegions {
+    private static final int MAX_VERSIONS = 1024;
+    private static final int MAX_REGIONS_PER_VERSION = 32; // beyond this they are merged into one box
+
+    private record Entry(long version, List<Bounds> regions) {
+    }
+
+    private final Deque<Entry> entries = new ArrayDeque<>();
+    private long horizon;
+
+    public DirtyRegions(long version) {
+        this.horizon = version;
+    }
+
+    // regions null = the whole board changed
+    public synchronized void record(long version, List<Bounds> regions) {
+        if (regions != null && regions.size() > MAX_REGIONS_PER_VERSION) {
+            Bounds all = regions.get(0);
+            for (Bounds b : regions)
+                all = all.union(b);
+            regions = List.of(all);
+        }
+        entries.addLast(new Entry(version, regions));
+        while (entries.size() > MAX_VERSIONS)
+            horizon = entries.removeFirst().version();
+    }
+
+    // Everything repainted after "version", or null if that is unknown (too old, or a full repaint)
+    public synchronized List<Bounds> since(long version) {
+        if (version < horizon)
+            return null;
+        List<Bounds> result = new ArrayList<>();
+        for (var it = entries.descendingIterator(); it.hasNext();) {
+            Entry e = it.next();
+            if (e.version() <= version)
+                break;
+            if (e.regions() == null)
+                return null;
+            result.addAll(e.regions());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,22 @@
+package com.painter.web_painter.Service;
+
+// File formats a drawing can be saved to; all but SVG (export only) can be loaded back
+public enum DrawingFormat {
+    JSON, XML, BINARY, SVG;
+
+    public boolean isLoadable() {
+        return this != SVG;
+    }
+
+    // Uploads are told apart by their extension; anything unknown is read as JSON, as before
+    public static DrawingFormat fromFilename(String name) {
+        if (name == null)
+            return JSON;
+        String lower = name.toLowerCase();
+        if (lower.endsWith(".xml"))
+            return XML;
+        if (lower.endsWith(".bin"))
+            return BINARY;
+        return JSON;
+    }
+}
@@ -0,0 +1,169 @@
+package com.painter.web_painter.Service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.painter.web_painter.model.FreehandShape;
+import com.painter.web_painter.model.LoadProgress;
+import com.painter.web_painter.model.Shape;
+
+/**
+ * Reads and writes saved drawings (JSON, XML or the binary format) straight from/to a stream with one shared,
+ * thread-safe mapper per format. Shapes are parsed one at a time, so only the shapes themselves are
+ * held in memory, and the byte/shape/point limits are checked while reading. Writers never close
+ * the target, so callers can wrap it (gzip) and finish it themselves.
+ */
+@Component
+public class DrawingIO {
+    private final ObjectMapper json = new ObjectMapper();
+    private final XmlMapper xml = new XmlMapper();
+    private final ObjectWriter jsonCompact;
+    private final ObjectWriter jsonPretty;
+    private final ObjectWriter xmlCompact;
+    private final ObjectWriter xmlPretty;
+
+    private final long maxBytes;
+    private final int maxShapes;
+    private final long maxPoints;
+
+    public DrawingIO() {
+        this(Long.MAX_VALUE, Integer.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    @Autowired
+    public DrawingIO(@Value("${painter.load.max-bytes:268435456}") long maxBytes,
+            @Value("${painter.load.max-shapes:1000000}") int maxShapes,
+            @Value("${painter.load.max-points:50000000}") long maxPoints) {
+        this.maxBytes = maxBytes;
+        this.maxShapes = maxShapes;
+        this.maxPoints = maxPoints;
+        TypeReference<List<Shape>> list = new TypeReference<>() {
+        };
+        jsonCompact = json.writerFor(list).without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        jsonPretty = jsonCompact.withDefaultPrettyPrinter();
+        xmlCompact = xml.writerFor(list).withRootName("shapes").without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        xmlPretty = xmlCompact.withDefaultPrettyPrinter();
+    }
+
+    // Serializes incrementally into out (text formats as UTF-8); pretty only affects JSON and XML
+    public void write(List<Shape> shapes, OutputStream out, DrawingFormat format, boolean pretty)
+            throws IOException {
+        write(shapes, null, out, format, pretty);
+    }
+
+    // Same, taking JSON from the board's cached per-shape fragments when a cache is given
+    public void write(List<Shape> shapes, ShapeJsonCache cache, OutputStream out, DrawingFormat format,
+            boolean pretty) throws IOException {
+        if (format == DrawingFormat.BINARY) {
+            BinaryDrawingCodec.write(shapes, out);
+            return;
+        }
+        if (format == DrawingFormat.SVG) {
+            SvgExporter.write(shapes, out);
+            return;
+        }
+        if (format == DrawingFormat.JSON && cache != null) {
+            cache.write(shapes, out, pretty);
+            return;
+        }
+        ObjectWriter writer = format == DrawingFormat.XML ? (pretty ? xmlPretty : xmlCompact)
+                : (pretty ? jsonPretty : jsonCompact);
+        writer.writeValue(out, shapes);
+    }
+
+    public List<Shape> read(InputStream in, DrawingFormat format, LoadProgress progress) throws IOException {
+        if (!format.isLoadable())
+            throw new IllegalArgumentException(format + " drawings can't be loaded");
+        List<Shape> shapes = new ArrayList<>();
+        if (format == DrawingFormat.BINARY) {
+            BinaryDrawingCodec.read(new CountingInputStream(in, progress), n -> checkPoints(progress, n),
+                    s -> accept(shapes, s, progress));
+            return shapes;
+        }
+        ObjectMapper mapper = format == DrawingFormat.XML ? xml : json;
+        try (JsonParser p = mapper.createParser(new CountingInputStream(in, progress))) {
+            JsonToken t = p.nextToken();
+            if (format == DrawingFormat.XML) {
+                // <List><item>..</item><item>..</item></List> arrives as an object with repeated "item" fields
+                if (t != JsonToken.START_OBJECT)
+                    return shapes; // empty root element
+                while (p.nextToken() == JsonToken.FIELD_NAME) {
+                    p.nextToken();
+                    accept(shapes, mapper.readValue(p, Shape.class), progress);
+                }
+            } else {
+                if (t != JsonToken.START_ARRAY)
+                    throw new IllegalArgumentException("Expected a list of shapes");
+                while (p.nextToken() == JsonToken.START_OBJECT)
+                    accept(shapes, mapper.readValue(p, Shape.class), progress);
+                if (p.currentToken() != JsonToken.END_ARRAY)
+                    throw new IllegalArgumentException("Expected a list of shapes");
+            }
+        }
+        return shapes;
+    }
+
+    private void accept(List<Shape> shapes, Shape s, LoadProgress progress) {
+        if (s == null)
+            return;
+        ShapeGeometry.checkCoordinates(s);
+        if (shapes.size() >= maxShapes)
+            throw new IllegalArgumentException("Drawing has more than " + maxShapes + " shapes");
+        int points = s instanceof FreehandShape ? ((FreehandShape) s).getPoints().size() : 0;
+        checkPoints(progress, points);
+        shapes.add(s);
+        progress.shapeRead(points);
+    }
+
+    private void checkPoints(LoadProgress progress, long points) {
+        if (progress.getPoints() + points > maxPoints)
+            throw new IllegalArgumentException("Drawing has more than " + maxPoints + " points");
+    }
+
+    // Counts bytes as the parser pulls them and stops the read once maxBytes is passed
+    private class CountingInputStream extends FilterInputStream {
+        private final LoadProgress progress;
+        private long count;
+
+        CountingInputStream(InputStream in, LoadProgress progress) {
+            super(in);
+            this.progress = progress;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0)
+                counted(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            int n = super.read(buf, off, len);
+            if (n > 0)
+                counted(n);
+            return n;
+        }
+
+        private void counted(int n) {
+            count += n;
+            if (count > maxBytes)
+                throw new IllegalArgumentException("Drawing is larger than " + maxBytes + " bytes");
+            progress.setBytesRead(count);
+        }
+    }
+}
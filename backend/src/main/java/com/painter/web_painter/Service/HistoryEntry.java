@@ -0,0 +1,66 @@
+package com.painter.web_painter.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import com.painter.web_painter.model.FreehandShape;
+import com.painter.web_painter.model.Shape;
+
+/**
+ * One undoable action, stored as the shapes it touched instead of a copy of the whole board.
+ * Each change keeps the shape instance before and after the action plus its z-order key:
+ * before == null means the shape was added, after == null means it was removed. Stored shapes are
+ * never edited in place (edits replace them with a modified copy), so entries can share instances.
+ */
+public class HistoryEntry {
+
+    public record Change(long z, Shape before, Shape after) {
+    }
+
+    private final List<Change> changes = new ArrayList<>();
+    private long estimatedBytes = 64;
+
+    public void added(long z, Shape shape) {
+        record(new Change(z, null, shape));
+    }
+
+    public void removed(long z, Shape shape) {
+        record(new Change(z, shape, null));
+    }
+
+    public void modified(long z, Shape before, Shape after) {
+        record(new Change(z, before, after));
+    }
+
+    // Appends another entry's changes after this one's (a batch becoming one undo step)
+    public void append(HistoryEntry other) {
+        for (Change c : other.changes)
+            record(c);
+    }
+
+    private void record(Change change) {
+        changes.add(change);
+        estimatedBytes += 32 + estimateBytes(change.before()) + estimateBytes(change.after());
+    }
+
+    public List<Change> getChanges() {
+        return changes;
+    }
+
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    // Rough retained size: object headers, UUID string, colors and (for freehand) 16 bytes per point
+    static long estimateBytes(Shape s) {
+        if (s == null)
+            return 0;
+        long bytes = 200;
+        if (s instanceof FreehandShape)
+            bytes += 48 + ((FreehandShape) s).getPoints().size() * 16L;
+        return bytes;
+    }
+}
@@ -1,196 +1,683 @@
 package com.painter.web_painter.Service;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.stereotype.Service;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import java.io.IOException;
-import java.util.List;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
-import java.util.Stack;
+import java.util.List;
 import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.function.BiFunction;
 import java.util.Map;
 import com.painter.web_painter.model.*;
 
 @Service
 public class PaintService {
-    private List<Shape> shapes = new ArrayList<>();
-    private Stack<List<Shape>> undoStack = new Stack<>();
-    private Stack<List<Shape>> redoStack = new Stack<>();
+    private final BoardRegistry boards;
+    private final DrawingIO io;
+    private final MeterRegistry meters;
+
+    // Screen-space error allowed when decimating strokes for zoomed-out viewports
+    static final double LOD_TOLERANCE_PX = 0.5;
+    // Bulk edits of at least this many shapes build their copies on the common fork-join pool
+    static final int PARALLEL_EDIT_THRESHOLD = 256;
+
+    public PaintService(BoardRegistry boards, DrawingIO io) {
+        this(boards, io, Metrics.globalRegistry);
+    }
+
+    @Autowired
+    public PaintService(BoardRegistry boards, DrawingIO io, MeterRegistry meters) {
+        this.boards = boards;
+        this.io = io;
+        this.meters = meters;
+    }
+
+    // --- READS (lock-free, served from the published snapshot) ---
+    public List<Shape> getShapes(BoardSession session) {
+        return getSnapshot(session).shapes();
+    }
+
+    public long getVersion(BoardSession session) {
+        return getSnapshot(session).version();
+    }
+
+    public BoardSnapshot getSnapshot(BoardSession session) {
+        return boards.get(session.boardId()).snapshot();
+    }
+
+    // The snapshot's shapes as a JSON array, re-serializing only shapes changed since the last one
+    public byte[] toJson(BoardSnapshot snapshot) {
+        return snapshot.json().toJson(snapshot.shapes());
+    }
 
-    private String selectedShapeId = null;
-    private String clipboardShapeId = null;
-    private List<Shape> moveSnapshot = null;
+    // Shapes whose bounding box meets the viewport, bottom to top, found through the published
+    // spatial index (cost follows what is visible, not the board size). Below scale 1 freehand
+    // strokes are decimated to what LOD_TOLERANCE_PX screen pixels can show; the returned copies
+    // never replace the stored strokes.
+    public BoardSnapshot getShapesIn(BoardSession session, Bounds viewport, double scale) {
+        if (!(scale > 0))
+            throw new IllegalArgumentException("scale must be positive");
+        BoardSnapshot snapshot = getSnapshot(session);
+        List<Shape> visible = published(snapshot).within(viewport);
+        if (scale >= 1)
+            return new BoardSnapshot(snapshot.version(), visible);
+        double tolerance = LOD_TOLERANCE_PX / scale;
+        List<Shape> shapes = new ArrayList<>(visible.size());
+        for (Shape s : visible) {
+            if (s instanceof FreehandShape) {
+                PackedPoints points = ((FreehandShape) s).getPoints();
+                PackedPoints kept = StrokeSimplifier.simplify(points, tolerance);
+                if (kept != points) {
+                    FreehandShape lod = (FreehandShape) s.clone();
+                    lod.setPoints(kept);
+                    s = lod;
+                }
+            }
+            shapes.add(s);
+        }
+        return new BoardSnapshot(snapshot.version(), shapes);
+    }
+
+    // Computed from the change log as frozen with the published snapshot (O(changes), no copying)
+    public ChangeSet getChangesSince(BoardSession session, long since) {
+        return getChangesSince(getSnapshot(session), since);
+    }
 
-    public List<Shape> getShapes() {
-        return shapes;
+    // The same on a snapshot the caller already holds, so several deltas can end at one version
+    public ChangeSet getChangesSince(BoardSnapshot snapshot, long since) {
+        return published(snapshot).changesSince(since);
     }
 
-    public void addShape(Shape shape) {
+    // The selection is read before the snapshot, which is published first, so its shapes are at least
+    // as new as the selection
+    public Shape getSelectedShape(BoardSession session) {
+        Board board = boards.get(session.boardId());
+        Board.Selection selection = board.selection(session.clientId());
+        return published(board.snapshot()).get(selection.shapeId());
+    }
+
+    // A board's snapshot always holds its ShapeList; only derived views (viewport queries) hold plain lists
+    private static ShapeList published(BoardSnapshot snapshot) {
+        return (ShapeList) snapshot.shapes();
+    }
+
+    public void addShape(BoardSession session, Shape shape) {
         if (shape == null)
             return;
-        saveStateToUndo();
-        shapes.add(shape);
-        selectedShapeId = shape.getId(); // Auto select new shape
-        redoStack.clear();
+        update(session, (board, client) -> {
+            HistoryEntry entry = new HistoryEntry();
+            entry.added(board.getShapes().add(shape), shape);
+            board.getHistory().record(entry);
+            client.selectedShapeId = shape.getId(); // Auto select new shape
+        });
     }
 
     // --- SELECTION (CRITICAL FIX) ---
-    public void selectShapeAt(double x, double y) {
-        Shape found = null;
-        // Iterate BACKWARDS to find the top-most shape first
-        for (int i = shapes.size() - 1; i >= 0; i--) {
-            if (hitTest(shapes.get(i), x, y)) {
-                found = shapes.get(i);
-                break; // Stop once we find the top shape
+    public void selectShapeAt(BoardSession session, double x, double y) {
+        update(session, (board, client) -> {
+            // Only shapes whose bounding box covers the point are tested precisely
+            Shape found = board.getShapes().topMostAt(x, y);
+
+            // Update the selection ID
+            if (found != null) {
+                client.selectedShapeId = found.getId();
+            } else {
+                client.selectedShapeId = null; // Deselect if clicking empty space
             }
+            client.selectedIds.clear();
+        });
+    }
+
+    // --- MULTI-SELECTION ---
+    // Marquee: every shape whose bounding box lies completely inside the area
+    public List<String> selectInRect(BoardSession session, Bounds area) {
+        return locked(session, (board, client) -> {
+            List<Shape> found = new ArrayList<>();
+            for (Shape s : board.getShapes().within(area))
+                if (area.contains(board.getShapes().boundsOf(s.getId())))
+                    found.add(s);
+            return select(client, found);
+        });
+    }
+
+    // Lasso: the range query runs on the polygon's box, then every corner of a candidate's
+    // bounding box has to be inside the polygon
+    public List<String> selectInLasso(BoardSession session, PackedPoints polygon) {
+        if (polygon.size() < 3)
+            throw new IllegalArgumentException("A lasso needs at least 3 points");
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (int i = 0; i < polygon.size(); i++) {
+            minX = Math.min(minX, polygon.getX(i));
+            minY = Math.min(minY, polygon.getY(i));
+            maxX = Math.max(maxX, polygon.getX(i));
+            maxY = Math.max(maxY, polygon.getY(i));
         }
+        Bounds area = new Bounds(minX, minY, maxX, maxY);
+        return locked(session, (board, client) -> {
+            List<Shape> found = new ArrayList<>();
+            for (Shape s : board.getShapes().within(area)) {
+                Bounds b = board.getShapes().boundsOf(s.getId());
+                if (ShapeGeometry.insidePolygon(polygon, b.minX(), b.minY())
+                        && ShapeGeometry.insidePolygon(polygon, b.maxX(), b.minY())
+                        && ShapeGeometry.insidePolygon(polygon, b.minX(), b.maxY())
+                        && ShapeGeometry.insidePolygon(polygon, b.maxX(), b.maxY()))
+                    found.add(s);
+            }
+            return select(client, found);
+        });
+    }
 
-        // Update the selection ID
-        if (found != null) {
-            selectedShapeId = found.getId();
-        } else {
-            selectedShapeId = null; // Deselect if clicking empty space
+    // Same rule as selection() below, on the published selection and snapshot
+    public List<String> getSelection(BoardSession session) {
+        Board board = boards.get(session.boardId());
+        Board.Selection selection = board.selection(session.clientId());
+        ShapeList shapes = published(board.snapshot());
+        List<String> ids = new ArrayList<>();
+        if (selection.ids().isEmpty()) {
+            if (shapes.get(selection.shapeId()) != null)
+                ids.add(selection.shapeId());
+            return ids;
         }
+        for (String id : selection.ids())
+            if (shapes.get(id) != null)
+                ids.add(id);
+        return ids;
     }
 
-    // --- UPDATES ---
-    public void updateColor(String color) {
-        updateShapeProperty(s -> s.setColor(color));
+    private static List<String> select(Board.ClientState client, List<Shape> found) {
+        client.selectedIds.clear();
+        for (Shape s : found)
+            client.selectedIds.add(s.getId());
+        client.selectedShapeId = null;
+        return new ArrayList<>(client.selectedIds);
     }
 
-    public void updateFillColor(String color) {
-        updateShapeProperty(s -> s.setFillColor(color));
+    // The marquee/lasso selection if there is one, else the single selected shape; ids deleted
+    // since (by anyone) are skipped
+    private static List<Shape> selection(ShapeStore shapes, Board.ClientState client) {
+        List<Shape> result = new ArrayList<>();
+        if (client.selectedIds.isEmpty()) {
+            Shape s = shapes.get(client.selectedShapeId);
+            if (s != null)
+                result.add(s);
+            return result;
+        }
+        for (String id : client.selectedIds) {
+            Shape s = shapes.get(id);
+            if (s != null)
+                result.add(s);
+        }
+        return result;
     }
 
-    public void updateStrokeWidth(double width) {
-        updateShapeProperty(s -> s.setStrokeWidth(width));
+    // --- BULK EDITS (whole selection, one undo step each) ---
+    public void moveSelection(BoardSession session, double dx, double dy) {
+        editSelection(session, s -> moveShape(s, dx, dy));
     }
 
-    private void updateShapeProperty(java.util.function.Consumer<Shape> updater) {
-        if (selectedShapeId == null)
-            return;
-        Shape s = getShapeById(selectedShapeId);
-        if (s != null) {
-            saveStateToUndo();
-            updater.accept(s);
-            redoStack.clear();
+    // Scales the selection by factor around the center of its bounding box
+    public void scaleSelection(BoardSession session, double factor) {
+        if (!(factor > 0) || Double.isInfinite(factor))
+            throw new IllegalArgumentException("factor must be positive");
+        update(session, (board, client) -> {
+            ShapeStore shapes = board.getShapes();
+            List<Shape> selected = selection(shapes, client);
+            if (selected.isEmpty())
+                return;
+            Bounds box = null;
+            for (Shape s : selected) {
+                Bounds b = ShapeGeometry.bounds(s);
+                box = box == null ? b : box.union(b);
+            }
+            double cx = (box.minX() + box.maxX()) / 2, cy = (box.minY() + box.maxY()) / 2;
+            board.getHistory().record(editAll(shapes, selected, s -> scaleShape(s, factor, cx, cy)));
+        });
+    }
+
+    public void recolorSelection(BoardSession session, String color, String fillColor) {
+        editSelection(session, s -> {
+            if (color != null)
+                s.setColor(color);
+            if (fillColor != null)
+                s.setFillColor(fillColor);
+        });
+    }
+
+    public void setSelectionStrokeWidth(BoardSession session, double width) {
+        editSelection(session, s -> s.setStrokeWidth(width));
+    }
+
+    public void deleteSelection(BoardSession session) {
+        update(session, (board, client) -> {
+            ShapeStore shapes = board.getShapes();
+            HistoryEntry entry = new HistoryEntry();
+            for (Shape s : selection(shapes, client)) {
+                entry.removed(shapes.zOf(s.getId()), s);
+                shapes.remove(s.getId());
+            }
+            board.getHistory().record(entry);
+            client.selectedIds.clear();
+            client.selectedShapeId = null;
+        });
+    }
+
+    private void editSelection(BoardSession session, Consumer<Shape> edit) {
+        update(session, (board, client) -> {
+            ShapeStore shapes = board.getShapes();
+            board.getHistory().record(editAll(shapes, selection(shapes, client), edit));
+        });
+    }
+
+    // Edited copies are made in parallel for large selections (each copy is private to its task);
+    // swapping them into the store and recording the undo entry stay on the writer thread
+    private static HistoryEntry editAll(ShapeStore shapes, List<Shape> selected, Consumer<Shape> edit) {
+        Shape[] edited = new Shape[selected.size()];
+        IntStream indices = IntStream.range(0, edited.length);
+        if (edited.length >= PARALLEL_EDIT_THRESHOLD)
+            indices = indices.parallel();
+        indices.forEach(i -> {
+            Shape copy = selected.get(i).clone();
+            edit.accept(copy);
+            edited[i] = copy;
+        });
+        HistoryEntry entry = new HistoryEntry();
+        for (int i = 0; i < edited.length; i++) {
+            shapes.replace(edited[i]);
+            entry.modified(shapes.zOf(edited[i].getId()), selected.get(i), edited[i]);
         }
+        return entry;
+    }
+
+    // --- UPDATES ---
+    public void updateColor(BoardSession session, String color) {
+        updateShapeProperty(session, s -> s.setColor(color));
+    }
+
+    public void updateFillColor(BoardSession session, String color) {
+        updateShapeProperty(session, s -> s.setFillColor(color));
+    }
+
+    public void updateStrokeWidth(BoardSession session, double width) {
+        updateShapeProperty(session, s -> s.setStrokeWidth(width));
+    }
+
+    private void updateShapeProperty(BoardSession session, java.util.function.Consumer<Shape> updater) {
+        update(session, (board, client) -> {
+            ShapeStore shapes = board.getShapes();
+            Shape before = shapes.get(client.selectedShapeId);
+            if (before != null) {
+                Shape after = before.clone();
+                updater.accept(after);
+                shapes.replace(after);
+                HistoryEntry entry = new HistoryEntry();
+                entry.modified(shapes.zOf(after.getId()), before, after);
+                board.getHistory().record(entry);
+            }
+        });
     }
 
     // --- MOVE / RESIZE ---
-    public void startMove() {
-        moveSnapshot = new ArrayList<>();
-        for (Shape s : shapes)
-            moveSnapshot.add(s.clone());
+    // Only the dragged shape is remembered; the undo entry is written once the drag ends
+    public void startMove(BoardSession session) {
+        update(session, (board, client) -> {
+            client.moveOrigin = board.getShapes().get(client.selectedShapeId);
+            client.moveVersion = board.getShapes().getVersion();
+        });
     }
 
-    public void endMove() {
-        if (moveSnapshot != null) {
-            undoStack.push(moveSnapshot);
-            redoStack.clear();
-            moveSnapshot = null;
-        }
+    public void endMove(BoardSession session) {
+        update(session, (board, client) -> {
+            if (client.moveOrigin != null) {
+                ShapeStore shapes = board.getShapes();
+                Shape s = shapes.get(client.moveOrigin.getId());
+                if (s != null && shapes.changedSince(s.getId(), client.moveVersion)) {
+                    HistoryEntry entry = new HistoryEntry();
+                    entry.modified(shapes.zOf(s.getId()), client.moveOrigin, s);
+                    board.getHistory().record(entry);
+                }
+                client.moveOrigin = null;
+            }
+        });
     }
 
-    public void moveSelected(double dx, double dy) {
-        if (selectedShapeId == null)
-            return;
-        Shape s = getShapeById(selectedShapeId);
-        if (s != null)
-            moveShape(s, dx, dy);
+    public void moveSelected(BoardSession session, double dx, double dy) {
+        update(session, (board, client) -> {
+            Shape current = board.getShapes().get(client.selectedShapeId);
+            if (current != null) {
+                Shape s = current.clone();
+                moveShape(s, dx, dy);
+                board.getShapes().replace(s);
+            }
+        });
     }
 
-    public void resizeSelected(String anchor, double dx, double dy) {
-        if (selectedShapeId == null)
-            return;
-        Shape s = getShapeById(selectedShapeId);
+    public void resizeSelected(BoardSession session, String anchor, double dx, double dy) {
+        update(session, (board, client) -> {
+            Shape current = board.getShapes().get(client.selectedShapeId);
+            if (current == null)
+                return;
+            Shape s = current.clone();
+
+            // Ensure we modify ONLY the selected shape
+            if (s instanceof Rectangle) {
+                Rectangle r = (Rectangle) s;
+                r.setWidth(Math.max(5, r.getWidth() + dx));
+                r.setHeight(Math.max(5, r.getHeight() + dy));
+            } else if (s instanceof Square) {
+                Square sq = (Square) s;
+                sq.setSideLength(Math.max(5, sq.getSideLength() + dx));
+            } else if (s instanceof Circle) {
+                Circle c = (Circle) s;
+                c.setRadius(Math.max(5, c.getRadius() + dx));
+            } else if (s instanceof Ellipse) {
+                Ellipse e = (Ellipse) s;
+                e.setRadiusX(Math.max(5, e.getRadiusX() + dx));
+                e.setRadiusY(Math.max(5, e.getRadiusY() + dy));
+            } else if (s instanceof LineSegment) {
+                LineSegment l = (LineSegment) s;
+                l.setX2(l.getX2() + dx);
+                l.setY2(l.getY2() + dy);
+            } else if (s instanceof Triangle) {
+                Triangle t = (Triangle) s;
+                t.setX2(t.getX2() + dx);
+                t.setY2(t.getY2() + dy);
+                t.setX3(t.getX3() + dx);
+                t.setY3(t.getY3() + dy);
+            }
+            board.getShapes().replace(s);
+        });
+    }
+
+    // --- Z-ORDER ---
+    public void bringToFront(BoardSession session) {
+        update(session, (board, client) -> reorderSelected(board, client, board.getShapes().topZ()));
+    }
+
+    public void sendToBack(BoardSession session) {
+        update(session, (board, client) -> reorderSelected(board, client, board.getShapes().bottomZ()));
+    }
+
+    public void moveForward(BoardSession session) {
+        update(session, (board, client) -> {
+            Shape s = board.getShapes().get(client.selectedShapeId);
+            if (s != null)
+                swapWith(board, s, board.getShapes().above(s.getId()));
+        });
+    }
+
+    public void moveBackward(BoardSession session) {
+        update(session, (board, client) -> {
+            Shape s = board.getShapes().get(client.selectedShapeId);
+            if (s != null)
+                swapWith(board, s, board.getShapes().below(s.getId()));
+        });
+    }
+
+    // A z change is stored as remove + add so undo puts the shape back at its old key
+    private void reorderSelected(Board board, Board.ClientState client, long newZ) {
+        ShapeStore shapes = board.getShapes();
+        Shape s = shapes.get(client.selectedShapeId);
         if (s == null)
             return;
+        HistoryEntry entry = new HistoryEntry();
+        entry.removed(shapes.zOf(s.getId()), s);
+        shapes.remove(s.getId());
+        shapes.insert(s, newZ);
+        entry.added(shapes.zOf(s.getId()), s);
+        board.getHistory().record(entry);
+    }
 
-        // Ensure we modify ONLY the selected shape
-        if (s instanceof Rectangle) {
-            Rectangle r = (Rectangle) s;
-            r.setWidth(Math.max(5, r.getWidth() + dx));
-            r.setHeight(Math.max(5, r.getHeight() + dy));
-        } else if (s instanceof Square) {
-            Square sq = (Square) s;
-            sq.setSideLength(Math.max(5, sq.getSideLength() + dx));
-        } else if (s instanceof Circle) {
-            Circle c = (Circle) s;
-            c.setRadius(Math.max(5, c.getRadius() + dx));
-        } else if (s instanceof Ellipse) {
-            Ellipse e = (Ellipse) s;
-            e.setRadiusX(Math.max(5, e.getRadiusX() + dx));
-            e.setRadiusY(Math.max(5, e.getRadiusY() + dy));
-        } else if (s instanceof LineSegment) {
-            LineSegment l = (LineSegment) s;
-            l.setX2(l.getX2() + dx);
-            l.setY2(l.getY2() + dy);
-        } else if (s instanceof Triangle) {
-            Triangle t = (Triangle) s;
-            t.setX2(t.getX2() + dx);
-            t.setY2(t.getY2() + dy);
-            t.setX3(t.getX3() + dx);
-            t.setY3(t.getY3() + dy);
-        }
+    private void swapWith(Board board, Shape s, Shape other) {
+        if (other == null)
+            return;
+        ShapeStore shapes = board.getShapes();
+        HistoryEntry entry = new HistoryEntry();
+        entry.removed(shapes.zOf(s.getId()), s);
+        entry.removed(shapes.zOf(other.getId()), other);
+        shapes.swap(s.getId(), other.getId());
+        entry.added(shapes.zOf(s.getId()), s);
+        entry.added(shapes.zOf(other.getId()), other);
+        board.getHistory().record(entry);
     }
 
     // --- COPY ---
-    public void copySelected() {
-        if (selectedShapeId != null)
-            clipboardShapeId = selectedShapeId;
+    public void copySelected(BoardSession session) {
+        update(session, (board, client) -> {
+            if (client.selectedShapeId != null)
+                client.clipboardShapeId = client.selectedShapeId;
+        });
     }
 
-    public void pasteSelected(double x, double y) {
-        if (clipboardShapeId == null)
-            return;
-        Shape original = getShapeById(clipboardShapeId);
-        if (original == null)
-            return;
+    public void pasteSelected(BoardSession session, double x, double y) {
+        update(session, (board, client) -> {
+            Shape original = board.getShapes().get(client.clipboardShapeId);
+            if (original == null)
+                return;
+
+            Shape copy = original.clone();
+            copy.setId(UUID.randomUUID().toString());
+
+            if (x != 0 || y != 0) {
+                double dx = x - copy.getX();
+                double dy = y - copy.getY();
+                moveShape(copy, dx, dy);
+            } else {
+                moveShape(copy, 20, 20);
+            }
+            HistoryEntry entry = new HistoryEntry();
+            entry.added(board.getShapes().add(copy), copy);
+            board.getHistory().record(entry);
+            client.selectedShapeId = copy.getId();
+        });
+    }
 
-        saveStateToUndo();
-        Shape copy = original.clone();
-        copy.setId(UUID.randomUUID().toString());
+    public void deleteSelected(BoardSession session) {
+        update(session, (board, client) -> {
+            ShapeStore shapes = board.getShapes();
+            Shape s = shapes.get(client.selectedShapeId);
+            if (s != null) {
+                HistoryEntry entry = new HistoryEntry();
+                entry.removed(shapes.zOf(s.getId()), s);
+                shapes.remove(s.getId());
+                board.getHistory().record(entry);
+            }
+            client.selectedShapeId = null;
+        });
+    }
 
-        if (x != 0 || y != 0) {
-            double dx = x - copy.getX();
-            double dy = y - copy.getY();
-            moveShape(copy, dx, dy);
-        } else {
-            moveShape(copy, 20, 20);
-        }
-        shapes.add(copy);
-        selectedShapeId = copy.getId();
-        redoStack.clear();
+    public void undo(BoardSession session) {
+        update(session, (board, client) -> {
+            rejectInBatch(board, "Undo");
+            HistoryEntry entry = board.getHistory().popUndo();
+            if (entry == null)
+                return;
+            List<HistoryEntry.Change> changes = entry.getChanges();
+            for (int i = changes.size() - 1; i >= 0; i--) {
+                HistoryEntry.Change c = changes.get(i);
+                applyChange(board.getShapes(), c.after(), c.before(), c.z());
+            }
+            board.getHistory().pushRedo(entry);
+        });
     }
 
-    public void deleteSelected() {
-        if (selectedShapeId == null)
-            return;
-        saveStateToUndo();
-        shapes.removeIf(s -> s.getId().equals(selectedShapeId));
-        selectedShapeId = null;
-        redoStack.clear();
+    public void redo(BoardSession session) {
+        update(session, (board, client) -> {
+            rejectInBatch(board, "Redo");
+            HistoryEntry entry = board.getHistory().popRedo();
+            if (entry == null)
+                return;
+            for (HistoryEntry.Change c : entry.getChanges())
+                applyChange(board.getShapes(), c.before(), c.after(), c.z());
+            board.getHistory().pushUndo(entry);
+        });
     }
 
-    public void undo() {
-        if (undoStack.isEmpty())
-            return;
-        saveStateToRedo();
-        shapes = undoStack.pop();
+    // --- HISTORY TIMELINE (read-only; see BoardTimeline) ---
+    public List<TimelineEntry> getTimeline(BoardSession session) {
+        return boards.get(session.boardId()).getTimeline().versions();
     }
 
-    public void redo() {
-        if (redoStack.isEmpty())
-            return;
-        saveStateToUndo();
-        shapes = redoStack.pop();
+    // The board as it was at a version listed by getTimeline, or null if that version isn't kept
+    public List<Shape> getShapesAt(BoardSession session, long version) throws IOException {
+        return boards.get(session.boardId()).getTimeline().shapesAt(version);
+    }
+
+    // --- BATCH ---
+    // Runs commands (regular calls on this service for the same session) as one atomic step. The board
+    // lock is held throughout, so no other writer interleaves and readers never see a partial batch:
+    // the nested calls don't publish, only this one does at the end. Their history entries become a
+    // single undo step. If a command throws, everything the batch recorded so far is reverted (and the
+    // client's selection restored) before the exception is passed on. Undo, redo and loads can't be
+    // part of a batch.
+    public void batch(BoardSession session, Runnable commands) {
+        update(session, (board, client) -> {
+            BoardHistory history = board.getHistory();
+            String selected = client.selectedShapeId, clipboard = client.clipboardShapeId;
+            Shape moveOrigin = client.moveOrigin;
+            long moveVersion = client.moveVersion;
+            List<String> selectedIds = new ArrayList<>(client.selectedIds);
+            history.beginBatch();
+            try {
+                commands.run();
+            } catch (RuntimeException e) {
+                List<HistoryEntry.Change> changes = history.abortBatch().getChanges();
+                for (int i = changes.size() - 1; i >= 0; i--) {
+                    HistoryEntry.Change c = changes.get(i);
+                    applyChange(board.getShapes(), c.after(), c.before(), c.z());
+                }
+                client.selectedShapeId = selected;
+                client.clipboardShapeId = clipboard;
+                client.moveOrigin = moveOrigin;
+                client.moveVersion = moveVersion;
+                client.selectedIds.clear();
+                client.selectedIds.addAll(selectedIds);
+                board.publish();
+                throw e;
+            }
+            history.endBatch();
+        });
+    }
+
+    private void rejectInBatch(Board board, String operation) {
+        if (board.getHistory().isBatching())
+            throw new IllegalArgumentException(operation + " can't be part of a batch");
+    }
+
+    // --- SIMPLIFY ---
+    // Re-simplifies every freehand stroke on the board as one undoable step
+    public SimplifyResult simplifyStrokes(BoardSession session, double tolerance) {
+        return locked(session, (board, client) -> {
+            ShapeStore shapes = board.getShapes();
+            HistoryEntry entry = new HistoryEntry();
+            int strokes = 0;
+            long before = 0, after = 0;
+            for (Shape s : shapes.list()) {
+                if (!(s instanceof FreehandShape))
+                    continue;
+                PackedPoints points = ((FreehandShape) s).getPoints();
+                PackedPoints kept = StrokeSimplifier.simplify(points, tolerance);
+                before += points.size();
+                after += kept.size();
+                if (kept == points)
+                    continue;
+                FreehandShape copy = (FreehandShape) s.clone();
+                copy.setPoints(kept);
+                shapes.replace(copy);
+                entry.modified(shapes.zOf(copy.getId()), s, copy);
+                strokes++;
+            }
+            board.getHistory().record(entry);
+            return new SimplifyResult(strokes, before, after);
+        });
     }
 
     // --- HELPERS ---
-    private void moveShape(Shape s, double dx, double dy) {
+    // Runs one write on the board under its lock (single writer) and publishes a new snapshot and the
+    // client's selection afterwards; reads never come through here. A board passivated while we waited
+    // for the lock is fetched (reloaded) again.
+    private <T> T locked(BoardSession session, BiFunction<Board, Board.ClientState, T> action) {
+        while (true) {
+            Board board = boards.get(session.boardId());
+            board.lock();
+            Board.ClientState client = null;
+            try {
+                if (board.isRetired())
+                    continue;
+                client = board.client(session.clientId());
+                T result = action.apply(board, client);
+                if (!board.isNested())
+                    board.publish();
+                return result;
+            } finally {
+                if (client != null && !board.isNested())
+                    board.publishSelection(session.clientId(), client);
+                board.unlock();
+            }
+        }
+    }
+
+    private void update(BoardSession session, BiConsumer<Board, Board.ClientState> action) {
+        locked(session, (board, client) -> {
+            action.accept(board, client);
+            return null;
+        });
+    }
+
+    // Only ever called on a fresh copy that is not yet visible to readers
+    private static void scaleShape(Shape s, double f, double ox, double oy) {
+        if (s instanceof Rectangle) {
+            Rectangle r = (Rectangle) s;
+            r.setX(ox + (r.getX() - ox) * f);
+            r.setY(oy + (r.getY() - oy) * f);
+            r.setWidth(r.getWidth() * f);
+            r.setHeight(r.getHeight() * f);
+        } else if (s instanceof Square) {
+            Square sq = (Square) s;
+            sq.setX(ox + (sq.getX() - ox) * f);
+            sq.setY(oy + (sq.getY() - oy) * f);
+            sq.setSideLength(sq.getSideLength() * f);
+        } else if (s instanceof Circle) {
+            Circle c = (Circle) s;
+            c.setX(ox + (c.getX() - ox) * f);
+            c.setY(oy + (c.getY() - oy) * f);
+            c.setRadius(c.getRadius() * f);
+        } else if (s instanceof Ellipse) {
+            Ellipse e = (Ellipse) s;
+            e.setX(ox + (e.getX() - ox) * f);
+            e.setY(oy + (e.getY() - oy) * f);
+            e.setRadiusX(e.getRadiusX() * f);
+            e.setRadiusY(e.getRadiusY() * f);
+        } else if (s instanceof LineSegment) {
+            LineSegment l = (LineSegment) s;
+            l.setX(ox + (l.getX() - ox) * f);
+            l.setY(oy + (l.getY() - oy) * f);
+            l.setX2(ox + (l.getX2() - ox) * f);
+            l.setY2(oy + (l.getY2() - oy) * f);
+        } else if (s instanceof Triangle) {
+            Triangle t = (Triangle) s;
+            t.setX(ox + (t.getX() - ox) * f);
+            t.setY(oy + (t.getY() - oy) * f);
+            t.setX2(ox + (t.getX2() - ox) * f);
+            t.setY2(oy + (t.getY2() - oy) * f);
+            t.setX3(ox + (t.getX3() - ox) * f);
+            t.setY3(oy + (t.getY3() - oy) * f);
+        } else if (s instanceof FreehandShape) {
+            ((FreehandShape) s).getPoints().scale(f, ox, oy);
+        }
+    }
+
+    // Only ever called on a fresh copy that is not yet visible to readers
+    private static void moveShape(Shape s, double dx, double dy) {
         if (s instanceof Rectangle) {
             ((Rectangle) s).setX(((Rectangle) s).getX() + dx);
             ((Rectangle) s).setY(((Rectangle) s).getY() + dy);
@@ -218,95 +705,102 @@ public class PaintService {
             t.setX3(t.getX3() + dx);
             t.setY3(t.getY3() + dy);
         } else if (s instanceof FreehandShape) {
-            for (var p : ((FreehandShape) s).getPoints()) {
-                p.put("x", p.get("x") + dx);
-                p.put("y", p.get("y") + dy);
-            }
+            ((FreehandShape) s).getPoints().translate(dx, dy);
         }
     }
 
-    private void saveStateToUndo() {
-        List<Shape> snapshot = new ArrayList<>();
-        for (Shape s : shapes)
-            snapshot.add(s.clone());
-        undoStack.push(snapshot);
-    }
-
-    private void saveStateToRedo() {
-        List<Shape> snapshot = new ArrayList<>();
-        for (Shape s : shapes)
-            snapshot.add(s.clone());
-        redoStack.push(snapshot);
+    // Replaces shape "from" by "to" (either may be null for add/remove). Shapes are never edited
+    // in place once stored, so history entries can share instances with the board.
+    private void applyChange(ShapeStore shapes, Shape from, Shape to, long z) {
+        if (from != null && shapes.get(from.getId()) == null)
+            return;
+        if (to == null)
+            shapes.remove(from.getId());
+        else if (from == null)
+            shapes.insert(to, z);
+        else
+            shapes.replace(to);
     }
 
-    private Shape getShapeById(String id) {
-        for (Shape s : shapes)
-            if (s.getId().equals(id))
-                return s;
-        return null;
+    // Removals are recorded top-down so undo can re-insert them bottom-up
+    private void recordRemoveAll(ShapeStore shapes, HistoryEntry entry) {
+        List<Shape> all = shapes.list();
+        for (int i = all.size() - 1; i >= 0; i--)
+            entry.removed(shapes.zOf(all.get(i).getId()), all.get(i));
     }
 
-    private boolean hitTest(Shape s, double px, double py) {
-        if (s instanceof Rectangle) {
-            Rectangle r = (Rectangle) s;
-            return px >= r.getX() && px <= r.getX() + r.getWidth() && py >= r.getY() && py <= r.getY() + r.getHeight();
-        }
-        if (s instanceof Square) {
-            Square sq = (Square) s;
-            return px >= sq.getX() && px <= sq.getX() + sq.getSideLength() && py >= sq.getY()
-                    && py <= sq.getY() + sq.getSideLength();
-        }
-        if (s instanceof Circle) {
-            Circle c = (Circle) s;
-            double dx = px - c.getX();
-            double dy = py - c.getY();
-            return dx * dx + dy * dy <= c.getRadius() * c.getRadius();
-        }
-        if (s instanceof Ellipse) {
-            Ellipse e = (Ellipse) s;
-            double val = Math.pow(px - e.getX(), 2) / Math.pow(e.getRadiusX(), 2)
-                    + Math.pow(py - e.getY(), 2) / Math.pow(e.getRadiusY(), 2);
-            return val <= 1.0;
-        }
-        if (s instanceof Triangle) {
-            Triangle t = (Triangle) s;
-            double minX = Math.min(t.getX(), Math.min(t.getX2(), t.getX3()));
-            double maxX = Math.max(t.getX(), Math.max(t.getX2(), t.getX3()));
-            double minY = Math.min(t.getY(), Math.min(t.getY2(), t.getY3()));
-            double maxY = Math.max(t.getY(), Math.max(t.getY2(), t.getY3()));
-            return px >= minX && px <= maxX && py >= minY && py <= maxY;
+    // --- FILE I/O ---
+    // Writes the given snapshot (taken by the caller before the response starts) to out, gzipped if asked.
+    // Timed as painter.save; when streaming to a client that includes waiting on the network.
+    public void save(BoardSnapshot snapshot, OutputStream out, DrawingFormat format, boolean pretty, boolean gzip)
+            throws IOException {
+        Timer.Sample sample = Timer.start(meters);
+        String outcome = "error";
+        try {
+            if (!gzip) {
+                io.write(snapshot.shapes(), snapshot.json(), out, format, pretty);
+                out.flush();
+            } else {
+                GZIPOutputStream zip = new GZIPOutputStream(out, 8192);
+                io.write(snapshot.shapes(), snapshot.json(), zip, format, pretty);
+                zip.finish();
+            }
+            outcome = "success";
+        } finally {
+            sample.stop(ioTimer("painter.save", format, outcome));
         }
-        return true;
     }
 
-    // ... (File I/O methods remain the same) ...
-
-    public String SavetoJson() throws IOException {
-        return new ObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(shapes);
+    // The upload is parsed outside the board lock (it can take a while) and swapped in as one step,
+    // so other editors aren't blocked and a failed or oversized import leaves the board untouched
+    public void loadFromFile(BoardSession session, MultipartFile file) throws IOException {
+        LoadProgress progress = new LoadProgress(file.getSize());
+        boards.get(session.boardId()).setLoadProgress(progress);
+        DrawingFormat format = DrawingFormat.fromFilename(file.getOriginalFilename());
+        Timer.Sample sample = Timer.start(meters);
+        List<Shape> loaded;
+        try (InputStream in = file.getInputStream()) {
+            loaded = io.read(in, format, progress);
+        } catch (IOException | RuntimeException e) {
+            progress.fail(e.getMessage());
+            sample.stop(ioTimer("painter.load", format, "error"));
+            throw e;
+        }
+        update(session, (board, client) -> {
+            ShapeStore shapes = board.getShapes();
+            HistoryEntry entry = new HistoryEntry();
+            recordRemoveAll(shapes, entry);
+            shapes.clear();
+            for (Shape s : loaded) {
+                if (s.getId() == null)
+                    s.setId(UUID.randomUUID().toString());
+                entry.added(shapes.add(s), s);
+            }
+            board.getHistory().record(entry);
+            client.selectedShapeId = null;
+            client.selectedIds.clear();
+        });
+        progress.done();
+        sample.stop(ioTimer("painter.load", format, "success"));
     }
 
-    public String SavetoXml() throws IOException {
-        return new XmlMapper().writerWithDefaultPrettyPrinter().writeValueAsString(shapes);
+    private Timer ioTimer(String name, DrawingFormat format, String outcome) {
+        return Timer.builder(name).tag("format", format.name().toLowerCase()).tag("outcome", outcome)
+                .register(meters);
     }
 
-    public void loadFromFile(MultipartFile file) throws IOException {
-        String content = new String(file.getBytes());
-        List<Shape> loaded;
-        if (file.getOriginalFilename().endsWith(".xml"))
-            loaded = new XmlMapper().readValue(content, new TypeReference<List<Shape>>() {
-            });
-        else
-            loaded = new ObjectMapper().readValue(content, new TypeReference<List<Shape>>() {
-            });
-        saveStateToUndo();
-        shapes = loaded;
-        selectedShapeId = null;
+    public LoadProgress getLoadProgress(BoardSession session) {
+        return boards.get(session.boardId()).getLoadProgress();
     }
 
-    public void clearBoard() {
-        saveStateToUndo();
-        shapes.clear();
-        redoStack.clear();
-        selectedShapeId = null; // Ensure selection is cleared
+    public void clearBoard(BoardSession session) {
+        update(session, (board, client) -> {
+            HistoryEntry entry = new HistoryEntry();
+            recordRemoveAll(board.getShapes(), entry);
+            board.getShapes().clear();
+            board.getHistory().record(entry);
+            client.selectedShapeId = null; // Ensure selection is cleared
+            client.selectedIds.clear();
+        });
     }
-}
\ No newline at end of file
+}
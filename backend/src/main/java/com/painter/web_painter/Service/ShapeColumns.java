@@ -0,0 +1,685 @@
+package com.painter.web_painter.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.core.util.DefaultIndenter;
+import com.painter.web_painter.model.Bounds;
+import com.painter.web_painter.model.Circle;
+import com.painter.web_painter.model.Ellipse;
+import com.painter.web_painter.model.LineSegment;
+import com.painter.web_painter.model.Rectangle;
+import com.painter.web_painter.model.Shape;
+import com.painter.web_painter.model.Square;
+import com.painter.web_painter.model.Triangle;
+
+/**
+ * Struct-of-arrays table behind {@link ShapeStore}: one row per shape. Rectangles, squares, circles,
+ * ellipses, lines and triangles are kept as columns only: a kind byte, the id as two longs (ids that
+ * aren't lower-case UUIDs are kept as strings), primitive coordinates and dictionary-encoded colors.
+ * Anything else (freehand strokes) is kept as the object itself. Shape objects are only made
+ * ("materialized") when a caller asks for one.
+ * Rows are grouped in chunks of CHUNK. {@link #freeze} hands the current chunks to an immutable
+ * {@link ShapeList}; from then on the writer copies a chunk before its first change to it, so
+ * a published list never sees later writes and each chunk is copied at most once per publish.
+ */
+public class ShapeColumns {
+    static final int OBJECT = -1, RECTANGLE = 0, SQUARE = 1, CIRCLE = 2, ELLIPSE = 3, LINE = 4, TRIANGLE = 5;
+    static final int CHUNK_BITS = 9, CHUNK = 1 << CHUNK_BITS, MASK = CHUNK - 1;
+    private static final int ID_BLOCK_BITS = 10, ID_BLOCK = 1 << ID_BLOCK_BITS, ID_MASK = ID_BLOCK - 1;
+
+    private static final String[] TYPES = { "rectangle", "square", "circle", "ellipse", "line", "triangle" };
+    private static final Class<?>[] CLASSES = { Rectangle.class, Square.class, Circle.class, Ellipse.class,
+            LineSegment.class, Triangle.class };
+    // JSON properties of each kind in the order Jackson writes them
+    private static final String[][] FIELDS = {
+            fields("width", "height"), fields("sideLength"), fields("radius"), fields("radiusX", "radiusY"),
+            fields("x2", "y2"), fields("x2", "y2", "x3", "y3") };
+    private static final byte[][][] COMPACT_NAMES = names(false), PRETTY_NAMES = names(true);
+    private static final byte[][] TYPE_JSON = new byte[TYPES.length][];
+    private static final byte[] NULL = ascii("null");
+    private static final byte[] HEX = ascii("0123456789abcdef");
+
+    static {
+        for (int k = 0; k < TYPES.length; k++)
+            TYPE_JSON[k] = quote(TYPES[k]);
+    }
+
+    // One slice of CHUNK rows; writable while its epoch is the table's, shared with published lists after that
+    static final class Chunk {
+        final long epoch;
+        final byte[] kind;
+        final long[] idHi, idLo;
+        String[] rawIds; // ids that aren't lower-case UUIDs; null until needed
+        final double[] x, y, a, b, stroke;
+        double[] c, d; // only triangles have a third point; null until needed
+        final int[] color, fill;
+        final long[] z;
+        Shape[] objects; // rows of kind OBJECT; null until needed
+
+        Chunk(long epoch) {
+            this.epoch = epoch;
+            kind = new byte[CHUNK];
+            idHi = new long[CHUNK];
+            idLo = new long[CHUNK];
+            x = new double[CHUNK];
+            y = new double[CHUNK];
+            a = new double[CHUNK];
+            b = new double[CHUNK];
+            stroke = new double[CHUNK];
+            color = new int[CHUNK];
+            fill = new int[CHUNK];
+            z = new long[CHUNK];
+        }
+
+        private Chunk(Chunk from, long epoch) {
+            this.epoch = epoch;
+            kind = from.kind.clone();
+            idHi = from.idHi.clone();
+            idLo = from.idLo.clone();
+            rawIds = from.rawIds == null ? null : from.rawIds.clone();
+            x = from.x.clone();
+            y = from.y.clone();
+            a = from.a.clone();
+            b = from.b.clone();
+            c = from.c == null ? null : from.c.clone();
+            d = from.d == null ? null : from.d.clone();
+            stroke = from.stroke.clone();
+            color = from.color.clone();
+            fill = from.fill.clone();
+            z = from.z.clone();
+            objects = from.objects == null ? null : from.objects.clone();
+        }
+    }
+
+    // Codes are counted per row that uses them, and a code no row uses any more goes to the next new color,
+    // so the dictionary is sized by the colors on the board rather than every color it ever held. Published
+    // lists keep reading the arrays they were given: reusing a code copies them first if one was handed out.
+    private static final class Dictionary {
+        final Map<String, Integer> codes = new HashMap<>();
+        String[] values = { null };
+        byte[][] json = { NULL };
+        int[] uses = { 0 };
+        int[] free = new int[0];
+        int freeCount;
+        int size = 1;
+        boolean shared; // values and json were handed to a published list
+
+        // The color's code, counted as one more use
+        int acquire(String s) {
+            if (s == null)
+                return 0;
+            Integer code = codes.get(s);
+            if (code != null) {
+                uses[code]++;
+                return code;
+            }
+            int c;
+            if (freeCount > 0) {
+                c = free[--freeCount];
+                if (shared) {
+                    values = values.clone();
+                    json = json.clone();
+                    shared = false;
+                }
+            } else {
+                if (size == values.length) {
+                    values = Arrays.copyOf(values, size * 2);
+                    json = Arrays.copyOf(json, size * 2);
+                    uses = Arrays.copyOf(uses, size * 2);
+                    shared = false;
+                }
+                c = size++;
+            }
+            values[c] = s;
+            json[c] = quote(s);
+            uses[c] = 1;
+            codes.put(s, c);
+            return c;
+        }
+
+        void release(int code) {
+            if (code == 0 || --uses[code] > 0)
+                return;
+            codes.remove(values[code]);
+            if (freeCount == free.length)
+                free = Arrays.copyOf(free, Math.max(16, freeCount * 2));
+            free[freeCount++] = code;
+        }
+    }
+
+    private Chunk[] chunks = new Chunk[0];
+    private long epoch;
+    private int limit; // rows ever handed out; rows below it are live or on the free list
+    private int[] free = new int[0];
+    private int freeCount;
+    private int size;
+    private Dictionary colors = new Dictionary();
+    // Open addressing over row + 1 (0 = empty) in blocks of up to ID_BLOCK slots, shared with frozen lists
+    // and copied before their first change after that like the chunks
+    private int[][] ids = { new int[16] };
+    private long[] idEpochs = { 0 };
+
+    // Kind a shape is stored as in the columns: its class decides, OBJECT for anything else
+    static int kindOf(Shape s) {
+        for (int k = 0; k < CLASSES.length; k++)
+            if (s.getClass() == CLASSES[k])
+                return k;
+        return OBJECT;
+    }
+
+    // The kind's parameters in column order (a, b, c, d); 0 where the kind has fewer
+    static double param(Shape s, int i) {
+        if (s instanceof Rectangle r)
+            return i == 0 ? r.getWidth() : i == 1 ? r.getHeight() : 0;
+        if (s instanceof Square sq)
+            return i == 0 ? sq.getSideLength() : 0;
+        if (s instanceof Circle ci)
+            return i == 0 ? ci.getRadius() : 0;
+        if (s instanceof Ellipse e)
+            return i == 0 ? e.getRadiusX() : i == 1 ? e.getRadiusY() : 0;
+        if (s instanceof LineSegment l)
+            return i == 0 ? l.getX2() : i == 1 ? l.getY2() : 0;
+        if (s instanceof Triangle t)
+            return switch (i) {
+                case 0 -> t.getX2();
+                case 1 -> t.getY2();
+                case 2 -> t.getX3();
+                default -> t.getY3();
+            };
+        return 0;
+    }
+
+    // Primitive kinds are only stored as columns when materializing gives back an equal shape
+    private static int columnKind(Shape s) {
+        int kind = kindOf(s);
+        return kind != OBJECT && TYPES[kind].equals(s.getType()) ? kind : OBJECT;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Color codes handed out so far, in use or free to reuse
+    int colorCodes() {
+        return colors.size;
+    }
+
+    // --- ROWS ---
+    // Stores the shape in a free row and returns it; the id must not be stored yet
+    int add(Shape s, long z) {
+        if (s.getId() == null)
+            throw new IllegalArgumentException("Shape has no id");
+        int row = freeCount > 0 ? free[--freeCount] : limit++;
+        write(row, s);
+        chunk(row).z[row & MASK] = z;
+        size++;
+        if (2 * (size + 1) > capacity(ids))
+            rehash(capacity(ids) * 2);
+        setSlot(slotFor(row), row + 1);
+        return row;
+    }
+
+    // Overwrites a row with a new version of its shape (same id), keeping its z
+    void set(int row, Shape s) {
+        Chunk c = chunks[row >>> CHUNK_BITS];
+        int slot = row & MASK;
+        boolean columns = c.kind[slot] != OBJECT;
+        int color = c.color[slot], fill = c.fill[slot];
+        write(row, s); // takes the new codes first, so an unchanged color keeps its code
+        if (columns) {
+            colors.release(color);
+            colors.release(fill);
+        }
+    }
+
+    void setZ(int row, long z) {
+        chunk(row).z[row & MASK] = z;
+    }
+
+    void remove(int row) {
+        int i = find(row);
+        setSlot(i, 0);
+        // Backward-shift deletion: pull later entries of the probe run into the hole
+        int mask = capacity(ids) - 1;
+        for (int j = (i + 1) & mask; slot(ids, j) != 0; j = (j + 1) & mask) {
+            int home = hash(slot(ids, j) - 1) & mask;
+            boolean stays = i <= j ? i < home && home <= j : i < home || home <= j;
+            if (!stays) {
+                setSlot(i, slot(ids, j));
+                setSlot(j, 0);
+                i = j;
+            }
+        }
+        Chunk c = chunk(row);
+        int slot = row & MASK;
+        if (c.kind[slot] != OBJECT) {
+            colors.release(c.color[slot]);
+            colors.release(c.fill[slot]);
+        }
+        if (c.objects != null)
+            c.objects[slot] = null;
+        if (c.rawIds != null)
+            c.rawIds[slot] = null;
+        if (freeCount == free.length)
+            free = Arrays.copyOf(free, Math.max(16, freeCount * 2));
+        free[freeCount++] = row;
+        size--;
+    }
+
+    void clear() {
+        chunks = new Chunk[0];
+        limit = 0;
+        freeCount = 0;
+        size = 0;
+        colors = new Dictionary();
+        ids = new int[][] { new int[16] };
+        idEpochs = new long[] { epoch };
+    }
+
+    // Row holding that id, or -1
+    int find(String id) {
+        return find(ids, chunks, id);
+    }
+
+    // The same lookup on a frozen table and its chunks
+    static int find(int[][] ids, Chunk[] chunks, String id) {
+        if (id == null)
+            return -1;
+        boolean compact = isCompactId(id);
+        long hi = compact ? idHi(id) : 0, lo = compact ? idLo(id) : 0;
+        int mask = capacity(ids) - 1;
+        for (int i = (compact ? hash(hi, lo) : hash(id)) & mask; slot(ids, i) != 0; i = (i + 1) & mask) {
+            int row = slot(ids, i) - 1;
+            Chunk c = chunks[row >>> CHUNK_BITS];
+            int slot = row & MASK;
+            String raw = c.rawIds == null ? null : c.rawIds[slot];
+            if (compact ? raw == null && c.idHi[slot] == hi && c.idLo[slot] == lo : id.equals(raw))
+                return row;
+        }
+        return -1;
+    }
+
+    Shape get(int row) {
+        return materialize(chunks[row >>> CHUNK_BITS], row & MASK, colors.values);
+    }
+
+    // The stored object of an OBJECT row, null for column rows
+    Shape object(int row) {
+        Chunk c = chunks[row >>> CHUNK_BITS];
+        return c.objects == null ? null : c.objects[row & MASK];
+    }
+
+    long z(int row) {
+        return chunks[row >>> CHUNK_BITS].z[row & MASK];
+    }
+
+    String id(int row) {
+        return id(chunks[row >>> CHUNK_BITS], row & MASK);
+    }
+
+    Bounds bounds(int row) {
+        Chunk c = chunks[row >>> CHUNK_BITS];
+        int slot = row & MASK;
+        if (c.kind[slot] == OBJECT)
+            return ShapeGeometry.bounds(c.objects[slot]);
+        return ShapeGeometry.bounds(c.kind[slot], c.x[slot], c.y[slot], c.a[slot], c.b[slot], param(c.c, slot),
+                param(c.d, slot), c.stroke[slot]);
+    }
+
+    // Precise hit test straight on the columns
+    boolean hitTest(int row, double px, double py) {
+        Chunk c = chunks[row >>> CHUNK_BITS];
+        int slot = row & MASK;
+        if (c.kind[slot] == OBJECT)
+            return ShapeGeometry.hitTest(c.objects[slot], px, py);
+        return ShapeGeometry.hitTest(c.kind[slot], c.x[slot], c.y[slot], c.a[slot], c.b[slot], param(c.c, slot),
+                param(c.d, slot), c.stroke[slot], px, py);
+    }
+
+    // Immutable list of the given rows (bottom to top) as they are now, with the store's index and change
+    // log frozen at the same point
+    ShapeList freeze(ZOrder.Frozen rows, SpatialIndex.Frozen index, ChangeLog.Frozen changes) {
+        Chunk[] frozen = Arrays.copyOf(chunks, (limit + MASK) >>> CHUNK_BITS);
+        epoch++;
+        colors.shared = true;
+        return new ShapeList(frozen, rows, ids.clone(), colors.values, colors.json, index, changes);
+    }
+
+    private void write(int row, Shape s) {
+        Chunk c = chunk(row);
+        int slot = row & MASK;
+        int kind = columnKind(s);
+        if (c.objects != null)
+            c.objects[slot] = null;
+        c.kind[slot] = (byte) kind;
+        String id = s.getId();
+        if (isCompactId(id)) {
+            c.idHi[slot] = idHi(id);
+            c.idLo[slot] = idLo(id);
+            if (c.rawIds != null)
+                c.rawIds[slot] = null;
+        } else {
+            if (c.rawIds == null)
+                c.rawIds = new String[CHUNK];
+            c.rawIds[slot] = id;
+        }
+        if (kind == OBJECT) {
+            if (c.objects == null)
+                c.objects = new Shape[CHUNK];
+            c.objects[slot] = s;
+            return;
+        }
+        c.x[slot] = s.getX();
+        c.y[slot] = s.getY();
+        c.a[slot] = param(s, 0);
+        c.b[slot] = param(s, 1);
+        if (kind == TRIANGLE) {
+            if (c.c == null) {
+                c.c = new double[CHUNK];
+                c.d = new double[CHUNK];
+            }
+            c.c[slot] = param(s, 2);
+            c.d[slot] = param(s, 3);
+        }
+        c.stroke[slot] = s.getStrokeWidth();
+        c.color[slot] = colors.acquire(s.getColor());
+        c.fill[slot] = colors.acquire(s.getFillColor());
+    }
+
+    // The row's chunk, copied first if a published list still shares it
+    private Chunk chunk(int row) {
+        int i = row >>> CHUNK_BITS;
+        if (i >= chunks.length)
+            chunks = Arrays.copyOf(chunks, Math.max(i + 1, chunks.length * 2));
+        Chunk c = chunks[i];
+        if (c == null)
+            c = chunks[i] = new Chunk(epoch);
+        else if (c.epoch != epoch)
+            c = chunks[i] = new Chunk(c, epoch);
+        return c;
+    }
+
+    // --- ID LOOKUP ---
+    private int find(int row) {
+        int mask = capacity(ids) - 1;
+        int i = hash(row) & mask;
+        while (slot(ids, i) != row + 1)
+            i = (i + 1) & mask;
+        return i;
+    }
+
+    private int slotFor(int row) {
+        int mask = capacity(ids) - 1;
+        int i = hash(row) & mask;
+        while (slot(ids, i) != 0)
+            i = (i + 1) & mask;
+        return i;
+    }
+
+    private void rehash(int capacity) {
+        int[][] old = ids;
+        ids = new int[Math.max(1, capacity >>> ID_BLOCK_BITS)][];
+        for (int b = 0; b < ids.length; b++)
+            ids[b] = new int[Math.min(capacity, ID_BLOCK)];
+        idEpochs = new long[ids.length];
+        Arrays.fill(idEpochs, epoch);
+        for (int[] block : old)
+            for (int entry : block)
+                if (entry != 0)
+                    setSlot(slotFor(entry - 1), entry);
+    }
+
+    private static int capacity(int[][] ids) {
+        return ids.length * ids[0].length;
+    }
+
+    private static int slot(int[][] ids, int i) {
+        return ids[i >>> ID_BLOCK_BITS][i & ID_MASK];
+    }
+
+    // Writes a slot, copying its block first if a frozen list still shares it
+    private void setSlot(int i, int entry) {
+        int b = i >>> ID_BLOCK_BITS;
+        if (idEpochs[b] != epoch) {
+            ids[b] = ids[b].clone();
+            idEpochs[b] = epoch;
+        }
+        ids[b][i & ID_MASK] = entry;
+    }
+
+    private int hash(int row) {
+        Chunk c = chunks[row >>> CHUNK_BITS];
+        int slot = row & MASK;
+        String raw = c.rawIds == null ? null : c.rawIds[slot];
+        return raw != null ? hash(raw) : hash(c.idHi[slot], c.idLo[slot]);
+    }
+
+    private static int hash(long hi, long lo) {
+        long h = (hi ^ Long.rotateLeft(lo, 29)) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static int hash(String id) {
+        int h = id.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // Canonical lower-case UUID text, which is what new UUID(hi, lo).toString() gives back
+    static boolean isCompactId(String id) {
+        if (id == null || id.length() != 36)
+            return false;
+        for (int i = 0; i < 36; i++) {
+            char ch = id.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (ch != '-')
+                    return false;
+            } else if (!(ch >= '0' && ch <= '9' || ch >= 'a' && ch <= 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long idHi(String id) {
+        return hex(id, 0, 8) << 32 | hex(id, 9, 13) << 16 | hex(id, 14, 18);
+    }
+
+    private static long idLo(String id) {
+        return hex(id, 19, 23) << 48 | hex(id, 24, 36);
+    }
+
+    private static long hex(String s, int from, int to) {
+        long v = 0;
+        for (int i = from; i < to; i++)
+            v = v << 4 | Character.digit(s.charAt(i), 16);
+        return v;
+    }
+
+    // --- MATERIALIZING ---
+    static Shape materialize(Chunk c, int slot, String[] colors) {
+        Shape s;
+        switch (c.kind[slot]) {
+            case RECTANGLE -> {
+                Rectangle r = new Rectangle();
+                r.setWidth(c.a[slot]);
+                r.setHeight(c.b[slot]);
+                s = r;
+            }
+            case SQUARE -> {
+                Square sq = new Square();
+                sq.setSideLength(c.a[slot]);
+                s = sq;
+            }
+            case CIRCLE -> {
+                Circle ci = new Circle();
+                ci.setRadius(c.a[slot]);
+                s = ci;
+            }
+            case ELLIPSE -> {
+                Ellipse e = new Ellipse();
+                e.setRadiusX(c.a[slot]);
+                e.setRadiusY(c.b[slot]);
+                s = e;
+            }
+            case LINE -> {
+                LineSegment l = new LineSegment();
+                l.setX2(c.a[slot]);
+                l.setY2(c.b[slot]);
+                s = l;
+            }
+            case TRIANGLE -> {
+                Triangle t = new Triangle();
+                t.setX2(c.a[slot]);
+                t.setY2(c.b[slot]);
+                t.setX3(c.c[slot]);
+                t.setY3(c.d[slot]);
+                s = t;
+            }
+            default -> {
+                return c.objects[slot];
+            }
+        }
+        s.setId(id(c, slot));
+        s.setX(c.x[slot]);
+        s.setY(c.y[slot]);
+        s.setColor(colors[c.color[slot]]);
+        s.setFillColor(colors[c.fill[slot]]);
+        s.setStrokeWidth(c.stroke[slot]);
+        return s;
+    }
+
+    static String id(Chunk c, int slot) {
+        if (c.rawIds != null && c.rawIds[slot] != null)
+            return c.rawIds[slot];
+        if (c.kind[slot] == OBJECT)
+            return c.objects[slot].getId();
+        return new UUID(c.idHi[slot], c.idLo[slot]).toString();
+    }
+
+    private static double param(double[] column, int slot) {
+        return column == null ? 0 : column[slot];
+    }
+
+    // --- JSON ---
+    // Writes a column row exactly as Jackson would write the materialized shape (single object, compact or
+    // with the default pretty printer)
+    static void writeJson(Chunk c, int slot, byte[][] colorJson, ByteArrayOutputStream out, boolean pretty) {
+        int kind = c.kind[slot];
+        String raw = c.rawIds == null ? null : c.rawIds[slot];
+        writeJson(out, pretty, kind, raw, c.idHi[slot], c.idLo[slot], c.x[slot], c.y[slot],
+                colorJson[c.color[slot]], colorJson[c.fill[slot]], c.stroke[slot], c.a[slot], c.b[slot],
+                param(c.c, slot), param(c.d, slot));
+    }
+
+    // Same for a shape object that would be stored as columns; false (nothing written) for any other shape
+    static boolean writeJson(Shape s, ByteArrayOutputStream out, boolean pretty) {
+        int kind = columnKind(s);
+        if (kind == OBJECT || s.getId() == null)
+            return false;
+        boolean compact = isCompactId(s.getId());
+        writeJson(out, pretty, kind, compact ? null : s.getId(), compact ? idHi(s.getId()) : 0,
+                compact ? idLo(s.getId()) : 0, s.getX(), s.getY(), s.getColor() == null ? NULL : quote(s.getColor()),
+                s.getFillColor() == null ? NULL : quote(s.getFillColor()), s.getStrokeWidth(), param(s, 0),
+                param(s, 1), param(s, 2), param(s, 3));
+        return true;
+    }
+
+    private static void writeJson(ByteArrayOutputStream out, boolean pretty, int kind, String rawId, long hi,
+            long lo, double x, double y, byte[] color, byte[] fill, double stroke, double a, double b, double c,
+            double d) {
+        byte[][] names = (pretty ? PRETTY_NAMES : COMPACT_NAMES)[kind];
+        out.write('{');
+        out.writeBytes(names[0]);
+        out.writeBytes(TYPE_JSON[kind]);
+        out.writeBytes(names[1]);
+        if (rawId != null) {
+            out.writeBytes(quote(rawId));
+        } else {
+            out.write('"');
+            hex(out, hi >>> 32, 8);
+            out.write('-');
+            hex(out, hi >>> 16, 4);
+            out.write('-');
+            hex(out, hi, 4);
+            out.write('-');
+            hex(out, lo >>> 48, 4);
+            out.write('-');
+            hex(out, lo, 12);
+            out.write('"');
+        }
+        out.writeBytes(names[2]);
+        number(out, x);
+        out.writeBytes(names[3]);
+        number(out, y);
+        out.writeBytes(names[4]);
+        out.writeBytes(color);
+        out.writeBytes(names[5]);
+        out.writeBytes(fill);
+        out.writeBytes(names[6]);
+        number(out, stroke);
+        double[] params = { a, b, c, d };
+        for (int i = 7; i < names.length; i++) {
+            out.writeBytes(names[i]);
+            number(out, params[i - 7]);
+        }
+        if (pretty)
+            out.writeBytes(ascii(DefaultIndenter.SYS_LF));
+        out.write('}');
+    }
+
+    private static void hex(ByteArrayOutputStream out, long v, int digits) {
+        for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4)
+            out.write(HEX[(int) (v >>> shift) & 0xf]);
+    }
+
+    // Jackson's defaults: Double.toString, with NaN and the infinities quoted
+    private static void number(ByteArrayOutputStream out, double v) {
+        String text = Double.toString(v);
+        boolean quoted = Double.isNaN(v) || Double.isInfinite(v);
+        if (quoted)
+            out.write('"');
+        for (int i = 0; i < text.length(); i++)
+            out.write(text.charAt(i));
+        if (quoted)
+            out.write('"');
+    }
+
+    private static String[] fields(String... params) {
+        String[] all = { "type", "id", "x", "y", "color", "fillColor", "strokeWidth" };
+        String[] fields = Arrays.copyOf(all, all.length + params.length);
+        System.arraycopy(params, 0, fields, all.length, params.length);
+        return fields;
+    }
+
+    // What goes before each value: compact "name": or the pretty printer's indented "name" : (the type first)
+    private static byte[][][] names(boolean pretty) {
+        byte[][][] names = new byte[FIELDS.length][][];
+        for (int k = 0; k < FIELDS.length; k++) {
+            names[k] = new byte[FIELDS[k].length][];
+            for (int i = 0; i < FIELDS[k].length; i++) {
+                String sep = i == 0 ? "" : ",";
+                names[k][i] = ascii(pretty ? sep + DefaultIndenter.SYS_LF + "  \"" + FIELDS[k][i] + "\" : "
+                        : sep + "\"" + FIELDS[k][i] + "\":");
+            }
+        }
+        return names;
+    }
+
+    private static byte[] quote(String s) {
+        byte[] escaped = JsonStringEncoder.getInstance().quoteAsUTF8(s);
+        byte[] quoted = new byte[escaped.length + 2];
+        quoted[0] = '"';
+        System.arraycopy(escaped, 0, quoted, 1, escaped.length);
+        quoted[quoted.length - 1] = '"';
+        return quoted;
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
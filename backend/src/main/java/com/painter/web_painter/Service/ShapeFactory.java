@@ -1,13 +1,34 @@
 package com.painter.web_painter.Service;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import com.painter.web_painter.model.*;
 
 @Component
 public class ShapeFactory {
+    // Freehand strokes are simplified on creation when this is > 0 (pixels); 0 keeps every sample
+    private final double simplifyTolerance;
+    private final AtomicLong strokes = new AtomicLong();
+    private final AtomicLong pointsIn = new AtomicLong();
+    private final AtomicLong pointsKept = new AtomicLong();
+
+    public ShapeFactory() {
+        this(0);
+    }
+
+    @Autowired
+    public ShapeFactory(@Value("${painter.freehand.simplify-tolerance:0}") double simplifyTolerance) {
+        this.simplifyTolerance = simplifyTolerance;
+    }
+
+    // Totals for every freehand stroke created so far
+    public SimplifyResult getSimplifyStats() {
+        return new SimplifyResult((int) strokes.get(), pointsIn.get(), pointsKept.get());
+    }
 
     public Shape createShape(String type, Map<String, Object> params) {
         String color = (String) params.get("color");
@@ -27,15 +48,19 @@ public class ShapeFactory {
         // Freehand Logic
         if (type.equalsIgnoreCase("freehand")) {
             List<Map<String, Object>> rawPoints = (List<Map<String, Object>>) params.get("points");
-            List<Map<String, Double>> safePoints = new ArrayList<>();
+            PackedPoints safePoints = new PackedPoints(rawPoints == null ? 0 : rawPoints.size());
             if (rawPoints != null) {
                 for (Map<String, Object> point : rawPoints) {
                     double px = Double.parseDouble(point.get("x").toString());
                     double py = Double.parseDouble(point.get("y").toString());
-                    safePoints.add(Map.of("x", px, "y", py));
+                    safePoints.add(px, py);
                 }
             }
-            s = new FreehandShape(safePoints, color, fillColor);
+            PackedPoints kept = StrokeSimplifier.simplify(safePoints, simplifyTolerance);
+            strokes.incrementAndGet();
+            pointsIn.addAndGet(safePoints.size());
+            pointsKept.addAndGet(kept.size());
+            s = new FreehandShape(kept, color, fillColor);
         } else {
             // Standard Shapes
             double x1 = Double.parseDouble(params.get("x1").toString());
@@ -89,6 +114,7 @@ public class ShapeFactory {
 
         if (s != null) {
             s.setStrokeWidth(strokeWidth);
+            ShapeGeometry.checkCoordinates(s);
         }
         return s;
     }
@@ -0,0 +1,149 @@
+package com.painter.web_painter.Service;
+
+import com.painter.web_painter.model.*;
+
+/**
+ * Bounding boxes and hit tests for every shape type. Primitive shapes are handled by kind and plain
+ * parameters, so the columnar store can test its rows without materializing them.
+ * Outlines (lines, freehand strokes) are hit within half the stroke width, but never less than HIT_SLOP pixels.
+ */
+public final class ShapeGeometry {
+    public static final double HIT_SLOP = 3.0;
+    // Shapes reaching further out than this (or with coordinates that aren't finite) are refused
+    public static final double MAX_COORDINATE = 1e9;
+
+    private ShapeGeometry() {
+    }
+
+    public static Bounds bounds(Shape s) {
+        if (s instanceof FreehandShape) {
+            double pad = s.getStrokeWidth() / 2.0;
+            PackedPoints pts = ((FreehandShape) s).getPoints();
+            if (pts.isEmpty())
+                return box(s.getX(), s.getY(), s.getX(), s.getY(), pad);
+            double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+            double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < pts.size(); i++) {
+                double px = pts.getX(i), py = pts.getY(i);
+                minX = Math.min(minX, px);
+                maxX = Math.max(maxX, px);
+                minY = Math.min(minY, py);
+                maxY = Math.max(maxY, py);
+            }
+            return new Bounds(minX - pad, minY - pad, maxX + pad, maxY + pad);
+        }
+        return bounds(ShapeColumns.kindOf(s), s.getX(), s.getY(), ShapeColumns.param(s, 0), ShapeColumns.param(s, 1),
+                ShapeColumns.param(s, 2), ShapeColumns.param(s, 3), s.getStrokeWidth());
+    }
+
+    // Throws IllegalArgumentException unless the whole shape lies within +/- MAX_COORDINATE
+    public static void checkCoordinates(Shape s) {
+        Bounds b = bounds(s);
+        if (!(inRange(b.minX()) && inRange(b.minY()) && inRange(b.maxX()) && inRange(b.maxY())))
+            throw new IllegalArgumentException(
+                    "Coordinates must be finite and within +/-" + (long) MAX_COORDINATE);
+    }
+
+    private static boolean inRange(double v) {
+        return v >= -MAX_COORDINATE && v <= MAX_COORDINATE; // false for NaN
+    }
+
+    // Same for a primitive shape given as its ShapeColumns kind and parameters (what the columnar store keeps)
+    static Bounds bounds(int kind, double x, double y, double a, double b, double c, double d, double stroke) {
+        double pad = stroke / 2.0;
+        switch (kind) {
+            case ShapeColumns.RECTANGLE:
+                return box(x, y, x + a, y + b, pad);
+            case ShapeColumns.SQUARE:
+                return box(x, y, x + a, y + a, pad);
+            case ShapeColumns.CIRCLE: {
+                double r = Math.abs(a);
+                return box(x - r, y - r, x + r, y + r, pad);
+            }
+            case ShapeColumns.ELLIPSE: {
+                double rx = Math.abs(a), ry = Math.abs(b);
+                return box(x - rx, y - ry, x + rx, y + ry, pad);
+            }
+            case ShapeColumns.LINE:
+                return box(x, y, a, b, pad);
+            case ShapeColumns.TRIANGLE: {
+                double minX = Math.min(x, Math.min(a, c)), maxX = Math.max(x, Math.max(a, c));
+                double minY = Math.min(y, Math.min(b, d)), maxY = Math.max(y, Math.max(b, d));
+                return box(minX, minY, maxX, maxY, pad);
+            }
+            default:
+                return box(x, y, x, y, pad);
+        }
+    }
+
+    private static Bounds box(double x1, double y1, double x2, double y2, double pad) {
+        return new Bounds(Math.min(x1, x2) - pad, Math.min(y1, y2) - pad, Math.max(x1, x2) + pad,
+                Math.max(y1, y2) + pad);
+    }
+
+    public static boolean hitTest(Shape s, double px, double py) {
+        if (s instanceof FreehandShape) {
+            double tol = Math.max(s.getStrokeWidth() / 2.0, HIT_SLOP);
+            PackedPoints pts = ((FreehandShape) s).getPoints();
+            if (pts.size() == 1)
+                return distanceSqToSegment(px, py, pts.getX(0), pts.getY(0), pts.getX(0), pts.getY(0)) <= tol * tol;
+            for (int i = 1; i < pts.size(); i++) {
+                double d = distanceSqToSegment(px, py, pts.getX(i - 1), pts.getY(i - 1), pts.getX(i), pts.getY(i));
+                if (d <= tol * tol)
+                    return true;
+            }
+            return false;
+        }
+        return hitTest(ShapeColumns.kindOf(s), s.getX(), s.getY(), ShapeColumns.param(s, 0), ShapeColumns.param(s, 1),
+                ShapeColumns.param(s, 2), ShapeColumns.param(s, 3), s.getStrokeWidth(), px, py);
+    }
+
+    static boolean hitTest(int kind, double x, double y, double a, double b, double c, double d, double stroke,
+            double px, double py) {
+        switch (kind) {
+            case ShapeColumns.RECTANGLE:
+                return px >= x && px <= x + a && py >= y && py <= y + b;
+            case ShapeColumns.SQUARE:
+                return px >= x && px <= x + a && py >= y && py <= y + a;
+            case ShapeColumns.CIRCLE: {
+                double dx = px - x;
+                double dy = py - y;
+                return dx * dx + dy * dy <= a * a;
+            }
+            case ShapeColumns.ELLIPSE:
+                return Math.pow(px - x, 2) / Math.pow(a, 2) + Math.pow(py - y, 2) / Math.pow(b, 2) <= 1.0;
+            case ShapeColumns.TRIANGLE: {
+                double minX = Math.min(x, Math.min(a, c)), maxX = Math.max(x, Math.max(a, c));
+                double minY = Math.min(y, Math.min(b, d)), maxY = Math.max(y, Math.max(b, d));
+                return px >= minX && px <= maxX && py >= minY && py <= maxY;
+            }
+            case ShapeColumns.LINE: {
+                double tol = Math.max(stroke / 2.0, HIT_SLOP);
+                return distanceSqToSegment(px, py, x, y, a, b) <= tol * tol;
+            }
+            default:
+                return false;
+        }
+    }
+
+    // Even-odd test against the closed polygon through the given points (a lasso)
+    public static boolean insidePolygon(PackedPoints polygon, double px, double py) {
+        boolean inside = false;
+        int n = polygon.size();
+        for (int i = 0, j = n - 1; i < n; j = i++) {
+            double xi = polygon.getX(i), yi = polygon.getY(i), xj = polygon.getX(j), yj = polygon.getY(j);
+            if ((yi > py) != (yj > py) && px < (xj - xi) * (py - yi) / (yj - yi) + xi)
+                inside = !inside;
+        }
+        return inside;
+    }
+
+    static double distanceSqToSegment(double px, double py, double x1, double y1, double x2, double y2) {
+        double vx = x2 - x1, vy = y2 - y1;
+        double len2 = vx * vx + vy * vy;
+        double t = len2 == 0 ? 0 : ((px - x1) * vx + (py - y1) * vy) / len2;
+        t = Math.max(0, Math.min(1, t));
+        double dx = px - (x1 + t * vx), dy = py - (y1 + t * vy);
+        return dx * dx + dy * dy;
+    }
+}
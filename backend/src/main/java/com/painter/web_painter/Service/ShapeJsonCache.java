@@ -0,0 +1,135 @@
+package com.painter.web_painter.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.painter.web_painter.model.Shape;
+
+/**
+ * Serialized JSON of the shapes of one board, so full lists (responses and JSON saves) don't go through
+ * Jackson shape by shape. Shapes the store keeps as columns are written straight from them (see
+ * {@link ShapeColumns#writeJson}); shapes kept as objects (freehand strokes) have their JSON cached.
+ * Stored shapes are never modified in place, so the instance a fragment was made from is its
+ * modification stamp: a fragment is reused only while the board still holds that same instance.
+ * Pretty fragments are kept apart from compact ones and only made once a pretty save asks for them;
+ * both are exactly what a list writer would produce for the element, so the output is unchanged.
+ */
+public class ShapeJsonCache {
+    private static final ObjectWriter COMPACT = new ObjectMapper().writerFor(Shape.class);
+    private static final ObjectWriter PRETTY = COMPACT.withDefaultPrettyPrinter();
+    private static final int FLUSH_BYTES = 64 * 1024;
+    private static final byte[] OPEN = { '[' }, CLOSE = { ']' }, COMMA = { ',' };
+    // Jackson's default pretty printer lays out the top-level array inline: "[ a, b ]", empty "[ ]"
+    private static final byte[] PRETTY_OPEN = bytes("[ "), PRETTY_CLOSE = bytes(" ]"), PRETTY_COMMA = bytes(", ");
+
+    private final Map<String, Fragment> byId = new ConcurrentHashMap<>();
+
+    // Either form is null until first asked for
+    private record Fragment(Shape shape, byte[] compact, byte[] pretty) {
+    }
+
+    // JSON of the shape, from the cache when the shape is unchanged since it was last serialized
+    byte[] fragment(Shape s, boolean pretty) {
+        ByteArrayOutputStream columnar = new ByteArrayOutputStream(256);
+        if (ShapeColumns.writeJson(s, columnar, pretty))
+            return columnar.toByteArray();
+        if (s.getId() == null)
+            return serialize(s, pretty);
+        Fragment f = byId.get(s.getId());
+        if (f == null || f.shape() != s)
+            f = new Fragment(s, null, null);
+        byte[] json = pretty ? f.pretty() : f.compact();
+        if (json != null)
+            return json;
+        json = serialize(s, pretty);
+        byId.put(s.getId(), pretty ? new Fragment(s, f.compact(), json) : new Fragment(s, json, f.pretty()));
+        return json;
+    }
+
+    // The whole list as one compact JSON array
+    public byte[] toJson(List<Shape> shapes) {
+        ByteArrayOutputStream json = new ByteArrayOutputStream(2 + shapes.size() * 160);
+        json.write('[');
+        int objects = 0;
+        for (int i = 0; i < shapes.size(); i++) {
+            if (i > 0)
+                json.write(',');
+            if (element(shapes, i, json, false))
+                objects++;
+        }
+        json.write(']');
+        prune(shapes, objects);
+        return json.toByteArray();
+    }
+
+    // Streams the list as a JSON array; out is not closed
+    public void write(List<Shape> shapes, OutputStream out, boolean pretty) throws IOException {
+        if (pretty && shapes.isEmpty()) {
+            out.write(bytes("[ ]"));
+            return;
+        }
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(FLUSH_BYTES + 4096);
+        buf.writeBytes(pretty ? PRETTY_OPEN : OPEN);
+        int objects = 0;
+        for (int i = 0; i < shapes.size(); i++) {
+            if (i > 0)
+                buf.writeBytes(pretty ? PRETTY_COMMA : COMMA);
+            if (element(shapes, i, buf, pretty))
+                objects++;
+            if (buf.size() >= FLUSH_BYTES) {
+                buf.writeTo(out);
+                buf.reset();
+            }
+        }
+        buf.writeBytes(pretty ? PRETTY_CLOSE : CLOSE);
+        buf.writeTo(out);
+        prune(shapes, objects);
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    // Writes one element; false when it was written straight from the columns, so it has no fragment
+    private boolean element(List<Shape> shapes, int i, ByteArrayOutputStream out, boolean pretty) {
+        if (shapes instanceof ShapeList list && list.isColumnar(i)) {
+            list.writeJson(i, out, pretty);
+            return false;
+        }
+        out.writeBytes(fragment(shapes.get(i), pretty));
+        return true;
+    }
+
+    // Drops fragments of shapes no longer on the board once they make up a good part of the cache
+    private void prune(List<Shape> current, int objects) {
+        if (byId.size() <= objects + objects / 2 + 64)
+            return;
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < current.size(); i++)
+            if (!(current instanceof ShapeList list && list.isColumnar(i)))
+                ids.add(current.get(i).getId());
+        byId.keySet().retainAll(ids);
+    }
+
+    private static byte[] serialize(Shape s, boolean pretty) {
+        try {
+            return (pretty ? PRETTY : COMPACT).writeValueAsBytes(s);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
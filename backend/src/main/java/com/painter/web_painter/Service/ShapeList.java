@@ -0,0 +1,135 @@
+package com.painter.web_painter.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import com.painter.web_painter.model.Bounds;
+import com.painter.web_painter.model.ChangeSet;
+import com.painter.web_painter.model.Shape;
+
+/**
+ * Immutable list of a board's shapes, bottom to top, over chunks frozen by {@link ShapeColumns#freeze}
+ * in an order frozen by {@link ZOrder#freeze}.
+ * Elements are materialized on each get (shapes stored as objects come back as that same instance);
+ * JSON can be written straight from the columns instead.
+ * The store's id table, spatial index and change log are frozen with it, so lookups by id, viewport
+ * queries and deltas are answered from a published list exactly as the store answered them then.
+ */
+public class ShapeList extends AbstractList<Shape> implements RandomAccess {
+    private final ShapeColumns.Chunk[] chunks;
+    private final ZOrder.Frozen rows;
+    private final int[][] ids;
+    private final String[] colors;
+    private final byte[][] colorJson;
+    private final SpatialIndex.Frozen index;
+    private final ChangeLog.Frozen changes;
+
+    ShapeList(ShapeColumns.Chunk[] chunks, ZOrder.Frozen rows, int[][] ids, String[] colors, byte[][] colorJson,
+            SpatialIndex.Frozen index, ChangeLog.Frozen changes) {
+        this.chunks = chunks;
+        this.rows = rows;
+        this.ids = ids;
+        this.colors = colors;
+        this.colorJson = colorJson;
+        this.index = index;
+        this.changes = changes;
+    }
+
+    @Override
+    public Shape get(int i) {
+        return byRow(rows.row(i));
+    }
+
+    @Override
+    public int size() {
+        return rows.size();
+    }
+
+    public long z(int i) {
+        return zOfRow(rows.row(i));
+    }
+
+    String id(int i) {
+        int row = rows.row(i);
+        return ShapeColumns.id(chunks[row >>> ShapeColumns.CHUNK_BITS], row & ShapeColumns.MASK);
+    }
+
+    // True when the element is kept as columns (get makes a new instance each time)
+    boolean isColumnar(int i) {
+        int row = rows.row(i);
+        return chunks[row >>> ShapeColumns.CHUNK_BITS].kind[row & ShapeColumns.MASK] != ShapeColumns.OBJECT;
+    }
+
+    // JSON of a columnar element, as Jackson would write get(i)
+    void writeJson(int i, ByteArrayOutputStream out, boolean pretty) {
+        int row = rows.row(i);
+        ShapeColumns.writeJson(chunks[row >>> ShapeColumns.CHUNK_BITS], row & ShapeColumns.MASK, colorJson, out,
+                pretty);
+    }
+
+    // The shape with that id, or null
+    public Shape get(String id) {
+        int row = ShapeColumns.find(ids, chunks, id);
+        return row < 0 ? null : byRow(row);
+    }
+
+    // Shapes whose bounding box meets the area, bottom to top
+    public List<Shape> within(Bounds area) {
+        int[] hits = index.query(area);
+        long[] zs = new long[hits.length];
+        for (int i = 0; i < hits.length; i++)
+            zs[i] = zOfRow(hits[i]);
+        Arrays.sort(zs);
+        List<Shape> found = new ArrayList<>(zs.length);
+        for (long z : zs)
+            found.add(byRow(rows.get(z)));
+        return found;
+    }
+
+    // Box around every shape, or null when the list is empty
+    public Bounds extent() {
+        return index.extent();
+    }
+
+    // Delta for a client that has seen everything up to "since"; full resync if that is too old
+    public ChangeSet changesSince(long since) {
+        List<String> deleted = new ArrayList<>();
+        if (since < changes.getHorizon() || since > changes.getVersion())
+            return new ChangeSet(changes.getVersion(), true, upserts(), deleted);
+        List<ChangeSet.Upsert> upserts = new ArrayList<>();
+        for (String id : changes.changedSince(since)) {
+            int row = ShapeColumns.find(ids, chunks, id);
+            if (row < 0)
+                deleted.add(id);
+            else
+                upserts.add(new ChangeSet.Upsert(zOfRow(row), byRow(row)));
+        }
+        return new ChangeSet(changes.getVersion(), false, upserts, deleted);
+    }
+
+    private Shape byRow(int row) {
+        return ShapeColumns.materialize(chunks[row >>> ShapeColumns.CHUNK_BITS], row & ShapeColumns.MASK, colors);
+    }
+
+    private long zOfRow(int row) {
+        return chunks[row >>> ShapeColumns.CHUNK_BITS].z[row & ShapeColumns.MASK];
+    }
+
+    // Every element with its z key, materialized as they are read
+    public List<ChangeSet.Upsert> upserts() {
+        return new AbstractList<>() {
+            @Override
+            public ChangeSet.Upsert get(int i) {
+                return new ChangeSet.Upsert(z(i), ShapeList.this.get(i));
+            }
+
+            @Override
+            public int size() {
+                return rows.size();
+            }
+        };
+    }
+}
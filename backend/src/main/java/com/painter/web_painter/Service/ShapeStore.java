@@ -0,0 +1,213 @@
+package com.painter.web_painter.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import com.painter.web_painter.model.Bounds;
+import com.painter.web_painter.model.ChangeSet;
+import com.painter.web_painter.model.FreehandShape;
+import com.painter.web_painter.model.Shape;
+
+/**
+ * Shapes of one board, in a columnar {@link ShapeColumns} table (one row per shape) ordered by a z key
+ * (higher = drawn later = on top). Keys are only ever taken past either end of the order or swapped
+ * between neighbours, so no relabeling is needed and every z-order operation is O(log n).
+ * Lookups, hit tests and area queries run on the rows; Shape objects are materialized for what is
+ * returned. Every mutation bumps the board version through the {@link ChangeLog} and records the area
+ * it repainted (old and new bounds) until the board drains it on publish.
+ */
+public class ShapeStore {
+    private final ShapeColumns rows = new ShapeColumns();
+    private final ZOrder order = new ZOrder();
+    private final SpatialIndex index = new SpatialIndex();
+    private final ChangeLog changes = new ChangeLog();
+    private List<Bounds> dirty = new ArrayList<>(); // null = everything (after a clear)
+    private long points; // freehand points over all shapes
+
+    public Shape get(String id) {
+        int row = rows.find(id);
+        return row < 0 ? null : rows.get(row);
+    }
+
+    public Long zOf(String id) {
+        int row = rows.find(id);
+        return row < 0 ? null : rows.z(row);
+    }
+
+    public int size() {
+        return rows.size();
+    }
+
+    public long getPointCount() {
+        return points;
+    }
+
+    // Color codes the table has handed out, in use or free to reuse
+    int colorCodes() {
+        return rows.colorCodes();
+    }
+
+    // Shapes from bottom to top, as an immutable list that later writes don't affect
+    public ShapeList list() {
+        return rows.freeze(order.freeze(), index.freeze(), changes.freeze());
+    }
+
+    public long topZ() {
+        return order.size() == 0 ? 0 : order.last() + 1;
+    }
+
+    public long bottomZ() {
+        return order.size() == 0 ? 0 : order.first() - 1;
+    }
+
+    // Adds on top of everything else and returns the z key used
+    public long add(Shape s) {
+        long z = topZ();
+        insert(s, z);
+        return z;
+    }
+
+    // Puts the shape at the given z; if that key is already taken the shape goes on top instead
+    public void insert(Shape s, long z) {
+        remove(s.getId());
+        if (order.contains(z))
+            z = topZ();
+        int row = rows.add(s, z);
+        order.put(z, row);
+        points += pointsOf(s);
+        Bounds b = ShapeGeometry.bounds(s);
+        index.put(row, b);
+        changes.touched(s.getId());
+        dirty(b);
+    }
+
+    // Swaps in a new instance for an existing id, keeping its z
+    public void replace(Shape s) {
+        int row = rows.find(s.getId());
+        if (row < 0)
+            return;
+        points += pointsOf(s) - pointsOf(rows.object(row));
+        rows.set(row, s);
+        dirty(index.getBounds(row));
+        Bounds b = ShapeGeometry.bounds(s);
+        index.put(row, b);
+        changes.touched(s.getId());
+        dirty(b);
+    }
+
+    public Shape remove(String id) {
+        int row = rows.find(id);
+        if (row < 0)
+            return null;
+        Shape s = rows.get(row);
+        order.remove(rows.z(row));
+        points -= pointsOf(s);
+        dirty(index.getBounds(row));
+        index.remove(row);
+        rows.remove(row);
+        changes.deleted(id);
+        return s;
+    }
+
+    // Every earlier version gets a full resync instead of one tombstone per shape
+    public void clear() {
+        changes.cleared();
+        rows.clear();
+        order.clear();
+        index.clear();
+        points = 0;
+        dirty = null;
+    }
+
+    private static int pointsOf(Shape s) {
+        return s instanceof FreehandShape ? ((FreehandShape) s).getPoints().size() : 0;
+    }
+
+    // Neighbour directly above/below in drawing order, or null at the ends
+    public Shape above(String id) {
+        long z = order.higher(rows.z(rows.find(id)));
+        return z == ZOrder.NONE ? null : rows.get(order.get(z));
+    }
+
+    public Shape below(String id) {
+        long z = order.lower(rows.z(rows.find(id)));
+        return z == ZOrder.NONE ? null : rows.get(order.get(z));
+    }
+
+    public void swap(String a, String b) {
+        int ra = rows.find(a), rb = rows.find(b);
+        long za = rows.z(ra), zb = rows.z(rb);
+        rows.setZ(ra, zb);
+        rows.setZ(rb, za);
+        order.set(zb, ra);
+        order.set(za, rb);
+        changes.touched(a);
+        changes.touched(b);
+        dirty(index.getBounds(ra));
+        dirty(index.getBounds(rb));
+    }
+
+    // Top-most shape whose precise hit test matches the point, tested on the columns
+    public Shape topMostAt(double x, double y) {
+        int found = -1;
+        long foundZ = Long.MIN_VALUE;
+        for (int row : index.candidatesAt(x, y)) {
+            long z = rows.z(row);
+            if (z > foundZ && rows.hitTest(row, x, y)) {
+                found = row;
+                foundZ = z;
+            }
+        }
+        return found < 0 ? null : rows.get(found);
+    }
+
+    // Shapes whose bounding box meets the area, bottom to top
+    public List<Shape> within(Bounds area) {
+        int[] hits = index.query(area);
+        long[] zs = new long[hits.length];
+        for (int i = 0; i < hits.length; i++)
+            zs[i] = rows.z(hits[i]);
+        Arrays.sort(zs);
+        List<Shape> found = new ArrayList<>(zs.length);
+        for (long z : zs)
+            found.add(rows.get(order.get(z)));
+        return found;
+    }
+
+    // Bounding box of a stored shape as indexed, or null
+    public Bounds boundsOf(String id) {
+        return index.getBounds(rows.find(id));
+    }
+
+    // Box around every shape, or null when the board is empty
+    public Bounds extent() {
+        return index.extent();
+    }
+
+    public long getVersion() {
+        return changes.getVersion();
+    }
+
+    // True if the shape was written or removed after that version, or when that can no longer be told
+    public boolean changedSince(String id, long version) {
+        return changes.changedSince(id, version);
+    }
+
+    // Areas repainted since the last call, or null if the whole board was
+    public List<Bounds> drainDirty() {
+        List<Bounds> drained = dirty;
+        dirty = new ArrayList<>();
+        return drained;
+    }
+
+    private void dirty(Bounds b) {
+        if (dirty != null && b != null)
+            dirty.add(b);
+    }
+
+    // Delta for a client that has seen everything up to "since"; full resync if that is too old.
+    // A full resync lists the shapes lazily, so building one costs no more than a publish.
+    public ChangeSet changesSince(long since) {
+        return list().changesSince(since);
+    }
+}
@@ -0,0 +1,491 @@
+package com.painter.web_painter.Service;
+
+import java.util.Arrays;
+import com.painter.web_painter.model.Bounds;
+
+/**
+ * Grid over shape bounding boxes, keyed by the store's row numbers. Each row is registered in every cell its
+ * box overlaps, on the finest of LEVELS grids (each FANOUT times coarser than the one below) where that is at
+ * most MAX_CELLS_PER_SHAPE cells, so a box spanning the board costs a few coarse cells rather than a list scan.
+ * Only boxes reaching past the grid (or not finite at all) are kept in an "oversized" list that is always
+ * checked.
+ * The boxes themselves are kept in primitive arrays indexed by row, so queries that cover most of the board
+ * (or lie outside the grid) simply scan those arrays.
+ * Boxes and the cell table are split into blocks, and {@link #freeze} shares them with an immutable
+ * {@link Frozen} index the same way {@link ShapeColumns#freeze} shares its chunks: a block (or a cell's row
+ * list) is copied before its first change after that, so a published index never sees later writes.
+ */
+public class SpatialIndex {
+    private static final double CELL_SIZE = 128.0;
+    private static final int MAX_CELLS_PER_SHAPE = 256;
+    private static final int LEVELS = 8, FANOUT = 16;
+    private static final int GRID_CELLS = 1 << 29; // level 0 cell numbers stay within +-GRID_CELLS
+    private static final double[] CELL_SIZES = new double[LEVELS];
+    static {
+        for (int level = 0; level < LEVELS; level++)
+            CELL_SIZES[level] = CELL_SIZE * Math.pow(FANOUT, level);
+    }
+    private static final byte ABSENT = 0, OVERSIZED = 1, IN_GRID = 2; // IN_GRID + level for rows in the grid
+    private static final int BLOCK_BITS = 9, BLOCK = 1 << BLOCK_BITS, MASK = BLOCK - 1;
+    private static final int MIN_CELL_SLOTS = 16;
+
+    // Boxes of BLOCK consecutive rows; writable while their epoch is the index's
+    private static final class Boxes {
+        final long epoch;
+        final byte[] state;
+        final double[] minX, minY, maxX, maxY;
+
+        Boxes(long epoch) {
+            this.epoch = epoch;
+            state = new byte[BLOCK];
+            minX = new double[BLOCK];
+            minY = new double[BLOCK];
+            maxX = new double[BLOCK];
+            maxY = new double[BLOCK];
+        }
+
+        Boxes(Boxes from, long epoch) {
+            this.epoch = epoch;
+            state = from.state.clone();
+            minX = from.minX.clone();
+            minY = from.minY.clone();
+            maxX = from.maxX.clone();
+            maxY = from.maxY.clone();
+        }
+    }
+
+    // Up to BLOCK slots of the open-addressing cell table: a cell's key and its rows (null = empty slot)
+    private static final class Slots {
+        final long epoch;
+        final long[] keys;
+        final Rows[] rows;
+
+        Slots(long epoch, int n) {
+            this.epoch = epoch;
+            keys = new long[n];
+            rows = new Rows[n];
+        }
+
+        Slots(Slots from, long epoch) {
+            this.epoch = epoch;
+            keys = from.keys.clone();
+            rows = from.rows.clone();
+        }
+    }
+
+    // Growable list of rows; order is not kept on removal. Copied before the first change after a freeze
+    private static final class Rows {
+        final long epoch;
+        int[] rows;
+        int n;
+
+        Rows(long epoch) {
+            this.epoch = epoch;
+            rows = new int[4];
+        }
+
+        Rows(Rows from, long epoch) {
+            this.epoch = epoch;
+            rows = from.rows.clone();
+            n = from.n;
+        }
+
+        void add(int row) {
+            if (n == rows.length)
+                rows = Arrays.copyOf(rows, n * 2);
+            rows[n++] = row;
+        }
+
+        boolean remove(int row) {
+            for (int i = 0; i < n; i++)
+                if (rows[i] == row) {
+                    rows[i] = rows[--n];
+                    return true;
+                }
+            return false;
+        }
+    }
+
+    /**
+     * The index as it was when frozen. The live index answers its own queries through an unfrozen view of
+     * the same kind, so both always agree.
+     */
+    public static final class Frozen {
+        private final Boxes[] boxes;
+        private final Slots[] slots;
+        private final int capacity, cells, size;
+        private final int[] levels;
+        private final Rows oversized;
+
+        private Frozen(Boxes[] boxes, Slots[] slots, int capacity, int cells, int[] levels, Rows oversized,
+                int size) {
+            this.boxes = boxes;
+            this.slots = slots;
+            this.capacity = capacity;
+            this.cells = cells;
+            this.levels = levels;
+            this.oversized = oversized;
+            this.size = size;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public Bounds getBounds(int row) {
+            Boxes b = row < 0 ? null : boxes(row);
+            int s = row & MASK;
+            if (b == null || b.state[s] == ABSENT)
+                return null;
+            return new Bounds(b.minX[s], b.minY[s], b.maxX[s], b.maxY[s]);
+        }
+
+        // Rows whose bounding box contains the point, in no particular order
+        public int[] candidatesAt(double x, double y) {
+            Rows result = new Rows(0);
+            for (int level = 0; level < LEVELS && inGrid(x) && inGrid(y); level++) {
+                Rows rows = levels[level] == 0 ? null : rowsIn(key(level, cell(x, level), cell(y, level)));
+                if (rows != null)
+                    for (int i = 0; i < rows.n; i++)
+                        if (contains(rows.rows[i], x, y))
+                            result.add(rows.rows[i]);
+            }
+            for (int i = 0; i < oversized.n; i++)
+                if (contains(oversized.rows[i], x, y))
+                    result.add(oversized.rows[i]);
+            return Arrays.copyOf(result.rows, result.n);
+        }
+
+        // Rows whose bounding box intersects the area, each once, in no particular order
+        public int[] query(Bounds area) {
+            Rows result = new Rows(0);
+            if (!inGrid(area) || cellCount(area, 0) > cells) {
+                // Area larger than the occupied grid (or outside it): scanning the boxes directly is cheaper
+                for (int b = 0; b < boxes.length; b++) {
+                    if (boxes[b] == null)
+                        continue;
+                    for (int s = 0; s < BLOCK; s++)
+                        if (boxes[b].state[s] != ABSENT && intersects(b << BLOCK_BITS | s, area))
+                            result.add(b << BLOCK_BITS | s);
+                }
+                return Arrays.copyOf(result.rows, result.n);
+            }
+            for (int level = 0; level < LEVELS; level++) {
+                if (levels[level] == 0)
+                    continue;
+                int fromX = cell(area.minX(), level), fromY = cell(area.minY(), level);
+                for (int cx = fromX; cx <= cell(area.maxX(), level); cx++)
+                    for (int cy = fromY; cy <= cell(area.maxY(), level); cy++) {
+                        Rows rows = rowsIn(key(level, cx, cy));
+                        if (rows == null)
+                            continue;
+                        for (int i = 0; i < rows.n; i++) {
+                            int row = rows.rows[i];
+                            Boxes b = boxes(row);
+                            // A box spanning several cells is reported only from the first one the area shares
+                            if (intersects(row, area) && cx == Math.max(cell(b.minX[row & MASK], level), fromX)
+                                    && cy == Math.max(cell(b.minY[row & MASK], level), fromY))
+                                result.add(row);
+                        }
+                    }
+            }
+            for (int i = 0; i < oversized.n; i++)
+                if (intersects(oversized.rows[i], area))
+                    result.add(oversized.rows[i]);
+            return Arrays.copyOf(result.rows, result.n);
+        }
+
+        // Box around every shape, or null when the index is empty
+        public Bounds extent() {
+            if (size == 0)
+                return null;
+            double x0 = Double.POSITIVE_INFINITY, y0 = Double.POSITIVE_INFINITY;
+            double x1 = Double.NEGATIVE_INFINITY, y1 = Double.NEGATIVE_INFINITY;
+            for (Boxes b : boxes) {
+                if (b == null)
+                    continue;
+                for (int s = 0; s < BLOCK; s++) {
+                    if (b.state[s] == ABSENT)
+                        continue;
+                    x0 = Math.min(x0, b.minX[s]);
+                    y0 = Math.min(y0, b.minY[s]);
+                    x1 = Math.max(x1, b.maxX[s]);
+                    y1 = Math.max(y1, b.maxY[s]);
+                }
+            }
+            return new Bounds(x0, y0, x1, y1);
+        }
+
+        private Boxes boxes(int row) {
+            int b = row >>> BLOCK_BITS;
+            return b < boxes.length ? boxes[b] : null;
+        }
+
+        private Rows rowsIn(long key) {
+            int mask = capacity - 1;
+            for (int i = hash(key) & mask;; i = (i + 1) & mask) {
+                Slots block = slots[i >>> BLOCK_BITS];
+                Rows rows = block.rows[i & MASK];
+                if (rows == null || block.keys[i & MASK] == key)
+                    return rows;
+            }
+        }
+
+        private boolean contains(int row, double x, double y) {
+            Boxes b = boxes(row);
+            int s = row & MASK;
+            return x >= b.minX[s] && x <= b.maxX[s] && y >= b.minY[s] && y <= b.maxY[s];
+        }
+
+        private boolean intersects(int row, Bounds area) {
+            Boxes b = boxes(row);
+            int s = row & MASK;
+            return b.minX[s] <= area.maxX() && b.maxX[s] >= area.minX() && b.minY[s] <= area.maxY()
+                    && b.maxY[s] >= area.minY();
+        }
+    }
+
+    private Boxes[] boxes = new Boxes[0];
+    private Slots[] slots = { new Slots(0, MIN_CELL_SLOTS) };
+    private int capacity = MIN_CELL_SLOTS; // slots in the cell table, a power of two
+    private int cells;
+    private int[] levels = new int[LEVELS]; // rows registered on each level
+    private Rows oversized = new Rows(0);
+    private int size;
+    private long epoch;
+
+    public void put(int row, Bounds b) {
+        remove(row);
+        Boxes box = writableBoxes(row);
+        int s = row & MASK;
+        box.minX[s] = b.minX();
+        box.minY[s] = b.minY();
+        box.maxX[s] = b.maxX();
+        box.maxY[s] = b.maxY();
+        size++;
+        int level = inGrid(b) ? 0 : LEVELS;
+        while (level < LEVELS && cellCount(b, level) > MAX_CELLS_PER_SHAPE)
+            level++;
+        if (level == LEVELS) {
+            box.state[s] = OVERSIZED;
+            writableOversized().add(row);
+            return;
+        }
+        box.state[s] = (byte) (IN_GRID + level);
+        levels[level]++;
+        for (int cx = cell(b.minX(), level); cx <= cell(b.maxX(), level); cx++)
+            for (int cy = cell(b.minY(), level); cy <= cell(b.maxY(), level); cy++)
+                addToCell(key(level, cx, cy), row);
+    }
+
+    public void remove(int row) {
+        int b = row >>> BLOCK_BITS, s = row & MASK;
+        if (b >= boxes.length || boxes[b] == null || boxes[b].state[s] == ABSENT)
+            return;
+        Boxes box = writableBoxes(row);
+        size--;
+        if (box.state[s] == OVERSIZED) {
+            writableOversized().remove(row);
+        } else {
+            int level = box.state[s] - IN_GRID;
+            levels[level]--;
+            for (int cx = cell(box.minX[s], level); cx <= cell(box.maxX[s], level); cx++)
+                for (int cy = cell(box.minY[s], level); cy <= cell(box.maxY[s], level); cy++)
+                    removeFromCell(key(level, cx, cy), row);
+        }
+        box.state[s] = ABSENT;
+    }
+
+    public void clear() {
+        boxes = new Boxes[0];
+        slots = new Slots[] { new Slots(epoch, MIN_CELL_SLOTS) };
+        capacity = MIN_CELL_SLOTS;
+        cells = 0;
+        levels = new int[LEVELS];
+        oversized = new Rows(epoch);
+        size = 0;
+    }
+
+    public Bounds getBounds(int row) {
+        return view().getBounds(row);
+    }
+
+    // Rows whose bounding box contains the point, in no particular order
+    public int[] candidatesAt(double x, double y) {
+        return view().candidatesAt(x, y);
+    }
+
+    // Rows whose bounding box intersects the area, each once, in no particular order
+    public int[] query(Bounds area) {
+        return view().query(area);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Rows kept aside in the oversized list rather than in the grid
+    int oversizedCount() {
+        return oversized.n;
+    }
+
+    // Box around every shape, or null when the board is empty
+    public Bounds extent() {
+        return view().extent();
+    }
+
+    // Immutable index as it is now; later writes copy the blocks and row lists they change
+    public Frozen freeze() {
+        Frozen frozen = new Frozen(boxes.clone(), slots.clone(), capacity, cells, levels.clone(), oversized, size);
+        epoch++;
+        return frozen;
+    }
+
+    // The current state for a query made right away by the writer: nothing is copied or frozen
+    private Frozen view() {
+        return new Frozen(boxes, slots, capacity, cells, levels, oversized, size);
+    }
+
+    // --- COPY ON WRITE ---
+    private Boxes writableBoxes(int row) {
+        int b = row >>> BLOCK_BITS;
+        if (b >= boxes.length)
+            boxes = Arrays.copyOf(boxes, Math.max(b + 1, boxes.length * 2));
+        Boxes box = boxes[b];
+        if (box == null)
+            box = boxes[b] = new Boxes(epoch);
+        else if (box.epoch != epoch)
+            box = boxes[b] = new Boxes(box, epoch);
+        return box;
+    }
+
+    private Rows writableOversized() {
+        if (oversized.epoch != epoch)
+            oversized = new Rows(oversized, epoch);
+        return oversized;
+    }
+
+    private Slots writableSlots(int slot) {
+        Slots block = slots[slot >>> BLOCK_BITS];
+        if (block.epoch != epoch)
+            block = slots[slot >>> BLOCK_BITS] = new Slots(block, epoch);
+        return block;
+    }
+
+    // --- CELL TABLE ---
+    private void addToCell(long key, int row) {
+        int i = slotOf(key);
+        if (rowsAt(i) == null) {
+            if (2 * (cells + 1) > capacity) {
+                rehash(capacity * 2);
+                i = slotOf(key);
+            }
+            Slots block = writableSlots(i);
+            block.keys[i & MASK] = key;
+            block.rows[i & MASK] = new Rows(epoch);
+            cells++;
+        }
+        Slots block = writableSlots(i);
+        Rows rows = block.rows[i & MASK];
+        if (rows.epoch != epoch)
+            rows = block.rows[i & MASK] = new Rows(rows, epoch);
+        rows.add(row);
+    }
+
+    private void removeFromCell(long key, int row) {
+        int i = slotOf(key);
+        if (rowsAt(i) == null)
+            return;
+        Slots block = writableSlots(i);
+        Rows rows = block.rows[i & MASK];
+        if (rows.epoch != epoch)
+            rows = block.rows[i & MASK] = new Rows(rows, epoch);
+        if (rows.remove(row) && rows.n == 0)
+            deleteSlot(i);
+    }
+
+    // Backward-shift deletion: pull later entries of the probe run into the hole
+    private void deleteSlot(int i) {
+        int mask = capacity - 1;
+        setSlot(i, 0, null);
+        for (int j = (i + 1) & mask; rowsAt(j) != null; j = (j + 1) & mask) {
+            int home = hash(keyAt(j)) & mask;
+            boolean stays = i <= j ? i < home && home <= j : i < home || home <= j;
+            if (!stays) {
+                setSlot(i, keyAt(j), rowsAt(j));
+                setSlot(j, 0, null);
+                i = j;
+            }
+        }
+        cells--;
+    }
+
+    private void rehash(int newCapacity) {
+        Slots[] old = slots;
+        slots = new Slots[Math.max(1, newCapacity >>> BLOCK_BITS)];
+        for (int b = 0; b < slots.length; b++)
+            slots[b] = new Slots(epoch, Math.min(newCapacity, BLOCK));
+        capacity = newCapacity;
+        for (Slots block : old)
+            for (int k = 0; k < block.rows.length; k++)
+                if (block.rows[k] != null) {
+                    int i = slotOf(block.keys[k]);
+                    slots[i >>> BLOCK_BITS].keys[i & MASK] = block.keys[k];
+                    slots[i >>> BLOCK_BITS].rows[i & MASK] = block.rows[k];
+                }
+    }
+
+    // Slot holding the key, or the empty slot where it would go
+    private int slotOf(long key) {
+        int mask = capacity - 1;
+        int i = hash(key) & mask;
+        while (rowsAt(i) != null && keyAt(i) != key)
+            i = (i + 1) & mask;
+        return i;
+    }
+
+    private Rows rowsAt(int slot) {
+        return slots[slot >>> BLOCK_BITS].rows[slot & MASK];
+    }
+
+    private long keyAt(int slot) {
+        return slots[slot >>> BLOCK_BITS].keys[slot & MASK];
+    }
+
+    private void setSlot(int slot, long key, Rows rows) {
+        Slots block = writableSlots(slot);
+        block.keys[slot & MASK] = key;
+        block.rows[slot & MASK] = rows;
+    }
+
+    // Only call for coordinates that are inGrid
+    private static int cell(double v, int level) {
+        return (int) Math.floor(v / CELL_SIZES[level]);
+    }
+
+    // True if the coordinate's cell number fits the bits a key has for it (false for NaN/infinities)
+    private static boolean inGrid(double v) {
+        double c = Math.floor(v / CELL_SIZE);
+        return c > -GRID_CELLS && c < GRID_CELLS;
+    }
+
+    private static boolean inGrid(Bounds b) {
+        return inGrid(b.minX()) && inGrid(b.minY()) && inGrid(b.maxX()) && inGrid(b.maxY());
+    }
+
+    // Cells the box overlaps on a level; the box must be inGrid
+    private static long cellCount(Bounds b, int level) {
+        return ((long) cell(b.maxX(), level) - cell(b.minX(), level) + 1)
+                * ((long) cell(b.maxY(), level) - cell(b.minY(), level) + 1);
+    }
+
+    // Level in the top bits, then 30 bits for each cell number
+    private static long key(int level, int cx, int cy) {
+        return (long) level << 60 | (cx & 0x3fffffffL) << 30 | (cy & 0x3fffffffL);
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
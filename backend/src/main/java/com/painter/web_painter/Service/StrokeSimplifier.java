@@ -0,0 +1,58 @@
+package com.painter.web_painter.Service;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import com.painter.web_painter.model.PackedPoints;
+
+/**
+ * Ramer-Douglas-Peucker simplification of freehand strokes: drops samples that lie within
+ * "tolerance" pixels of the line through the points kept around them. Iterative, so very long
+ * strokes cannot overflow the stack.
+ */
+public final class StrokeSimplifier {
+
+    private StrokeSimplifier() {
+    }
+
+    public static PackedPoints simplify(PackedPoints points, double tolerance) {
+        int n = points.size();
+        if (tolerance <= 0 || n < 3)
+            return points;
+        boolean[] keep = new boolean[n];
+        keep[0] = true;
+        keep[n - 1] = true;
+        double tolSq = tolerance * tolerance;
+        Deque<int[]> ranges = new ArrayDeque<>();
+        ranges.push(new int[] { 0, n - 1 });
+        while (!ranges.isEmpty()) {
+            int[] r = ranges.pop();
+            int first = r[0], last = r[1];
+            double maxSq = -1;
+            int index = -1;
+            for (int i = first + 1; i < last; i++) {
+                double d = ShapeGeometry.distanceSqToSegment(points.getX(i), points.getY(i), points.getX(first),
+                        points.getY(first), points.getX(last), points.getY(last));
+                if (d > maxSq) {
+                    maxSq = d;
+                    index = i;
+                }
+            }
+            if (index >= 0 && maxSq > tolSq) {
+                keep[index] = true;
+                ranges.push(new int[] { first, index });
+                ranges.push(new int[] { index, last });
+            }
+        }
+        int kept = 0;
+        for (boolean k : keep)
+            if (k)
+                kept++;
+        if (kept == n)
+            return points;
+        PackedPoints result = new PackedPoints(kept);
+        for (int i = 0; i < n; i++)
+            if (keep[i])
+                result.add(points.getX(i), points.getY(i));
+        return result;
+    }
+}
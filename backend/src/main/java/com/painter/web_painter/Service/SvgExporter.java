@@ -0,0 +1,126 @@
+package com.painter.web_painter.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import com.painter.web_painter.model.*;
+
+/**
+ * Writes a board as SVG, one element per shape, through a StAX stream writer: nothing but the
+ * current element is ever held in memory. The viewBox is the extent of all shapes.
+ */
+final class SvgExporter {
+    private static final String SVG_NS = "http://www.w3.org/2000/svg";
+    private static final XMLOutputFactory FACTORY = XMLOutputFactory.newInstance();
+
+    private SvgExporter() {
+    }
+
+    static void write(List<Shape> shapes, OutputStream out) throws IOException {
+        try {
+            XMLStreamWriter w = FACTORY.createXMLStreamWriter(out, "UTF-8");
+            w.writeStartDocument("UTF-8", "1.0");
+            w.writeStartElement("svg");
+            w.writeDefaultNamespace(SVG_NS);
+            Bounds extent = extent(shapes);
+            w.writeAttribute("width", num(extent.maxX() - extent.minX()));
+            w.writeAttribute("height", num(extent.maxY() - extent.minY()));
+            w.writeAttribute("viewBox", num(extent.minX()) + " " + num(extent.minY()) + " "
+                    + num(extent.maxX() - extent.minX()) + " " + num(extent.maxY() - extent.minY()));
+            for (Shape s : shapes)
+                writeShape(w, s);
+            w.writeEndElement();
+            w.writeEndDocument();
+            w.flush();
+            w.close(); // does not close the underlying stream
+        } catch (XMLStreamException e) {
+            throw new IOException("Could not write SVG", e);
+        }
+    }
+
+    private static void writeShape(XMLStreamWriter w, Shape s) throws XMLStreamException {
+        boolean open = false;
+        if (s instanceof Rectangle) {
+            Rectangle r = (Rectangle) s;
+            rect(w, r.getX(), r.getY(), r.getWidth(), r.getHeight());
+        } else if (s instanceof Square) {
+            Square sq = (Square) s;
+            rect(w, sq.getX(), sq.getY(), sq.getSideLength(), sq.getSideLength());
+        } else if (s instanceof Circle) {
+            w.writeEmptyElement("circle");
+            w.writeAttribute("cx", num(s.getX()));
+            w.writeAttribute("cy", num(s.getY()));
+            w.writeAttribute("r", num(Math.abs(((Circle) s).getRadius())));
+        } else if (s instanceof Ellipse) {
+            Ellipse e = (Ellipse) s;
+            w.writeEmptyElement("ellipse");
+            w.writeAttribute("cx", num(e.getX()));
+            w.writeAttribute("cy", num(e.getY()));
+            w.writeAttribute("rx", num(Math.abs(e.getRadiusX())));
+            w.writeAttribute("ry", num(Math.abs(e.getRadiusY())));
+        } else if (s instanceof LineSegment) {
+            LineSegment l = (LineSegment) s;
+            w.writeEmptyElement("line");
+            w.writeAttribute("x1", num(l.getX()));
+            w.writeAttribute("y1", num(l.getY()));
+            w.writeAttribute("x2", num(l.getX2()));
+            w.writeAttribute("y2", num(l.getY2()));
+            open = true;
+        } else if (s instanceof Triangle) {
+            Triangle t = (Triangle) s;
+            w.writeEmptyElement("polygon");
+            w.writeAttribute("points", num(t.getX()) + "," + num(t.getY()) + " " + num(t.getX2()) + ","
+                    + num(t.getY2()) + " " + num(t.getX3()) + "," + num(t.getY3()));
+        } else if (s instanceof FreehandShape) {
+            PackedPoints pts = ((FreehandShape) s).getPoints();
+            if (pts.isEmpty())
+                return;
+            StringBuilder d = new StringBuilder(pts.size() * 12);
+            for (int i = 0; i < pts.size(); i++)
+                d.append(i == 0 ? "M" : " L").append(num(pts.getX(i))).append(' ').append(num(pts.getY(i)));
+            w.writeEmptyElement("path");
+            w.writeAttribute("d", d.toString());
+            open = true;
+        } else {
+            return;
+        }
+        // lines and strokes are never filled, like on the canvas
+        w.writeAttribute("stroke", paint(s.getColor()));
+        w.writeAttribute("fill", open ? "none" : paint(s.getFillColor()));
+        w.writeAttribute("stroke-width", num(s.getStrokeWidth() > 0 ? s.getStrokeWidth() : 2));
+    }
+
+    private static void rect(XMLStreamWriter w, double x, double y, double width, double height)
+            throws XMLStreamException {
+        w.writeEmptyElement("rect");
+        w.writeAttribute("x", num(Math.min(x, x + width)));
+        w.writeAttribute("y", num(Math.min(y, y + height)));
+        w.writeAttribute("width", num(Math.abs(width)));
+        w.writeAttribute("height", num(Math.abs(height)));
+    }
+
+    private static Bounds extent(List<Shape> shapes) {
+        Bounds all = null;
+        for (Shape s : shapes) {
+            Bounds b = ShapeGeometry.bounds(s);
+            all = all == null ? b : all.union(b);
+        }
+        return all == null ? new Bounds(0, 0, 0, 0) : all;
+    }
+
+    private static String paint(String color) {
+        if (color == null || color.isBlank() || color.equals("transparent"))
+            return "none";
+        return color;
+    }
+
+    // Whole numbers without the trailing ".0"
+    private static String num(double v) {
+        if (v == Math.rint(v) && Math.abs(v) < 1e15)
+            return Long.toString((long) v);
+        return Double.toString(v);
+    }
+}
@@ -0,0 +1,334 @@
+package com.painter.web_painter.Service;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import jakarta.annotation.PreDestroy;
+import com.painter.web_painter.model.*;
+
+/**
+ * Headless Java2D rendering of boards into PNG-ready images, drawn the same way as the canvas in
+ * board.ts. Images are assembled from fixed 256px tiles on a grid per zoom level; missing tiles are
+ * drawn in parallel on a fork-join pool and kept in a bounded LRU cache. A cached tile stays valid
+ * until a later version repaints an area overlapping it (see {@link DirtyRegions}).
+ * Zoom levels are quarter octaves (scale 2^(n/4)): any other scale is drawn from the tiles of the next
+ * level up, shrunk by at most 16%, so clients zooming smoothly share a handful of tile grids instead of
+ * filling the cache with one grid per scale. At most maxConcurrent images are assembled at once; further
+ * requests wait, which bounds the memory held by output images.
+ */
+@Component
+public class TileRenderer {
+    public static final int TILE = 256;
+
+    private final BoardRegistry boards;
+    private final ForkJoinPool pool;
+    private final int maxPixels;
+    private final Map<TileKey, Tile> cache;
+    private final AtomicLong tilesRendered = new AtomicLong();
+
+    private final Semaphore renders;
+
+    // Tile (tx, ty) covers device pixels [tx * TILE, (tx + 1) * TILE) at scale zoomScale(level)
+    private record TileKey(String boardId, int level, int tx, int ty) {
+    }
+
+    // version = board version the image is known to be current for
+    private static final class Tile {
+        final BufferedImage image;
+        volatile long version;
+
+        Tile(BufferedImage image, long version) {
+            this.image = image;
+            this.version = version;
+        }
+    }
+
+    public TileRenderer(BoardRegistry boards, @Value("${painter.render.cache-tiles:256}") int cacheTiles,
+            @Value("${painter.render.threads:0}") int threads,
+            @Value("${painter.render.max-pixels:2048}") int maxPixels,
+            @Value("${painter.render.max-concurrent:2}") int maxConcurrent) {
+        this.boards = boards;
+        this.pool = new ForkJoinPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+        this.maxPixels = maxPixels;
+        this.renders = new Semaphore(Math.max(1, maxConcurrent), true);
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<TileKey, Tile> eldest) {
+                return size() > cacheTiles;
+            }
+        };
+    }
+
+    // Tiles drawn so far (cache misses)
+    public long getTilesRendered() {
+        return tilesRendered.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    // Renders the area (board coordinates; null = everything on the board) at the given scale
+    public BufferedImage render(BoardSession session, Bounds area, double scale) {
+        if (!(scale > 0) || scale > 16)
+            throw new IllegalArgumentException("scale must be in (0, 16]");
+        Board board = boards.get(session.boardId());
+        if (area == null) {
+            area = ((ShapeList) board.snapshot().shapes()).extent();
+            if (area == null)
+                area = new Bounds(0, 0, TILE / scale, TILE / scale);
+        }
+        int left = (int) Math.floor(area.minX() * scale), top = (int) Math.floor(area.minY() * scale);
+        int width = (int) Math.ceil(area.maxX() * scale) - left, height = (int) Math.ceil(area.maxY() * scale) - top;
+        if (width <= 0 || height <= 0 || width > maxPixels || height > maxPixels)
+            throw new IllegalArgumentException("Rendered size must be between 1 and " + maxPixels + " pixels a side");
+        try {
+            renders.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Rendering interrupted", e);
+        }
+        try {
+            return compose(board, left, top, width, height, scale);
+        } finally {
+            renders.release();
+        }
+    }
+
+    // Lowest quarter-octave zoom level at or above the scale
+    static int zoomLevel(double scale) {
+        return (int) Math.ceil(4 * Math.log(scale) / Math.log(2) - 1e-9);
+    }
+
+    static double zoomScale(int level) {
+        return Math.pow(2, level / 4.0);
+    }
+
+    // The output image covers device pixels [left, left + width) x [top, top + height) at the requested scale;
+    // its tiles come from the zoom level's grid, k times larger
+    private BufferedImage compose(Board board, int left, int top, int width, int height, double scale) {
+        int level = zoomLevel(scale);
+        double k = zoomScale(level) / scale;
+        int tx0 = (int) Math.floorDiv((long) Math.floor(left * k), TILE);
+        int ty0 = (int) Math.floorDiv((long) Math.floor(top * k), TILE);
+        int tx1 = (int) Math.floorDiv((long) Math.ceil((left + width) * k) - 1, TILE);
+        int ty1 = (int) Math.floorDiv((long) Math.ceil((top + height) * k) - 1, TILE);
+        long current = board.snapshot().version();
+        Map<TileKey, Tile> tiles = new LinkedHashMap<>();
+        List<TileKey> missing = new ArrayList<>();
+        for (int ty = ty0; ty <= ty1; ty++)
+            for (int tx = tx0; tx <= tx1; tx++) {
+                TileKey key = new TileKey(board.getId(), level, tx, ty);
+                Tile tile = cached(board, key, current);
+                if (tile == null)
+                    missing.add(key);
+                else
+                    tiles.put(key, tile);
+            }
+        if (!missing.isEmpty())
+            tiles.putAll(renderTiles(board, missing));
+
+        BufferedImage out = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = out.createGraphics();
+        try {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, width, height);
+            if (k != 1) {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.scale(1 / k, 1 / k);
+            }
+            g.translate(-left * k, -top * k);
+            for (Map.Entry<TileKey, Tile> e : tiles.entrySet())
+                g.drawImage(e.getValue().image, e.getKey().tx() * TILE, e.getKey().ty() * TILE, null);
+        } finally {
+            g.dispose();
+        }
+        return out;
+    }
+
+    // A cached tile is reused if nothing repainted since it was drawn overlaps its area
+    private Tile cached(Board board, TileKey key, long current) {
+        Tile tile;
+        synchronized (cache) {
+            tile = cache.get(key);
+        }
+        if (tile == null)
+            return null;
+        if (tile.version == current)
+            return tile;
+        List<Bounds> dirty = board.getDirtyRegions().since(tile.version);
+        if (dirty == null)
+            return null;
+        Bounds area = areaOf(key);
+        for (Bounds b : dirty)
+            if (b.intersects(area))
+                return null;
+        tile.version = current;
+        return tile;
+    }
+
+    // One read of the published shapes under all missing tiles, then each tile is drawn on the pool
+    private Map<TileKey, Tile> renderTiles(Board board, List<TileKey> keys) {
+        Bounds all = areaOf(keys.get(0));
+        for (TileKey k : keys)
+            all = all.union(areaOf(k));
+        BoardSnapshot snapshot = board.snapshot();
+        long version = snapshot.version();
+        List<Shape> shapes = ((ShapeList) snapshot.shapes()).within(all);
+        List<Bounds> bounds = new ArrayList<>(shapes.size());
+        for (Shape s : shapes)
+            bounds.add(ShapeGeometry.bounds(s));
+
+        tilesRendered.addAndGet(keys.size());
+        List<Callable<Tile>> jobs = new ArrayList<>();
+        for (TileKey k : keys)
+            jobs.add(() -> new Tile(drawTile(k, shapes, bounds), version));
+        Map<TileKey, Tile> result = new LinkedHashMap<>();
+        try {
+            List<Future<Tile>> done = pool.invokeAll(jobs);
+            for (int i = 0; i < keys.size(); i++)
+                result.put(keys.get(i), done.get(i).get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Rendering interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Rendering failed", e.getCause());
+        }
+        synchronized (cache) {
+            cache.putAll(result);
+        }
+        return result;
+    }
+
+    private static Bounds areaOf(TileKey k) {
+        double size = TILE / zoomScale(k.level());
+        return new Bounds(k.tx() * size, k.ty() * size, (k.tx() + 1) * size, (k.ty() + 1) * size);
+    }
+
+    private static BufferedImage drawTile(TileKey key, List<Shape> shapes, List<Bounds> bounds) {
+        BufferedImage img = new BufferedImage(TILE, TILE, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+            g.translate(-key.tx() * TILE, -key.ty() * TILE);
+            g.scale(zoomScale(key.level()), zoomScale(key.level()));
+            Bounds area = areaOf(key);
+            for (int i = 0; i < shapes.size(); i++)
+                if (bounds.get(i).intersects(area))
+                    draw(g, shapes.get(i));
+        } finally {
+            g.dispose();
+        }
+        return img;
+    }
+
+    // --- SHAPES (mirrors drawShape in board.ts) ---
+    static void draw(Graphics2D g, Shape s) {
+        java.awt.Shape outline = outline(s);
+        if (outline == null)
+            return;
+        boolean open = s instanceof LineSegment || s instanceof FreehandShape;
+        Color fill = parseColor(s.getFillColor());
+        if (!open && fill != null) {
+            g.setColor(fill);
+            g.fill(outline);
+        }
+        Color stroke = parseColor(s.getColor());
+        if (stroke != null) {
+            g.setColor(stroke);
+            g.setStroke(new BasicStroke((float) (s.getStrokeWidth() > 0 ? s.getStrokeWidth() : 2)));
+            g.draw(outline);
+        }
+    }
+
+    private static java.awt.Shape outline(Shape s) {
+        if (s instanceof Rectangle) {
+            Rectangle r = (Rectangle) s;
+            return new Rectangle2D.Double(r.getX(), r.getY(), r.getWidth(), r.getHeight());
+        } else if (s instanceof Square) {
+            Square sq = (Square) s;
+            return new Rectangle2D.Double(sq.getX(), sq.getY(), sq.getSideLength(), sq.getSideLength());
+        } else if (s instanceof Circle) {
+            double r = Math.abs(((Circle) s).getRadius());
+            return new Ellipse2D.Double(s.getX() - r, s.getY() - r, 2 * r, 2 * r);
+        } else if (s instanceof Ellipse) {
+            double rx = Math.abs(((Ellipse) s).getRadiusX()), ry = Math.abs(((Ellipse) s).getRadiusY());
+            return new Ellipse2D.Double(s.getX() - rx, s.getY() - ry, 2 * rx, 2 * ry);
+        } else if (s instanceof LineSegment) {
+            LineSegment l = (LineSegment) s;
+            return new Line2D.Double(l.getX(), l.getY(), l.getX2(), l.getY2());
+        } else if (s instanceof Triangle) {
+            Triangle t = (Triangle) s;
+            Path2D.Double p = new Path2D.Double();
+            p.moveTo(t.getX(), t.getY());
+            p.lineTo(t.getX2(), t.getY2());
+            p.lineTo(t.getX3(), t.getY3());
+            p.closePath();
+            return p;
+        } else if (s instanceof FreehandShape) {
+            PackedPoints pts = ((FreehandShape) s).getPoints();
+            if (pts.isEmpty())
+                return null;
+            Path2D.Double p = new Path2D.Double(Path2D.WIND_NON_ZERO, pts.size());
+            p.moveTo(pts.getX(0), pts.getY(0));
+            for (int i = 1; i < pts.size(); i++)
+                p.lineTo(pts.getX(i), pts.getY(i));
+            return p;
+        }
+        return null;
+    }
+
+    // #rgb, #rrggbb, #rrggbbaa and a few names; null (nothing drawn) for transparent/none/unknown
+    static Color parseColor(String c) {
+        if (c == null)
+            return null;
+        c = c.trim().toLowerCase();
+        try {
+            if (c.startsWith("#")) {
+                String hex = c.substring(1);
+                if (hex.length() == 3)
+                    hex = "" + hex.charAt(0) + hex.charAt(0) + hex.charAt(1) + hex.charAt(1) + hex.charAt(2)
+                            + hex.charAt(2);
+                if (hex.length() == 6)
+                    return new Color(Integer.parseInt(hex, 16));
+                if (hex.length() == 8)
+                    return new Color((int) Long.parseLong(hex.substring(6) + hex.substring(0, 6), 16), true);
+                return null;
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return switch (c) {
+            case "black" -> Color.BLACK;
+            case "white" -> Color.WHITE;
+            case "red" -> Color.RED;
+            case "green" -> new Color(0, 128, 0);
+            case "blue" -> Color.BLUE;
+            case "yellow" -> Color.YELLOW;
+            case "gray", "grey" -> Color.GRAY;
+            case "orange" -> new Color(255, 165, 0);
+            case "purple" -> new Color(128, 0, 128);
+            default -> null;
+        };
+    }
+}
@@ -0,0 +1,238 @@
+package com.painter.web_painter.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Drawing order of a {@link ShapeStore}: z key to row, sorted by key. Keys live in blocks of at most
+ * 2 * BLOCK sorted entries (a sorted list of sorted arrays), so lookups, inserts and removals anywhere
+ * in the order cost O(log n + BLOCK) with no per-entry objects, and walking the order is a plain scan.
+ * {@link #freeze} shares the blocks with an immutable {@link Frozen} order the same way
+ * {@link ShapeColumns#freeze} shares its chunks: a block is copied before its first change after that,
+ * so freezing costs O(n / BLOCK) and each block is copied at most once per publish.
+ */
+class ZOrder {
+    static final long NONE = Long.MIN_VALUE;
+    private static final int BLOCK = 512;
+
+    // Writable while its epoch is the order's, shared with frozen orders after that
+    private static final class Block {
+        final long epoch;
+        final long[] z;
+        final int[] row;
+        int n;
+
+        Block(long epoch) {
+            this.epoch = epoch;
+            z = new long[2 * BLOCK];
+            row = new int[2 * BLOCK];
+        }
+
+        Block(Block from, long epoch) {
+            this.epoch = epoch;
+            z = from.z.clone();
+            row = from.row.clone();
+            n = from.n;
+        }
+
+        long last() {
+            return z[n - 1];
+        }
+    }
+
+    // Rows from bottom to top as they were when frozen
+    static final class Frozen {
+        private final Block[] blocks;
+        private final int[] start; // position of each block's first row
+        private final int size;
+
+        private Frozen(Block[] blocks) {
+            this.blocks = blocks;
+            start = new int[blocks.length];
+            int at = 0;
+            for (int b = 0; b < blocks.length; b++) {
+                start[b] = at;
+                at += blocks[b].n;
+            }
+            size = at;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int row(int i) {
+            Objects.checkIndex(i, size);
+            int lo = 0, hi = blocks.length - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (start[mid] <= i)
+                    lo = mid;
+                else
+                    hi = mid - 1;
+            }
+            return blocks[lo].row[i - start[lo]];
+        }
+
+        // Row at that key, or -1
+        int get(long z) {
+            int lo = 0, hi = blocks.length - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (blocks[mid].last() < z)
+                    lo = mid + 1;
+                else
+                    hi = mid - 1;
+            }
+            if (lo == blocks.length)
+                return -1;
+            int i = Arrays.binarySearch(blocks[lo].z, 0, blocks[lo].n, z);
+            return i < 0 ? -1 : blocks[lo].row[i];
+        }
+    }
+
+    private final List<Block> blocks = new ArrayList<>();
+    private long epoch;
+    private int size;
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        blocks.clear();
+        size = 0;
+    }
+
+    // Row at that key, or -1
+    int get(long z) {
+        int b = blockFor(z);
+        if (b == blocks.size())
+            return -1;
+        Block block = blocks.get(b);
+        int i = Arrays.binarySearch(block.z, 0, block.n, z);
+        return i < 0 ? -1 : block.row[i];
+    }
+
+    boolean contains(long z) {
+        return get(z) >= 0;
+    }
+
+    // The key must not be taken
+    void put(long z, int row) {
+        if (blocks.isEmpty()) {
+            Block first = new Block(epoch);
+            first.z[0] = z;
+            first.row[0] = row;
+            first.n = 1;
+            blocks.add(first);
+            size = 1;
+            return;
+        }
+        int b = Math.min(blockFor(z), blocks.size() - 1);
+        Block block = writable(b);
+        int i = -Arrays.binarySearch(block.z, 0, block.n, z) - 1;
+        System.arraycopy(block.z, i, block.z, i + 1, block.n - i);
+        System.arraycopy(block.row, i, block.row, i + 1, block.n - i);
+        block.z[i] = z;
+        block.row[i] = row;
+        block.n++;
+        size++;
+        if (block.n == 2 * BLOCK) {
+            Block upper = new Block(epoch);
+            upper.n = BLOCK;
+            System.arraycopy(block.z, BLOCK, upper.z, 0, BLOCK);
+            System.arraycopy(block.row, BLOCK, upper.row, 0, BLOCK);
+            block.n = BLOCK;
+            blocks.add(b + 1, upper);
+        }
+    }
+
+    // Points an existing key at another row (a swap exchanges the rows of two keys)
+    void set(long z, int row) {
+        Block block = writable(blockFor(z));
+        block.row[Arrays.binarySearch(block.z, 0, block.n, z)] = row;
+    }
+
+    void remove(long z) {
+        int b = blockFor(z);
+        if (b == blocks.size())
+            return;
+        Block block = blocks.get(b);
+        int i = Arrays.binarySearch(block.z, 0, block.n, z);
+        if (i < 0)
+            return;
+        block = writable(b);
+        System.arraycopy(block.z, i + 1, block.z, i, block.n - i - 1);
+        System.arraycopy(block.row, i + 1, block.row, i, block.n - i - 1);
+        block.n--;
+        size--;
+        if (block.n == 0)
+            blocks.remove(b);
+    }
+
+    long first() {
+        return blocks.isEmpty() ? NONE : blocks.get(0).z[0];
+    }
+
+    long last() {
+        return blocks.isEmpty() ? NONE : blocks.get(blocks.size() - 1).last();
+    }
+
+    // Next key above/below z (which need not be present), or NONE
+    long higher(long z) {
+        int b = blockFor(z);
+        if (b == blocks.size())
+            return NONE;
+        Block block = blocks.get(b);
+        int i = Arrays.binarySearch(block.z, 0, block.n, z);
+        i = i < 0 ? -i - 1 : i + 1;
+        if (i < block.n)
+            return block.z[i];
+        return b + 1 < blocks.size() ? blocks.get(b + 1).z[0] : NONE;
+    }
+
+    long lower(long z) {
+        int b = Math.min(blockFor(z), blocks.size() - 1);
+        if (b < 0)
+            return NONE;
+        Block block = blocks.get(b);
+        int i = Arrays.binarySearch(block.z, 0, block.n, z);
+        i = i < 0 ? -i - 2 : i - 1;
+        if (i >= 0)
+            return block.z[i];
+        return b > 0 ? blocks.get(b - 1).last() : NONE;
+    }
+
+    // Immutable order as it is now; later writes copy the blocks they change
+    Frozen freeze() {
+        Frozen frozen = new Frozen(blocks.toArray(new Block[0]));
+        epoch++;
+        return frozen;
+    }
+
+    // The block at that position, copied first if a frozen order still shares it
+    private Block writable(int b) {
+        Block block = blocks.get(b);
+        if (block.epoch != epoch) {
+            block = new Block(block, epoch);
+            blocks.set(b, block);
+        }
+        return block;
+    }
+
+    // First block whose last key is >= z, or blocks.size() when z is above everything
+    private int blockFor(long z) {
+        int lo = 0, hi = blocks.size() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (blocks.get(mid).last() < z)
+                lo = mid + 1;
+            else
+                hi = mid - 1;
+        }
+        return lo;
+    }
+}
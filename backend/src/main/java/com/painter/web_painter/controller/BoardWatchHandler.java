@@ -0,0 +1,58 @@
+package com.painter.web_painter.controller;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.util.UriComponentsBuilder;
+import com.painter.web_painter.Service.BoardBroadcaster;
+import com.painter.web_painter.Service.BoardSession;
+
+/**
+ * Read-only live view of a board: /api/watch?board=..
+ * The first message is the whole board as a full ChangeSet, every later one a ChangeSet delta
+ * ({"version":..,"full":false,"upserts":[..],"deleted":[..]}) bringing the viewer to the latest
+ * version. A viewer that reads slowly receives fewer, larger deltas. Messages from the client are ignored.
+ */
+@Component
+public class BoardWatchHandler extends TextWebSocketHandler {
+
+    private final BoardBroadcaster broadcaster;
+    private final Map<String, Watch> watches = new ConcurrentHashMap<>();
+
+    public BoardWatchHandler(BoardBroadcaster broadcaster) {
+        this.broadcaster = broadcaster;
+    }
+
+    private record Watch(String boardId, BoardBroadcaster.Viewer viewer) {
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws IOException {
+        String boardId;
+        BoardBroadcaster.Viewer viewer = json -> session.sendMessage(new TextMessage(json));
+        try {
+            boardId = BoardSession.of(UriComponentsBuilder.fromUri(session.getUri()).build()
+                    .getQueryParams().getFirst("board"), null).boardId();
+            if (!broadcaster.subscribe(boardId, viewer)) {
+                session.close(CloseStatus.SERVICE_OVERLOAD.withReason("Too many viewers"));
+                return;
+            }
+        } catch (IllegalArgumentException e) {
+            session.close(CloseStatus.BAD_DATA.withReason(e.getMessage()));
+            return;
+        }
+        watches.put(session.getId(), new Watch(boardId, viewer));
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        Watch watch = watches.remove(session.getId());
+        if (watch != null)
+            broadcaster.unsubscribe(watch.boardId(), watch.viewer());
+    }
+}
@@ -0,0 +1,203 @@
+package com.painter.web_painter.controller;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.util.UriComponentsBuilder;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.painter.web_painter.Service.BoardSession;
+import com.painter.web_painter.Service.PaintService;
+import com.painter.web_painter.model.Shape;
+
+/**
+ * Drag channel for move/resize: one WebSocket per drag instead of one POST per mouse event.
+ * Client messages:
+ *   {"op":"start"}  {"op":"move","dx":..,"dy":..}  {"op":"resize","anchor":..,"dx":..,"dy":..}  {"op":"end"}
+ * Deltas are only summed when they arrive; a tick (painter.drag.tick-ms) applies the sum once and pushes back
+ * {"version":..,"shape":{..}} for the dragged shape. Closing the socket ends the drag.
+ * The tick runs on its own thread and only dispatches: each drag is flushed on a virtual thread, at most one
+ * at a time, so a board held by a long batch or load delays only its own drags (their deltas keep summing)
+ * and never the other boards' drags or the application's scheduled jobs.
+ * Board and client are taken from the query string: /api/drag?board=..&client=..
+ */
+@Component
+public class DragSocketHandler extends TextWebSocketHandler {
+
+    private final PaintService paintService;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<String, DragState> drags = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("drag-tick").daemon(true).factory());
+    private final ExecutorService flushers = Executors.newVirtualThreadPerTaskExecutor();
+
+    public DragSocketHandler(PaintService paintService, @Value("${painter.drag.tick-ms:16}") long tickMs) {
+        this.paintService = paintService;
+        ticker.scheduleAtFixedRate(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    // Summed deltas of one kind; a change of kind or anchor starts a new one, so they are never merged
+    private record Delta(boolean resize, String anchor, double dx, double dy) {
+    }
+
+    // Deltas received since the last flush. The fields are guarded by the DragState monitor, which is only
+    // held for bookkeeping; applying holds "applying" instead (a lock, not a monitor, since it waits for the
+    // board on a virtual thread), so receiving never waits for a busy board
+    private static class DragState {
+        final WebSocketSession session;
+        final BoardSession board;
+        final ReentrantLock applying = new ReentrantLock();
+        final AtomicBoolean queued = new AtomicBoolean(); // a tick's flush is pending or running
+        final ArrayDeque<Delta> pending = new ArrayDeque<>();
+        boolean active = false;
+        String anchor = "bottom-right";
+
+        DragState(WebSocketSession session, BoardSession board) {
+            this.session = session;
+            this.board = board;
+        }
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws IOException {
+        MultiValueMap<String, String> query = UriComponentsBuilder.fromUri(session.getUri()).build().getQueryParams();
+        BoardSession board;
+        try {
+            board = BoardSession.of(query.getFirst("board"), query.getFirst("client"));
+        } catch (IllegalArgumentException e) {
+            session.close(CloseStatus.BAD_DATA.withReason(e.getMessage()));
+            return;
+        }
+        drags.put(session.getId(),
+                new DragState(new ConcurrentWebSocketSessionDecorator(session, 1000, 64 * 1024), board));
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws IOException {
+        DragState drag = drags.get(session.getId());
+        if (drag == null)
+            return;
+        JsonNode msg = mapper.readTree(message.getPayload());
+        String op = msg.path("op").asText();
+        switch (op) {
+            case "start" -> {
+                flush(drag);
+                synchronized (drag) {
+                    drag.active = true;
+                }
+                paintService.startMove(drag.board);
+            }
+            case "move", "resize" -> {
+                synchronized (drag) {
+                    boolean resize = op.equals("resize");
+                    String anchor = msg.path("anchor").asText(drag.anchor);
+                    double dx = msg.path("dx").asDouble(), dy = msg.path("dy").asDouble();
+                    Delta last = drag.pending.peekLast();
+                    if (last != null && last.resize() == resize && last.anchor().equals(anchor)) {
+                        drag.pending.pollLast();
+                        dx += last.dx();
+                        dy += last.dy();
+                    }
+                    drag.pending.addLast(new Delta(resize, anchor, dx, dy));
+                    drag.anchor = anchor;
+                }
+            }
+            case "end" -> endDrag(drag);
+            default -> {
+            }
+        }
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        DragState drag = drags.remove(session.getId());
+        if (drag != null)
+            endDrag(drag);
+    }
+
+    // Only dispatches: a drag whose previous flush is still waiting for its board is skipped this time
+    public void tick() {
+        for (DragState drag : drags.values())
+            if (drag.queued.compareAndSet(false, true))
+                flushers.execute(() -> {
+                    try {
+                        flush(drag);
+                    } finally {
+                        drag.queued.set(false);
+                    }
+                });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ticker.shutdownNow();
+        flushers.shutdownNow();
+    }
+
+    private void endDrag(DragState drag) {
+        flush(drag);
+        synchronized (drag) {
+            if (!drag.active)
+                return;
+            drag.active = false;
+        }
+        paintService.endMove(drag.board);
+    }
+
+    // Applies the pending deltas, each as a single move/resize, and sends the updated shape back
+    private void flush(DragState drag) {
+        drag.applying.lock();
+        try {
+            List<Delta> deltas;
+            synchronized (drag) {
+                deltas = new ArrayList<>(drag.pending);
+                drag.pending.clear();
+            }
+            boolean applied = false;
+            for (Delta d : deltas) {
+                if (d.dx() == 0 && d.dy() == 0)
+                    continue;
+                if (d.resize())
+                    paintService.resizeSelected(drag.board, d.anchor(), d.dx(), d.dy());
+                else
+                    paintService.moveSelected(drag.board, d.dx(), d.dy());
+                applied = true;
+            }
+            if (applied)
+                send(drag);
+        } finally {
+            drag.applying.unlock();
+        }
+    }
+
+    private void send(DragState drag) {
+        Shape shape = paintService.getSelectedShape(drag.board);
+        if (shape == null || !drag.session.isOpen())
+            return;
+        try {
+            long version = paintService.getVersion(drag.board);
+            String json = mapper.writeValueAsString(Map.of("version", version, "shape", shape));
+            drag.session.sendMessage(new TextMessage(json));
+        } catch (IOException | IllegalStateException e) {
+            // Client went away mid-drag; the close callback ends the drag
+        }
+    }
+}
@@ -1,168 +1,510 @@
 package com.painter.web_painter.controller;
 
+import java.awt.image.BufferedImage;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
+import javax.imageio.ImageIO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.web.ErrorResponse;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.filter.ServerHttpObservationFilter;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import com.painter.web_painter.Service.BoardSession;
+import com.painter.web_painter.Service.BoardSnapshot;
+import com.painter.web_painter.Service.DrawingFormat;
 import com.painter.web_painter.Service.PaintService;
 import com.painter.web_painter.Service.ShapeFactory;
+import com.painter.web_painter.Service.TileRenderer;
+import com.painter.web_painter.model.Bounds;
+import com.painter.web_painter.model.LoadProgress;
+import com.painter.web_painter.model.PackedPoints;
 import com.painter.web_painter.model.Shape;
+import com.painter.web_painter.model.SimplifyResult;
+import com.painter.web_painter.model.TimelineEntry;
 
 @RestController
 @RequestMapping("/api")
 @CrossOrigin(origins = "http://localhost:4200")
 public class PaintController {
+    private static final Logger log = LoggerFactory.getLogger(PaintController.class);
 
     private final PaintService paintService;
     private final ShapeFactory factory;
+    private final TileRenderer renderer;
+    private final int maxBatchCommands;
 
     @Autowired
-    public PaintController(ShapeFactory factory, PaintService paintService) {
+    public PaintController(ShapeFactory factory, PaintService paintService, TileRenderer renderer,
+            @Value("${painter.batch.max-commands:10000}") int maxBatchCommands) {
         this.factory = factory;
         this.paintService = paintService;
+        this.renderer = renderer;
+        this.maxBatchCommands = maxBatchCommands;
     }
 
+    // Board and client come from headers; omitting them uses the shared "default" board
+    @ModelAttribute
+    public BoardSession session(@RequestHeader(value = "X-Board-Id", required = false) String boardId,
+            @RequestHeader(value = "X-Client-Id", required = false) String clientId) {
+        return BoardSession.of(boardId, clientId);
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> badRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+
+    // Anything else is a bug or an I/O failure: log it and answer 500, keeping the exception on the
+    // request's http.server.requests observation so it still shows up in the metrics
+    @ExceptionHandler(Exception.class)
+    public ResponseEntity<Void> serverError(Exception e, HttpServletRequest request) throws Exception {
+        if (e instanceof ErrorResponse || e instanceof HttpMessageNotReadableException)
+            throw e; // framework errors (unreadable body, missing parameters...) keep their own status
+        log.error("{} {} failed", request.getMethod(), request.getRequestURI(), e);
+        ServerHttpObservationFilter.findObservationContext(request).ifPresent(context -> context.setError(e));
+        return ResponseEntity.internalServerError().build();
+    }
+
+    // With ?since=<version> only the changes after that version are returned;
+    // with ?viewport=x,y,w,h only the shapes meeting that area (strokes decimated when ?scale= is below 1).
+    // The board version doubles as the ETag so unchanged polls get a 304
     @GetMapping("/shapes")
-    public ResponseEntity<List<Shape>> getAll() {
-        return ResponseEntity.ok(paintService.getShapes());
+    public ResponseEntity<?> getAll(@ModelAttribute BoardSession session,
+            @RequestParam(required = false) Long since, @RequestParam(required = false) String viewport,
+            @RequestParam(defaultValue = "1") double scale, WebRequest request) {
+        String etag = "\"" + paintService.getVersion(session) + "\"";
+        if (request.checkNotModified(etag))
+            return null;
+        if (viewport == null)
+            return board(session, since);
+        if (since != null)
+            throw new IllegalArgumentException("viewport and since can't be combined");
+        BoardSnapshot visible = paintService.getShapesIn(session, parseViewport(viewport), scale);
+        return ResponseEntity.ok().eTag("\"" + visible.version() + "\"").body(visible.shapes());
     }
 
-    @PostMapping("/create")
-    public ResponseEntity<List<Shape>> create(@RequestBody Map<String, Object> payload) {
+    private static Bounds parseViewport(String viewport) {
+        String[] parts = viewport.split(",");
+        if (parts.length != 4)
+            throw new IllegalArgumentException("viewport must be x,y,w,h");
         try {
-            String type = (String) payload.get("type");
-            @SuppressWarnings("unchecked")
-            Map<String, Object> params = (Map<String, Object>) payload.get("params");
-            if (params == null)
-                params = Map.of();
-            Shape s = factory.createShape(type, params);
-            if (s != null)
-                paintService.addShape(s);
-            return ResponseEntity.ok(paintService.getShapes());
-        } catch (Exception e) {
-            e.printStackTrace();
-            return ResponseEntity.internalServerError().build();
+            double x = Double.parseDouble(parts[0].trim()), y = Double.parseDouble(parts[1].trim());
+            double w = Double.parseDouble(parts[2].trim()), h = Double.parseDouble(parts[3].trim());
+            if (!(w > 0) || !(h > 0) || !Double.isFinite(x + y + w + h))
+                throw new IllegalArgumentException("viewport width and height must be positive");
+            return new Bounds(x, y, x + w, y + h);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("viewport must be x,y,w,h");
         }
     }
 
+    @PostMapping("/create")
+    public ResponseEntity<?> create(@ModelAttribute BoardSession session, @RequestBody Map<String, Object> payload,
+            @RequestParam(required = false) Long since) {
+        String type = (String) payload.get("type");
+        @SuppressWarnings("unchecked")
+        Map<String, Object> params = (Map<String, Object>) payload.get("params");
+        if (params == null)
+            params = Map.of();
+        Shape s = factory.createShape(type, params);
+        if (s != null)
+            paintService.addShape(session, s);
+        return board(session, since);
+    }
+
     @PostMapping("/undo")
-    public ResponseEntity<List<Shape>> undo() {
-        paintService.undo();
-        return ResponseEntity.ok(paintService.getShapes());
+    public ResponseEntity<?> undo(@ModelAttribute BoardSession session, @RequestParam(required = false) Long since) {
+        paintService.undo(session);
+        return board(session, since);
     }
 
     @PostMapping("/redo")
-    public ResponseEntity<List<Shape>> redo() {
-        paintService.redo();
-        return ResponseEntity.ok(paintService.getShapes());
+    public ResponseEntity<?> redo(@ModelAttribute BoardSession session, @RequestParam(required = false) Long since) {
+        paintService.redo(session);
+        return board(session, since);
+    }
+
+    // Every board version still in the timeline, oldest first (undo/redo steps included)
+    @GetMapping("/history")
+    public ResponseEntity<List<TimelineEntry>> history(@ModelAttribute BoardSession session) {
+        return ResponseEntity.ok(paintService.getTimeline(session));
+    }
+
+    // The board as it was at that version; 404 once the version dropped out of the timeline
+    @GetMapping("/history/{version}")
+    public ResponseEntity<List<Shape>> historyVersion(@ModelAttribute BoardSession session,
+            @PathVariable long version) throws IOException {
+        List<Shape> shapes = paintService.getShapesAt(session, version);
+        if (shapes == null)
+            return ResponseEntity.notFound().build();
+        return ResponseEntity.ok().eTag("\"" + version + "\"").body(shapes);
     }
 
     @PostMapping("/select")
-    public ResponseEntity<List<Shape>> select(@RequestBody Map<String, Object> p) {
-        paintService.selectShapeAt(((Number) p.get("x")).doubleValue(), ((Number) p.get("y")).doubleValue());
-        return ResponseEntity.ok(paintService.getShapes());
+    public ResponseEntity<?> select(@ModelAttribute BoardSession session, @RequestBody Map<String, Object> p,
+            @RequestParam(required = false) Long since) {
+        paintService.selectShapeAt(session, ((Number) p.get("x")).doubleValue(), ((Number) p.get("y")).doubleValue());
+        return board(session, since);
+    }
+
+    // Marquee selection: every shape lying completely inside the rectangle; answers the selected ids
+    @PostMapping("/select/rect")
+    public ResponseEntity<List<String>> selectRect(@ModelAttribute BoardSession session,
+            @RequestBody Map<String, Object> p) {
+        double x = ((Number) p.get("x")).doubleValue(), y = ((Number) p.get("y")).doubleValue();
+        double w = ((Number) p.get("width")).doubleValue(), h = ((Number) p.get("height")).doubleValue();
+        return ResponseEntity.ok(paintService.selectInRect(session,
+                new Bounds(Math.min(x, x + w), Math.min(y, y + h), Math.max(x, x + w), Math.max(y, y + h))));
+    }
+
+    // Lasso selection: every shape lying completely inside the polygon {"points":[{"x":..,"y":..},..]}
+    @PostMapping("/select/lasso")
+    public ResponseEntity<List<String>> selectLasso(@ModelAttribute BoardSession session,
+            @RequestBody Map<String, List<Map<String, Number>>> p) {
+        List<Map<String, Number>> points = p.get("points");
+        if (points == null)
+            throw new IllegalArgumentException("points are required");
+        PackedPoints polygon = new PackedPoints(points.size());
+        for (Map<String, Number> pt : points)
+            polygon.add(pt.get("x").doubleValue(), pt.get("y").doubleValue());
+        return ResponseEntity.ok(paintService.selectInLasso(session, polygon));
+    }
+
+    @GetMapping("/selection")
+    public ResponseEntity<List<String>> selection(@ModelAttribute BoardSession session) {
+        return ResponseEntity.ok(paintService.getSelection(session));
+    }
+
+    // Bulk edits of the whole selection (marquee/lasso, else the single selected shape); each is one undo step
+    @PostMapping("/selection/move")
+    public ResponseEntity<?> moveSelection(@ModelAttribute BoardSession session, @RequestBody Map<String, Object> p,
+            @RequestParam(required = false) Long since) {
+        paintService.moveSelection(session, ((Number) p.get("dx")).doubleValue(), ((Number) p.get("dy")).doubleValue());
+        return board(session, since);
+    }
+
+    @PostMapping("/selection/scale")
+    public ResponseEntity<?> scaleSelection(@ModelAttribute BoardSession session, @RequestBody Map<String, Object> p,
+            @RequestParam(required = false) Long since) {
+        paintService.scaleSelection(session, ((Number) p.get("factor")).doubleValue());
+        return board(session, since);
+    }
+
+    // Either or both of "color" and "fillColor"
+    @PostMapping("/selection/color")
+    public ResponseEntity<?> recolorSelection(@ModelAttribute BoardSession session,
+            @RequestBody Map<String, String> p, @RequestParam(required = false) Long since) {
+        paintService.recolorSelection(session, p.get("color"), p.get("fillColor"));
+        return board(session, since);
+    }
+
+    @PostMapping("/selection/width")
+    public ResponseEntity<?> selectionWidth(@ModelAttribute BoardSession session, @RequestBody Map<String, Object> p,
+            @RequestParam(required = false) Long since) {
+        paintService.setSelectionStrokeWidth(session, ((Number) p.get("width")).doubleValue());
+        return board(session, since);
+    }
+
+    @PostMapping("/selection/delete")
+    public ResponseEntity<?> deleteSelection(@ModelAttribute BoardSession session,
+            @RequestParam(required = false) Long since) {
+        paintService.deleteSelection(session);
+        return board(session, since);
     }
 
     @PostMapping("/move/start")
-    public ResponseEntity<Void> startMove() {
-        paintService.startMove();
+    public ResponseEntity<Void> startMove(@ModelAttribute BoardSession session) {
+        paintService.startMove(session);
         return ResponseEntity.ok().build();
     }
 
     @PostMapping("/move")
-    public ResponseEntity<List<Shape>> move(@RequestBody Map<String, Object> p) {
-        paintService.moveSelected(((Number) p.get("dx")).doubleValue(), ((Number) p.get("dy")).doubleValue());
-        return ResponseEntity.ok(paintService.getShapes());
+    public ResponseEntity<?> move(@ModelAttribute BoardSession session, @RequestBody Map<String, Object> p,
+            @RequestParam(required = false) Long since) {
+        paintService.moveSelected(session, ((Number) p.get("dx")).doubleValue(), ((Number) p.get("dy")).doubleValue());
+        return board(session, since);
     }
 
     @PostMapping("/move/end")
-    public ResponseEntity<List<Shape>> endMove() {
-        paintService.endMove();
-        return ResponseEntity.ok(paintService.getShapes());
+    public ResponseEntity<?> endMove(@ModelAttribute BoardSession session, @RequestParam(required = false) Long since) {
+        paintService.endMove(session);
+        return board(session, since);
     }
 
     @PostMapping("/copy")
-    public ResponseEntity<List<Shape>> copy() {
-        paintService.copySelected();
-        return ResponseEntity.ok(paintService.getShapes());
+    public ResponseEntity<?> copy(@ModelAttribute BoardSession session, @RequestParam(required = false) Long since) {
+        paintService.copySelected(session);
+        return board(session, since);
     }
 
     @PostMapping("/paste")
-    public ResponseEntity<List<Shape>> paste(@RequestBody Map<String, Object> p) {
-        paintService.pasteSelected(((Number) p.get("x")).doubleValue(), ((Number) p.get("y")).doubleValue());
-        return ResponseEntity.ok(paintService.getShapes());
+    public ResponseEntity<?> paste(@ModelAttribute BoardSession session, @RequestBody Map<String, Object> p,
+            @RequestParam(required = false) Long since) {
+        paintService.pasteSelected(session, ((Number) p.get("x")).doubleValue(), ((Number) p.get("y")).doubleValue());
+        return board(session, since);
     }
 
     @PostMapping("/delete")
-    public ResponseEntity<List<Shape>> delete() {
-        paintService.deleteSelected();
-        return ResponseEntity.ok(paintService.getShapes());
+    public ResponseEntity<?> delete(@ModelAttribute BoardSession session, @RequestParam(required = false) Long since) {
+        paintService.deleteSelected(session);
+        return board(session, since);
     }
 
     // NEW: CLEAR ENDPOINT
     @PostMapping("/clear")
-    public ResponseEntity<List<Shape>> clear() {
-        paintService.clearBoard();
-        return ResponseEntity.ok(paintService.getShapes());
+    public ResponseEntity<?> clear(@ModelAttribute BoardSession session, @RequestParam(required = false) Long since) {
+        paintService.clearBoard(session);
+        return board(session, since);
     }
 
     @PostMapping("/resize")
-    public ResponseEntity<List<Shape>> resize(@RequestBody Map<String, Object> p) {
-        paintService.resizeSelected((String) p.get("anchor"), ((Number) p.get("dx")).doubleValue(),
+    public ResponseEntity<?> resize(@ModelAttribute BoardSession session, @RequestBody Map<String, Object> p,
+            @RequestParam(required = false) Long since) {
+        paintService.resizeSelected(session, (String) p.get("anchor"), ((Number) p.get("dx")).doubleValue(),
                 ((Number) p.get("dy")).doubleValue());
-        return ResponseEntity.ok(paintService.getShapes());
+        return board(session, since);
+    }
+
+    @PostMapping("/front")
+    public ResponseEntity<?> bringToFront(@ModelAttribute BoardSession session,
+            @RequestParam(required = false) Long since) {
+        paintService.bringToFront(session);
+        return board(session, since);
+    }
+
+    @PostMapping("/back")
+    public ResponseEntity<?> sendToBack(@ModelAttribute BoardSession session,
+            @RequestParam(required = false) Long since) {
+        paintService.sendToBack(session);
+        return board(session, since);
+    }
+
+    @PostMapping("/forward")
+    public ResponseEntity<?> moveForward(@ModelAttribute BoardSession session,
+            @RequestParam(required = false) Long since) {
+        paintService.moveForward(session);
+        return board(session, since);
+    }
+
+    @PostMapping("/backward")
+    public ResponseEntity<?> moveBackward(@ModelAttribute BoardSession session,
+            @RequestParam(required = false) Long since) {
+        paintService.moveBackward(session);
+        return board(session, since);
     }
 
     @PostMapping("/color")
-    public ResponseEntity<List<Shape>> color(@RequestBody Map<String, String> p) {
-        paintService.updateColor(p.get("color"));
-        return ResponseEntity.ok(paintService.getShapes());
+    public ResponseEntity<?> color(@ModelAttribute BoardSession session, @RequestBody Map<String, String> p,
+            @RequestParam(required = false) Long since) {
+        paintService.updateColor(session, p.get("color"));
+        return board(session, since);
     }
 
     @PostMapping("/fill")
-    public ResponseEntity<List<Shape>> fill(@RequestBody Map<String, String> p) {
-        paintService.updateFillColor(p.get("fillColor"));
-        return ResponseEntity.ok(paintService.getShapes());
+    public ResponseEntity<?> fill(@ModelAttribute BoardSession session, @RequestBody Map<String, String> p,
+            @RequestParam(required = false) Long since) {
+        paintService.updateFillColor(session, p.get("fillColor"));
+        return board(session, since);
     }
 
     @PostMapping("/width")
-    public ResponseEntity<List<Shape>> width(@RequestBody Map<String, Object> p) {
-        paintService.updateStrokeWidth(((Number) p.get("width")).doubleValue());
-        return ResponseEntity.ok(paintService.getShapes());
+    public ResponseEntity<?> width(@ModelAttribute BoardSession session, @RequestBody Map<String, Object> p,
+            @RequestParam(required = false) Long since) {
+        paintService.updateStrokeWidth(session, ((Number) p.get("width")).doubleValue());
+        return board(session, since);
     }
 
-    @GetMapping("/save/json")
-    public ResponseEntity<byte[]> saveJson() {
-        try {
-            return ResponseEntity.ok().header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"drawing.json\"")
-                    .body(paintService.SavetoJson().getBytes(StandardCharsets.UTF_8));
-        } catch (Exception e) {
-            return ResponseEntity.internalServerError().build();
+    // Ordered list of commands applied atomically as one undo step, answered like any other mutation.
+    // Each command is {"op": <endpoint path>, ...the fields that endpoint takes}, e.g.
+    // {"op":"create","type":"circle","params":{..}}, {"op":"select","x":..,"y":..} or
+    // {"op":"selection/scale","factor":2}.
+    // "move" and "resize" are complete drags (start, delta, end). If a command fails nothing is applied
+    // and the answer is 400 naming the command.
+    @PostMapping("/batch")
+    public ResponseEntity<?> batch(@ModelAttribute BoardSession session,
+            @RequestBody List<Map<String, Object>> commands, @RequestParam(required = false) Long since) {
+        if (commands.size() > maxBatchCommands)
+            throw new IllegalArgumentException("A batch can have at most " + maxBatchCommands + " commands");
+        paintService.batch(session, () -> {
+            for (int i = 0; i < commands.size(); i++) {
+                Map<String, Object> c = commands.get(i);
+                try {
+                    apply(session, c);
+                } catch (IllegalArgumentException | ClassCastException | NullPointerException e) {
+                    throw new IllegalArgumentException(
+                            "Command " + i + " (" + c.get("op") + ") failed: " + e.getMessage(), e);
+                }
+            }
+        });
+        return board(session, since);
+    }
+
+    private void apply(BoardSession session, Map<String, Object> c) {
+        String op = (String) c.get("op");
+        switch (op == null ? "" : op) {
+            case "create" -> {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> params = (Map<String, Object>) c.getOrDefault("params", Map.of());
+                Shape s = factory.createShape((String) c.get("type"), params);
+                if (s == null)
+                    throw new IllegalArgumentException("Unknown shape type " + c.get("type"));
+                paintService.addShape(session, s);
+            }
+            case "select" -> paintService.selectShapeAt(session, num(c, "x"), num(c, "y"));
+            case "select/rect" -> {
+                double x = num(c, "x"), y = num(c, "y"), w = num(c, "width"), h = num(c, "height");
+                paintService.selectInRect(session,
+                        new Bounds(Math.min(x, x + w), Math.min(y, y + h), Math.max(x, x + w), Math.max(y, y + h)));
+            }
+            case "move" -> {
+                double dx = num(c, "dx"), dy = num(c, "dy");
+                paintService.startMove(session);
+                paintService.moveSelected(session, dx, dy);
+                paintService.endMove(session);
+            }
+            case "resize" -> {
+                double dx = num(c, "dx"), dy = num(c, "dy");
+                paintService.startMove(session);
+                paintService.resizeSelected(session, (String) c.get("anchor"), dx, dy);
+                paintService.endMove(session);
+            }
+            case "copy" -> paintService.copySelected(session);
+            case "paste" -> paintService.pasteSelected(session, num(c, "x"), num(c, "y"));
+            case "delete" -> paintService.deleteSelected(session);
+            case "clear" -> paintService.clearBoard(session);
+            case "front" -> paintService.bringToFront(session);
+            case "back" -> paintService.sendToBack(session);
+            case "forward" -> paintService.moveForward(session);
+            case "backward" -> paintService.moveBackward(session);
+            case "color" -> paintService.updateColor(session, (String) c.get("color"));
+            case "fill" -> paintService.updateFillColor(session, (String) c.get("fillColor"));
+            case "width" -> paintService.updateStrokeWidth(session, num(c, "width"));
+            case "selection/move" -> paintService.moveSelection(session, num(c, "dx"), num(c, "dy"));
+            case "selection/scale" -> paintService.scaleSelection(session, num(c, "factor"));
+            case "selection/color" ->
+                paintService.recolorSelection(session, (String) c.get("color"), (String) c.get("fillColor"));
+            case "selection/width" -> paintService.setSelectionStrokeWidth(session, num(c, "width"));
+            case "selection/delete" -> paintService.deleteSelection(session);
+            default -> throw new IllegalArgumentException("Unknown op");
         }
     }
 
-    @GetMapping("/save/xml")
-    public ResponseEntity<byte[]> saveXml() {
-        try {
-            return ResponseEntity.ok().header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"drawing.xml\"")
-                    .contentType(MediaType.APPLICATION_XML)
-                    .body(paintService.SavetoXml().getBytes(StandardCharsets.ISO_8859_1));
-        } catch (Exception e) {
-            return ResponseEntity.internalServerError().build();
+    private static double num(Map<String, Object> c, String field) {
+        Object v = c.get(field);
+        if (!(v instanceof Number))
+            throw new IllegalArgumentException(field + " must be a number");
+        return ((Number) v).doubleValue();
+    }
+
+    // Re-simplifies the freehand strokes already on the board (undoable)
+    @PostMapping("/simplify")
+    public ResponseEntity<SimplifyResult> simplify(@ModelAttribute BoardSession session,
+            @RequestBody Map<String, Object> p) {
+        return ResponseEntity.ok(paintService.simplifyStrokes(session, ((Number) p.get("tolerance")).doubleValue()));
+    }
+
+    // Points dropped by stroke simplification at creation time, since startup
+    @GetMapping("/simplify/stats")
+    public ResponseEntity<SimplifyResult> simplifyStats() {
+        return ResponseEntity.ok(factory.getSimplifyStats());
+    }
+
+    // Vector export, one SVG element per shape
+    @GetMapping("/save/svg")
+    public ResponseEntity<StreamingResponseBody> saveSvg(@ModelAttribute BoardSession session,
+            @RequestParam(defaultValue = "false") boolean gzip) {
+        return download(session, "drawing.svg", MediaType.valueOf("image/svg+xml"), DrawingFormat.SVG, false, gzip);
+    }
+
+    // PNG preview of an area of the board (default: everything on it), scaled by ?scale=
+    @GetMapping(value = "/render", produces = MediaType.IMAGE_PNG_VALUE)
+    public ResponseEntity<StreamingResponseBody> render(@ModelAttribute BoardSession session,
+            @RequestParam(required = false) Double x, @RequestParam(required = false) Double y,
+            @RequestParam(required = false) Double width, @RequestParam(required = false) Double height,
+            @RequestParam(defaultValue = "1") double scale) {
+        Bounds area = null;
+        if (x != null && y != null && width != null && height != null)
+            area = new Bounds(x, y, x + width, y + height);
+        BufferedImage image = renderer.render(session, area, scale);
+        return ResponseEntity.ok().contentType(MediaType.IMAGE_PNG)
+                .body(out -> ImageIO.write(image, "png", out));
+    }
+
+    // The snapshot is taken now, so the file matches the board version in the ETag
+    private ResponseEntity<StreamingResponseBody> download(BoardSession session, String filename, MediaType type,
+            DrawingFormat format, boolean pretty, boolean gzip) {
+        BoardSnapshot snapshot = paintService.getSnapshot(session);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .contentType(format == DrawingFormat.BINARY ? type : new MediaType(type, StandardCharsets.UTF_8))
+                .eTag("\"" + snapshot.version() + "\"");
+        if (gzip)
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        return response.body(out -> paintService.save(snapshot, out, format, pretty, gzip));
+    }
+
+    // Mutations answer with the full list, or just the delta when the client sends ?since=<version>.
+    // The full list is assembled from the board's cached per-shape JSON
+    private ResponseEntity<?> board(BoardSession session, Long since) {
+        if (since != null) {
+            String etag = "\"" + paintService.getVersion(session) + "\"";
+            return ResponseEntity.ok().eTag(etag).body(paintService.getChangesSince(session, since));
         }
+        BoardSnapshot snapshot = paintService.getSnapshot(session);
+        return ResponseEntity.ok().eTag("\"" + snapshot.version() + "\"").contentType(MediaType.APPLICATION_JSON)
+                .body(paintService.toJson(snapshot));
+    }
+
+    // Saves are streamed straight into the response; ?pretty=false writes compact output and
+    // ?gzip=true compresses it (sent with Content-Encoding: gzip)
+    @GetMapping("/save/json")
+    public ResponseEntity<StreamingResponseBody> saveJson(@ModelAttribute BoardSession session,
+            @RequestParam(defaultValue = "true") boolean pretty, @RequestParam(defaultValue = "false") boolean gzip) {
+        return download(session, "drawing.json", MediaType.APPLICATION_JSON, DrawingFormat.JSON, pretty, gzip);
+    }
+
+    @GetMapping("/save/xml")
+    public ResponseEntity<StreamingResponseBody> saveXml(@ModelAttribute BoardSession session,
+            @RequestParam(defaultValue = "true") boolean pretty, @RequestParam(defaultValue = "false") boolean gzip) {
+        return download(session, "drawing.xml", MediaType.APPLICATION_XML, DrawingFormat.XML, pretty, gzip);
+    }
+
+    // Compact binary format (see BinaryDrawingCodec); load it back through /load as a .bin file
+    @GetMapping("/save/bin")
+    public ResponseEntity<StreamingResponseBody> saveBinary(@ModelAttribute BoardSession session,
+            @RequestParam(defaultValue = "false") boolean gzip) {
+        return download(session, "drawing.bin", MediaType.APPLICATION_OCTET_STREAM, DrawingFormat.BINARY, false,
+                gzip);
+    }
+
+    // Progress of the latest import into this board (poll while a large upload is being read)
+    @GetMapping("/load/status")
+    public ResponseEntity<LoadProgress> loadStatus(@ModelAttribute BoardSession session) {
+        LoadProgress progress = paintService.getLoadProgress(session);
+        return progress == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(progress);
     }
 
+    // Unreadable uploads are the client's fault (400); other failures go to the 500 handler
     @PostMapping("/load")
-    public ResponseEntity<String> load(@RequestParam("file") MultipartFile file) {
+    public ResponseEntity<String> load(@ModelAttribute BoardSession session, @RequestParam("file") MultipartFile file) {
         try {
-            paintService.loadFromFile(file);
+            paintService.loadFromFile(session, file);
             return ResponseEntity.ok("Loaded");
-        } catch (Exception e) {
+        } catch (IOException e) {
+            log.warn("Rejected upload {} for board {}: {}", file.getOriginalFilename(), session.boardId(),
+                    e.getMessage());
             return ResponseEntity.badRequest().body(e.getMessage());
         }
     }
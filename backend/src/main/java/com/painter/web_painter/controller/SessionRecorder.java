@@ -0,0 +1,104 @@
+package com.painter.web_painter.controller;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingRequestWrapper;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.painter.web_painter.Service.BoardSession;
+import com.painter.web_painter.model.TraceEvent;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Captures client sessions for load replay: every /api call is appended to painter.trace.file as
+ * one JSON {@link TraceEvent} per line, with its board, client, timing and body. Only active when
+ * that property is set. Bodies are kept up to painter.trace.max-body-bytes; uploads (multipart) are
+ * recorded without their file.
+ */
+@Component
+@ConditionalOnProperty("painter.trace.file")
+public class SessionRecorder extends OncePerRequestFilter {
+    private static final Logger log = LoggerFactory.getLogger(SessionRecorder.class);
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final BufferedWriter out;
+    private final int maxBodyBytes;
+
+    public SessionRecorder(@Value("${painter.trace.file}") String file,
+            @Value("${painter.trace.max-body-bytes:1048576}") int maxBodyBytes) throws IOException {
+        Path path = Path.of(file);
+        if (path.toAbsolutePath().getParent() != null)
+            Files.createDirectories(path.toAbsolutePath().getParent());
+        this.out = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+        this.maxBodyBytes = maxBodyBytes;
+        log.info("Recording API sessions to {}", path.toAbsolutePath());
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith(request.getContextPath() + "/api/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long t = System.currentTimeMillis();
+        String type = request.getContentType();
+        boolean multipart = type != null && type.startsWith("multipart/");
+        HttpServletRequest recorded = multipart ? request : new ContentCachingRequestWrapper(request, maxBodyBytes);
+        try {
+            chain.doFilter(recorded, response);
+        } finally {
+            String body = null;
+            if (recorded instanceof ContentCachingRequestWrapper cached && cached.getContentAsByteArray().length > 0)
+                body = new String(cached.getContentAsByteArray(), StandardCharsets.UTF_8);
+            String path = request.getRequestURI().substring(request.getContextPath().length())
+                    + (request.getQueryString() == null ? "" : "?" + request.getQueryString());
+            BoardSession session = session(request);
+            if (session != null)
+                write(new TraceEvent(t, session.boardId(), session.clientId(), request.getMethod(), path, type, body));
+        }
+    }
+
+    // null when the headers were refused: the request never reached a board, so there is nothing to replay
+    private static BoardSession session(HttpServletRequest request) {
+        try {
+            return BoardSession.of(request.getHeader("X-Board-Id"), request.getHeader("X-Client-Id"));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private synchronized void write(TraceEvent event) {
+        try {
+            out.write(mapper.writeValueAsString(event));
+            out.newLine();
+            out.flush();
+        } catch (IOException e) {
+            log.warn("Could not record {} {}", event.method(), event.path(), e);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            log.warn("Could not close the session trace", e);
+        }
+    }
+}
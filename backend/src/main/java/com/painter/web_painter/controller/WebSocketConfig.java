@@ -0,0 +1,25 @@
+package com.painter.web_painter.controller;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+@Configuration
+@EnableWebSocket
+public class WebSocketConfig implements WebSocketConfigurer {
+
+    private final DragSocketHandler dragHandler;
+    private final BoardWatchHandler watchHandler;
+
+    public WebSocketConfig(DragSocketHandler dragHandler, BoardWatchHandler watchHandler) {
+        this.dragHandler = dragHandler;
+        this.watchHandler = watchHandler;
+    }
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        registry.addHandler(dragHandler, "/api/drag").setAllowedOrigins("http://localhost:4200");
+        registry.addHandler(watchHandler, "/api/watch").setAllowedOrigins("http://localhost:4200");
+    }
+}
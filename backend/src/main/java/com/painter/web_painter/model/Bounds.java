@@ -0,0 +1,26 @@
+package com.painter.web_painter.model;
+
+// Axis-aligned bounding box in canvas coordinates
+public record Bounds(double minX, double minY, double maxX, double maxY) {
+
+    public boolean contains(double px, double py) {
+        return px >= minX && px <= maxX && py >= minY && py <= maxY;
+    }
+
+    public boolean contains(Bounds o) {
+        return o.minX >= minX && o.maxX <= maxX && o.minY >= minY && o.maxY <= maxY;
+    }
+
+    public boolean intersects(Bounds o) {
+        return o.minX <= maxX && o.maxX >= minX && o.minY <= maxY && o.maxY >= minY;
+    }
+
+    public Bounds inflate(double d) {
+        return new Bounds(minX - d, minY - d, maxX + d, maxY + d);
+    }
+
+    public Bounds union(Bounds o) {
+        return new Bounds(Math.min(minX, o.minX), Math.min(minY, o.minY), Math.max(maxX, o.maxX),
+                Math.max(maxY, o.maxY));
+    }
+}
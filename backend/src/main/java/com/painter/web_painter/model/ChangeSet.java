@@ -0,0 +1,14 @@
+package com.painter.web_painter.model;
+
+import java.util.List;
+
+/**
+ * Board changes after a client's known version. When "full" is true the client must drop
+ * its local copy and rebuild from "upserts" (its version was too old to send a delta).
+ */
+public record ChangeSet(long version, boolean full, List<Upsert> upserts, List<String> deleted) {
+
+    // A changed or new shape together with its z-order key (higher = on top)
+    public record Upsert(long z, Shape shape) {
+    }
+}
@@ -16,7 +16,7 @@ public class Circle extends Shape {
         this.setType("circle");
     }
     private Circle(Circle target) {
-        super(UUID.randomUUID().toString(), target.x, target.y, target.color, target.fillColor);
+        super(target);
         this.radius = target.radius;
         this.setType("circle");
     }
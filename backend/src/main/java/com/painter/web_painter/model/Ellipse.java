@@ -19,7 +19,7 @@ public class Ellipse extends Shape {
 
     // Prototype Pattern Constructor
     private Ellipse(Ellipse target) {
-        super(UUID.randomUUID().toString(), target.x, target.y, target.color, target.fillColor);
+        super(target);
         this.radiusX = target.radiusX;
         this.radiusY = target.radiusY;
         this.setType("ellipse");
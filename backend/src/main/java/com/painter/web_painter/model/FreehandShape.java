@@ -1,19 +1,20 @@
 package com.painter.web_painter.model;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
 import java.util.UUID;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
 public class FreehandShape extends Shape {
-    private List<Map<String, Double>> points = new ArrayList<>();
+    @JsonSerialize(using = PackedPointsSerializer.class)
+    @JsonDeserialize(using = PackedPointsDeserializer.class)
+    private PackedPoints points = new PackedPoints();
 
     public FreehandShape() {
         this.setType("freehand");
 
     }
 
-    public FreehandShape(List<Map<String, Double>> points, String color, String fillColor) {
+    public FreehandShape(PackedPoints points, String color, String fillColor) {
         super(UUID.randomUUID().toString(), 0, 0, color, fillColor);
         this.points = points;
         this.setType("freehand");
@@ -23,8 +24,8 @@ public class FreehandShape extends Shape {
 
     // Prototype Copy
     private FreehandShape(FreehandShape target) {
-        super(UUID.randomUUID().toString(), target.x + 10, target.y + 10, target.color, target.fillColor);
-        this.points = new ArrayList<>(target.points);
+        super(target);
+        this.points = target.points.copy();
         this.setType("freehand");
 
     }
@@ -34,6 +35,6 @@ public class FreehandShape extends Shape {
         return new FreehandShape(this);
     }
 
-    public List<Map<String, Double>> getPoints() { return points; }
-    public void setPoints(List<Map<String, Double>> points) { this.points = points; }
-}
\ No newline at end of file
+    public PackedPoints getPoints() { return points; }
+    public void setPoints(PackedPoints points) { this.points = points; }
+}
@@ -18,7 +18,7 @@ public class LineSegment extends Shape {
     }
 
     private LineSegment(LineSegment target) {
-        super(UUID.randomUUID().toString(), target.x, target.y, target.color, "transparent");
+        super(target);
         this.x2 = target.x2;
         this.y2 = target.y2;
         this.setType("line");
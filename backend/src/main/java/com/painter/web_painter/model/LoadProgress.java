@@ -0,0 +1,62 @@
+package com.painter.web_painter.model;
+
+// Status of the latest import into a board; updated by the loading thread and polled by others
+public class LoadProgress {
+    public enum State {
+        RUNNING, DONE, FAILED
+    }
+
+    private final long totalBytes;
+    private volatile State state = State.RUNNING;
+    private volatile long bytesRead;
+    private volatile int shapes;
+    private volatile long points;
+    private volatile String error;
+
+    public LoadProgress(long totalBytes) {
+        this.totalBytes = totalBytes;
+    }
+
+    public void setBytesRead(long bytesRead) {
+        this.bytesRead = bytesRead;
+    }
+
+    // Only the loading thread writes, so plain increments on the volatiles are fine
+    public void shapeRead(int points) {
+        this.shapes++;
+        this.points += points;
+    }
+
+    public void done() {
+        state = State.DONE;
+    }
+
+    public void fail(String error) {
+        this.error = error;
+        state = State.FAILED;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public int getShapes() {
+        return shapes;
+    }
+
+    public long getPoints() {
+        return points;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,97 @@
+package com.painter.web_painter.model;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * Freehand stroke stored as one flat double[] (x0, y0, x1, y1, ...): 16 bytes per point
+ * instead of a map and two boxed Doubles. It is still a List&lt;Point&gt;, so any Jackson
+ * that does not know the custom (de)serializers falls back to the usual [{x,y},...] format.
+ */
+public class PackedPoints extends AbstractList<Point> implements RandomAccess {
+    private double[] coords;
+    private int size;
+
+    public PackedPoints() {
+        this(8);
+    }
+
+    public PackedPoints(int capacity) {
+        this.coords = new double[Math.max(2, capacity * 2)];
+    }
+
+    // Takes ownership of a flat x,y array
+    public static PackedPoints wrap(double[] flat) {
+        if (flat.length % 2 != 0)
+            throw new IllegalArgumentException("Flat point array needs an even length");
+        PackedPoints p = new PackedPoints(0);
+        p.coords = flat;
+        p.size = flat.length / 2;
+        return p;
+    }
+
+    public PackedPoints copy() {
+        return wrap(Arrays.copyOf(coords, size * 2));
+    }
+
+    @Override
+    public Point get(int i) {
+        return new Point(getX(i), getY(i));
+    }
+
+    public double getX(int i) {
+        checkIndex(i);
+        return coords[i * 2];
+    }
+
+    public double getY(int i) {
+        checkIndex(i);
+        return coords[i * 2 + 1];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean add(Point p) {
+        add(p.x(), p.y());
+        return true;
+    }
+
+    public void add(double x, double y) {
+        if (size * 2 + 2 > coords.length)
+            coords = Arrays.copyOf(coords, Math.max(4, coords.length * 2));
+        coords[size * 2] = x;
+        coords[size * 2 + 1] = y;
+        size++;
+        modCount++;
+    }
+
+    public void translate(double dx, double dy) {
+        for (int i = 0; i < size * 2; i += 2) {
+            coords[i] += dx;
+            coords[i + 1] += dy;
+        }
+    }
+
+    // Scales every point by factor away from (originX, originY)
+    public void scale(double factor, double originX, double originY) {
+        for (int i = 0; i < size * 2; i += 2) {
+            coords[i] = originX + (coords[i] - originX) * factor;
+            coords[i + 1] = originY + (coords[i + 1] - originY) * factor;
+        }
+    }
+
+    // Copy of the flat x,y array, trimmed to size
+    public double[] toFlatArray() {
+        return Arrays.copyOf(coords, size * 2);
+    }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= size)
+            throw new IndexOutOfBoundsException("Index " + i + ", size " + size);
+    }
+}
@@ -0,0 +1,67 @@
+package com.painter.web_painter.model;
+
+import java.io.IOException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+/**
+ * Reads points straight into the packed array. Accepts both [{x,y},...] and the flat
+ * [x0,y0,x1,y1,...] form; anything else (e.g. XML's wrapped elements) goes through a tree.
+ */
+public class PackedPointsDeserializer extends StdDeserializer<PackedPoints> {
+
+    public PackedPointsDeserializer() {
+        super(PackedPoints.class);
+    }
+
+    @Override
+    public PackedPoints deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (p.currentToken() != JsonToken.START_ARRAY)
+            return fromTree(ctxt.readTree(p), ctxt);
+        PackedPoints points = new PackedPoints();
+        JsonToken t = p.nextToken();
+        if (t != null && t.isNumeric()) {
+            while (t != JsonToken.END_ARRAY) {
+                double x = p.getDoubleValue();
+                p.nextToken();
+                double y = p.getDoubleValue();
+                points.add(x, y);
+                t = p.nextToken();
+            }
+            return points;
+        }
+        while (t == JsonToken.START_OBJECT) {
+            double x = 0, y = 0;
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String name = p.currentName();
+                p.nextToken();
+                if ("x".equals(name))
+                    x = p.getValueAsDouble();
+                else if ("y".equals(name))
+                    y = p.getValueAsDouble();
+                else
+                    p.skipChildren();
+            }
+            points.add(x, y);
+            t = p.nextToken();
+        }
+        if (t != JsonToken.END_ARRAY)
+            return ctxt.reportInputMismatch(this, "Expected an array of points");
+        return points;
+    }
+
+    // XML arrives as {"points":[{..},{..}]} or {"points":{..}} for a single point
+    private PackedPoints fromTree(JsonNode node, DeserializationContext ctxt) throws IOException {
+        PackedPoints points = new PackedPoints();
+        JsonNode items = node.has("points") ? node.get("points") : node;
+        if (items.isObject() && items.has("x"))
+            points.add(items.path("x").asDouble(), items.path("y").asDouble());
+        else
+            for (JsonNode item : items)
+                points.add(item.path("x").asDouble(), item.path("y").asDouble());
+        return points;
+    }
+}
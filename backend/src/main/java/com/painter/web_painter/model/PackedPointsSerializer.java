@@ -0,0 +1,41 @@
+package com.painter.web_painter.model;
+
+import java.io.IOException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.fasterxml.jackson.dataformat.xml.ser.ToXmlGenerator;
+
+/**
+ * Writes points without creating Point objects. Default output is the usual [{x,y},...];
+ * a writer with attribute {@link #FLAT} = true writes the compact [x0,y0,x1,y1,...] form instead.
+ */
+public class PackedPointsSerializer extends StdSerializer<PackedPoints> {
+    public static final String FLAT = "painter.points.flat";
+
+    public PackedPointsSerializer() {
+        super(PackedPoints.class);
+    }
+
+    @Override
+    public void serialize(PackedPoints points, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        // XML needs the list wrapping Jackson applies to collections, so it keeps the generic path
+        if (gen instanceof ToXmlGenerator) {
+            provider.findValueSerializer(java.util.List.class).serialize(points, gen, provider);
+            return;
+        }
+        int n = points.size();
+        if (Boolean.TRUE.equals(provider.getAttribute(FLAT))) {
+            gen.writeArray(points.toFlatArray(), 0, n * 2);
+            return;
+        }
+        gen.writeStartArray(points, n);
+        for (int i = 0; i < n; i++) {
+            gen.writeStartObject();
+            gen.writeNumberField("x", points.getX(i));
+            gen.writeNumberField("y", points.getY(i));
+            gen.writeEndObject();
+        }
+        gen.writeEndArray();
+    }
+}
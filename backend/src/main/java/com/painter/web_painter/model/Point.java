@@ -0,0 +1,5 @@
+package com.painter.web_painter.model;
+
+// One freehand sample; only used as a view, the stroke itself is stored in PackedPoints
+public record Point(double x, double y) {
+}
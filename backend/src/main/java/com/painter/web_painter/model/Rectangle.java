@@ -18,7 +18,7 @@ public class Rectangle extends Shape {
     }
 
     private Rectangle(Rectangle target) {
-        super(UUID.randomUUID().toString(), target.x, target.y, target.color, target.fillColor);
+        super(target);
         this.width = target.width;
         this.height = target.height;
         this.setType("rectangle");
@@ -3,7 +3,7 @@ package com.painter.web_painter.model;
 import com.fasterxml.jackson.annotation.JsonSubTypes;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
 
-@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, include = JsonTypeInfo.As.PROPERTY, property = "type", visible = true)
+@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, include = JsonTypeInfo.As.EXISTING_PROPERTY, property = "type", visible = true)
 @JsonSubTypes({
         @JsonSubTypes.Type(value = Circle.class, name = "circle"),
         @JsonSubTypes.Type(value = Rectangle.class, name = "rectangle"),
@@ -33,6 +33,17 @@ public abstract class Shape implements Cloneable {
         this.fillColor = fillColor;
     }
 
+    // Prototype copy: keeps the id so undo/redo restores the same shape identity
+    protected Shape(Shape target) {
+        this.type = target.type;
+        this.id = target.id;
+        this.x = target.x;
+        this.y = target.y;
+        this.color = target.color;
+        this.fillColor = target.fillColor;
+        this.strokeWidth = target.strokeWidth;
+    }
+
     public abstract Shape clone();
 
     public String getType() {
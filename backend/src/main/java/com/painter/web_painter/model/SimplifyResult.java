@@ -0,0 +1,9 @@
+package com.painter.web_painter.model;
+
+// Outcome of simplifying freehand strokes: how many strokes changed and the point counts before/after
+public record SimplifyResult(int strokes, long pointsBefore, long pointsAfter) {
+
+    public long getPointsSaved() {
+        return pointsBefore - pointsAfter;
+    }
+}
@@ -18,7 +18,7 @@ public class Square extends Shape {
     }
 
     private Square(Square target) {
-        super(UUID.randomUUID().toString(), target.x, target.y, target.color, target.fillColor);
+        super(target);
         this.sideLength = target.sideLength;
         this.setType("square");
 
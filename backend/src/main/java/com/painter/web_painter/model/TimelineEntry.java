@@ -0,0 +1,5 @@
+package com.painter.web_painter.model;
+
+// One published board version in the history timeline: when it was made and how many shapes it touched
+public record TimelineEntry(long version, long time, int changes) {
+}
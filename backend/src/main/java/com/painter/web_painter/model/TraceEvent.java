@@ -0,0 +1,6 @@
+package com.painter.web_painter.model;
+
+// One recorded API call: wall-clock time (ms), who made it, and the request as sent (body null if none/not kept)
+public record TraceEvent(long t, String board, String client, String method, String path, String contentType,
+        String body) {
+}
@@ -23,7 +23,7 @@ public class Triangle extends Shape {
     }
 
     private Triangle(Triangle target) {
-        super(UUID.randomUUID().toString(), target.x, target.y, target.color, target.fillColor);
+        super(target);
         this.x2 = target.x2;
         this.y2 = target.y2;
         this.x3 = target.x3;
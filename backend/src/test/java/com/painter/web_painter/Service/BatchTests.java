@@ -0,0 +1,83 @@
+package com.painter.web_painter.Service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import com.painter.web_painter.model.Rectangle;
+import com.painter.web_painter.model.Shape;
+
+// Batches publish once, undo as one step and leave nothing behind when a command fails
+class BatchTests {
+
+    @TempDir
+    Path dir;
+
+    private final ShapeFactory factory = new ShapeFactory();
+    private final BoardSession session = BoardSession.of("batch", "c");
+
+    private Shape rect(double x) {
+        return factory.createShape("rectangle", Map.of("x1", x, "y1", 0, "x2", x + 10, "y2", 10));
+    }
+
+    @Test
+    void batchIsOneUndoStepAndOnePublish() {
+        PaintService paint = new PaintService(new BoardRegistry(dir.toString(), 60_000, 1 << 24), new DrawingIO());
+        paint.addShape(session, rect(0));
+        BoardSnapshot before = paint.getSnapshot(session);
+
+        paint.batch(session, () -> {
+            for (int i = 1; i <= 50; i++)
+                paint.addShape(session, rect(i * 20));
+            // nothing is visible to readers until the batch ends
+            assertSame(before, paint.getSnapshot(session));
+            paint.selectShapeAt(session, 5, 5);
+            paint.startMove(session);
+            paint.moveSelected(session, 0, 100);
+            paint.endMove(session);
+            paint.updateColor(session, "#00ff00");
+        });
+        List<Shape> after = paint.getShapes(session);
+        assertEquals(51, after.size());
+        assertEquals(100, ((Rectangle) after.get(0)).getY());
+
+        paint.undo(session);
+        assertEquals(json(before.shapes()), json(paint.getShapes(session)));
+        paint.redo(session);
+        assertEquals(json(after), json(paint.getShapes(session)));
+    }
+
+    @Test
+    void failedBatchLeavesBoardAndHistoryUntouched() {
+        PaintService paint = new PaintService(new BoardRegistry(dir.toString(), 60_000, 1 << 24), new DrawingIO());
+        paint.addShape(session, rect(0));
+        List<Shape> before = paint.getShapes(session);
+
+        assertThrows(IllegalArgumentException.class, () -> paint.batch(session, () -> {
+            paint.addShape(session, rect(50));
+            paint.selectShapeAt(session, 5, 5);
+            paint.deleteSelected(session);
+            paint.scaleSelection(session, -1);
+        }));
+        assertEquals(json(before), json(paint.getShapes(session)));
+        assertNotEquals(null, paint.getSelectedShape(session));
+
+        // the last recorded step is still the single add from before the batch
+        paint.undo(session);
+        assertTrue(paint.getShapes(session).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> paint.batch(session, () -> paint.undo(session)));
+    }
+
+    // Shapes are materialized afresh on every read, so lists are compared by content
+    private static String json(List<Shape> shapes) {
+        return new String(new ShapeJsonCache().toJson(shapes), StandardCharsets.UTF_8);
+    }
+}
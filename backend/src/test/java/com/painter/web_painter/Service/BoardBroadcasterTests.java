@@ -0,0 +1,189 @@
+package com.painter.web_painter.Service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.painter.web_painter.model.ChangeSet;
+import com.painter.web_painter.model.Shape;
+
+// Every viewer converges on the board's latest state; a viewer that stops reading holds up nobody
+class BoardBroadcasterTests {
+
+    @TempDir
+    Path dir;
+
+    private final ShapeFactory factory = new ShapeFactory();
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final BoardSession session = BoardSession.of("watched", "c");
+    private BoardBroadcaster broadcaster;
+
+    private static class Recorder implements BoardBroadcaster.Viewer {
+        final List<String> messages = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void send(String json) {
+            messages.add(json);
+        }
+    }
+
+    @AfterEach
+    void stop() {
+        if (broadcaster != null)
+            broadcaster.shutdown();
+    }
+
+    private PaintService paint() {
+        return new PaintService(new BoardRegistry(dir.toString(), 60_000, 1 << 24), new DrawingIO());
+    }
+
+    private void addRect(PaintService paint, int x) {
+        paint.addShape(session, factory.createShape("rectangle", Map.of("x1", x, "y1", 0, "x2", x + 10, "y2", 10)));
+    }
+
+    private long lastVersion(Recorder r) throws IOException {
+        return r.messages.isEmpty() ? -1 : changes(r.messages.get(r.messages.size() - 1)).version();
+    }
+
+    private ChangeSet changes(String json) throws IOException {
+        return mapper.readValue(json, ChangeSet.class);
+    }
+
+    private void tickUntil(BooleanSupplier done) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!done.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "viewers did not catch up");
+            broadcaster.tick();
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void manyViewersConvergeOnTheLatestState() throws Exception {
+        PaintService paint = paint();
+        broadcaster = new BoardBroadcaster(paint, 1000);
+        List<Recorder> viewers = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            Recorder r = new Recorder();
+            assertTrue(broadcaster.subscribe("watched", r));
+            viewers.add(r);
+        }
+        for (int i = 0; i < 40; i++) {
+            addRect(paint, i * 20);
+            if (i % 10 == 0)
+                paint.undo(session);
+            broadcaster.tick();
+        }
+        long version = paint.getVersion(session);
+        tickUntil(() -> viewers.stream().allMatch(r -> {
+            try {
+                return lastVersion(r) == version;
+            } catch (IOException e) {
+                return false;
+            }
+        }));
+
+        // Applying the messages in order rebuilds the board: a full state first, then deltas
+        for (Recorder r : List.of(viewers.get(0), viewers.get(299))) {
+            assertTrue(changes(r.messages.get(0)).full());
+            ShapeStore replica = new ShapeStore();
+            for (String json : r.messages)
+                BoardJournal.apply(replica, changes(json));
+            assertEquals(ids(paint.getShapes(session)), ids(replica.list()));
+        }
+        assertEquals(300, broadcaster.getViewerCount("watched"));
+        for (Recorder r : viewers)
+            broadcaster.unsubscribe("watched", r);
+        assertEquals(0, broadcaster.getViewerCount("watched"));
+    }
+
+    @Test
+    void stalledViewerIsSkippedAndThenGetsOneCoalescedDelta() throws Exception {
+        PaintService paint = paint();
+        broadcaster = new BoardBroadcaster(paint, 2);
+        CountDownLatch stalled = new CountDownLatch(1);
+        Recorder slow = new Recorder() {
+            @Override
+            public void send(String json) {
+                super.send(json);
+                try {
+                    stalled.await(); // a viewer that stopped reading
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        Recorder fast = new Recorder();
+        broadcaster.subscribe("watched", slow);
+        broadcaster.subscribe("watched", fast);
+        assertFalse(broadcaster.subscribe("watched", new Recorder()), "over max-viewers");
+
+        tickUntil(() -> !slow.messages.isEmpty() && !fast.messages.isEmpty());
+        for (int i = 0; i < 20; i++) {
+            addRect(paint, i * 20);
+            broadcaster.tick();
+        }
+        long version = paint.getVersion(session);
+        tickUntil(() -> {
+            try {
+                return lastVersion(fast) == version;
+            } catch (IOException e) {
+                return false;
+            }
+        });
+        assertEquals(1, slow.messages.size());
+
+        stalled.countDown();
+        tickUntil(() -> slow.messages.size() == 2);
+        ChangeSet delta = changes(slow.messages.get(1));
+        assertEquals(version, delta.version());
+        assertEquals(20, delta.upserts().size());
+    }
+
+    // Viewers are served what was published while a writer sits on the board lock
+    @Test
+    void viewersAreServedWhileTheWriterHoldsTheLock() throws Exception {
+        BoardRegistry boards = new BoardRegistry(dir.toString(), 60_000, 1 << 24);
+        PaintService paint = new PaintService(boards, new DrawingIO());
+        broadcaster = new BoardBroadcaster(paint, 10);
+        addRect(paint, 0);
+        Recorder early = new Recorder();
+        broadcaster.subscribe("watched", early);
+        tickUntil(() -> !early.messages.isEmpty());
+        addRect(paint, 20);
+        long version = paint.getVersion(session);
+
+        Recorder late = new Recorder();
+        broadcaster.subscribe("watched", late);
+        Board board = boards.get("watched");
+        board.lock();
+        try {
+            tickUntil(() -> early.messages.size() == 2 && !late.messages.isEmpty());
+        } finally {
+            board.unlock();
+        }
+        ChangeSet delta = changes(early.messages.get(1)), resync = changes(late.messages.get(0));
+        assertFalse(delta.full());
+        assertEquals(1, delta.upserts().size());
+        assertTrue(resync.full());
+        assertEquals(2, resync.upserts().size());
+        assertEquals(version, delta.version());
+        assertEquals(version, resync.version());
+    }
+
+    private static List<String> ids(List<Shape> shapes) {
+        return shapes.stream().map(Shape::getId).toList();
+    }
+}
@@ -0,0 +1,157 @@
+package com.painter.web_painter.Service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import com.painter.web_painter.model.Bounds;
+import com.painter.web_painter.model.Shape;
+
+// Hammers one board with parallel writers (different clients) and lock-free readers
+class BoardConcurrencyTests {
+
+    private static final int WRITERS = 6;
+    private static final int READERS = 4;
+    private static final int OPS_PER_WRITER = 2_000;
+
+    @TempDir
+    Path dir;
+
+    private final ShapeFactory factory = new ShapeFactory();
+
+    private Shape randomShape() {
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        double x = r.nextDouble(0, 1000), y = r.nextDouble(0, 1000);
+        if (r.nextBoolean())
+            return factory.createShape("rectangle",
+                    Map.of("color", "#000", "x1", x, "y1", y, "x2", x + 40, "y2", y + 30));
+        return factory.createShape("freehand", Map.of("color", "#000",
+                "points", List.of(Map.of("x", x, "y", y), Map.of("x", x + 5, "y", y + 7), Map.of("x", x + 9, "y", y))));
+    }
+
+    // Viewport, delta and selection reads are answered from what was last published, even while a writer
+    // holds the board lock
+    @Test
+    void readsNeverWaitForTheWriter() throws Exception {
+        BoardRegistry boards = new BoardRegistry(dir.toString(), 60_000, 1 << 24);
+        PaintService paint = new PaintService(boards, new DrawingIO());
+        BoardSession session = BoardSession.of("busy", "client");
+        paint.addShape(session, randomShape());
+        long seen = paint.getVersion(session);
+        Shape last = randomShape();
+        paint.addShape(session, last);
+
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        Board board = boards.get("busy");
+        board.lock();
+        try {
+            Future<?> reads = pool.submit(() -> {
+                assertEquals(2, paint.getShapesIn(session, new Bounds(-100, -100, 1100, 1100), 0.5).shapes().size());
+                assertEquals(List.of(last.getId()),
+                        paint.getChangesSince(session, seen).upserts().stream().map(u -> u.shape().getId()).toList());
+                assertEquals(last.getId(), paint.getSelectedShape(session).getId());
+                assertEquals(List.of(last.getId()), paint.getSelection(session));
+            });
+            reads.get(10, TimeUnit.SECONDS);
+        } finally {
+            board.unlock();
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void parallelWritersAndReadersNeverSeeTornState() throws Exception {
+        PaintService paint = new PaintService(new BoardRegistry(dir.toString(), 60_000, 1 << 24), new DrawingIO());
+        ExecutorService pool = Executors.newFixedThreadPool(WRITERS + READERS);
+        ConcurrentLinkedQueue<Throwable> errors = new ConcurrentLinkedQueue<>();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        CountDownLatch writersDone = new CountDownLatch(WRITERS);
+
+        for (int w = 0; w < WRITERS; w++) {
+            BoardSession session = BoardSession.of("stress", "client-" + w);
+            pool.submit(() -> {
+                try {
+                    ThreadLocalRandom r = ThreadLocalRandom.current();
+                    for (int i = 0; i < OPS_PER_WRITER; i++) {
+                        switch (r.nextInt(9)) {
+                            case 0, 1 -> paint.addShape(session, randomShape());
+                            case 2 -> paint.selectShapeAt(session, r.nextDouble(0, 1000), r.nextDouble(0, 1000));
+                            case 3 -> {
+                                paint.startMove(session);
+                                paint.moveSelected(session, r.nextDouble(-5, 5), r.nextDouble(-5, 5));
+                                paint.endMove(session);
+                            }
+                            case 4 -> paint.updateColor(session, "#" + Integer.toHexString(r.nextInt(0x1000000)));
+                            case 5 -> paint.resizeSelected(session, "bottom-right", 2, 2);
+                            case 6 -> paint.undo(session);
+                            case 7 -> paint.redo(session);
+                            default -> {
+                                paint.copySelected(session);
+                                paint.pasteSelected(session, r.nextDouble(0, 1000), r.nextDouble(0, 1000));
+                            }
+                        }
+                    }
+                } catch (Throwable t) {
+                    errors.add(t);
+                } finally {
+                    writersDone.countDown();
+                }
+            });
+        }
+
+        BoardSession reader = BoardSession.of("stress", "reader");
+        for (int rd = 0; rd < READERS; rd++) {
+            pool.submit(() -> {
+                try {
+                    long lastVersion = Long.MIN_VALUE;
+                    while (writing.get()) {
+                        BoardSnapshot snap = paint.getSnapshot(reader);
+                        assertTrue(snap.version() >= lastVersion, "versions must not go backwards");
+                        lastVersion = snap.version();
+                        Set<String> ids = new HashSet<>();
+                        for (Shape s : snap.shapes())
+                            assertTrue(ids.add(s.getId()), "duplicate id in snapshot");
+                        ByteArrayOutputStream out = new ByteArrayOutputStream();
+                        paint.save(snap, out, DrawingFormat.JSON, false, false);
+                        assertTrue(out.toString(StandardCharsets.UTF_8).startsWith("["));
+                    }
+                } catch (Throwable t) {
+                    errors.add(t);
+                }
+            });
+        }
+
+        assertTrue(writersDone.await(2, TimeUnit.MINUTES));
+        writing.set(false);
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(1, TimeUnit.MINUTES));
+
+        if (!errors.isEmpty())
+            throw new AssertionError("concurrent access failed", errors.peek());
+
+        // The published snapshot must match the store once everything has settled
+        BoardSnapshot last = paint.getSnapshot(reader);
+        assertEquals(paint.getChangesSince(reader, 0).upserts().size(), last.shapes().size());
+        List<String> ids = new ArrayList<>();
+        for (Shape s : last.shapes())
+            ids.add(s.getId());
+        assertEquals(ids.size(), new HashSet<>(ids).size());
+    }
+}
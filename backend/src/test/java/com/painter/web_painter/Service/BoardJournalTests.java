@@ -0,0 +1,206 @@
+package com.painter.web_painter.Service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+import com.painter.web_painter.model.Shape;
+
+/**
+ * Boards are rebuilt from the journal by a fresh registry, as after a crash (nothing is closed or
+ * passivated first), including across many compactions and with a torn last record; a journal that
+ * can't be read at all is moved aside rather than overwritten, and a change that can't be journaled
+ * is never published.
+ */
+class BoardJournalTests {
+    private final ShapeFactory factory = new ShapeFactory();
+    private final DrawingIO io = new DrawingIO();
+
+    @TempDir
+    Path dir;
+
+    private PaintService open(long segmentBytes) {
+        return new PaintService(new BoardRegistry(dir.toString(), 60_000, 1 << 24, true, segmentBytes), io);
+    }
+
+    @Test
+    void replaysEveryKindOfChange() {
+        PaintService paint = open(1 << 20);
+        BoardSession s = BoardSession.of("journal", "a");
+        paint.addShape(s, rect(0, 0));
+        paint.addShape(s, rect(50, 50));
+        paint.addShape(s, factory.createShape("freehand",
+                Map.of("points", List.of(Map.of("x", 1, "y", 1), Map.of("x", 9, "y", 4)), "color", "#000")));
+        paint.selectShapeAt(s, 5, 5);
+        paint.bringToFront(s);
+        paint.updateColor(s, "#ff0000");
+        paint.startMove(s);
+        paint.moveSelected(s, 3, 4);
+        paint.endMove(s);
+        paint.copySelected(s);
+        paint.pasteSelected(s, 200, 200);
+        paint.selectShapeAt(s, 55, 55);
+        paint.deleteSelected(s);
+        paint.undo(s);
+        paint.undo(s);
+        paint.redo(s);
+
+        assertSameBoard(paint, open(1 << 20), s);
+    }
+
+    @Test
+    void survivesCompactionAndClear() {
+        PaintService paint = open(4096); // tiny segments force frequent compaction
+        BoardSession s = BoardSession.of("compact", "a");
+        Random rnd = new Random(7);
+        for (int i = 0; i < 1_800; i++) {
+            if (i % 500 == 499) {
+                paint.clearBoard(s);
+                continue;
+            }
+            paint.addShape(s, rect(rnd.nextInt(1000), rnd.nextInt(1000)));
+            if (i % 3 == 0) {
+                paint.selectShapeAt(s, rnd.nextInt(1000), rnd.nextInt(1000));
+                paint.sendToBack(s);
+            }
+        }
+        assertTrue(paint.getShapes(s).size() > 0);
+        assertSameBoard(paint, open(4096), s);
+    }
+
+    @Test
+    void ignoresTornTail() throws IOException {
+        PaintService paint = open(1 << 20);
+        BoardSession s = BoardSession.of("torn", "a");
+        paint.addShape(s, rect(0, 0));
+        paint.addShape(s, rect(10, 10));
+        List<Shape> before = paint.getShapes(s);
+        paint.addShape(s, rect(20, 20));
+
+        // cut the last record in half: length and crc survive, the payload does not
+        Path file = dir.resolve("torn.journal");
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer all = ByteBuffer.allocate((int) ch.size());
+            ch.read(all, 0);
+            int pos = 4, last = -1;
+            while (all.getInt(pos) != 0) {
+                last = pos;
+                pos += 8 + all.getInt(pos);
+            }
+            ch.write(ByteBuffer.allocate(pos - last - 12), last + 12);
+        }
+
+        PaintService reopened = open(1 << 20);
+        assertEquals(ids(before), ids(reopened.getShapes(s)));
+        reopened.addShape(s, rect(30, 30)); // appending after the repair works and replays too
+        assertSameBoard(reopened, open(1 << 20), s);
+    }
+
+    @Test
+    void setsAsideAJournalItCantRead() throws IOException {
+        PaintService paint = open(1 << 20);
+        BoardSession s = BoardSession.of("future", "a");
+        paint.addShape(s, rect(0, 0));
+        Path file = dir.resolve("future.journal");
+        byte[] original = Files.readAllBytes(file);
+        byte[] newer = original.clone();
+        newer[3] = 2; // a journal format this build doesn't know
+        Files.write(file, newer);
+
+        PaintService reopened = open(1 << 20);
+        assertEquals(0, reopened.getShapes(s).size());
+        try (Stream<Path> files = Files.list(dir)) {
+            List<Path> aside = files.filter(f -> f.getFileName().toString().startsWith("future.journal.corrupt-"))
+                    .toList();
+            assertEquals(1, aside.size());
+            assertArrayEquals(newer, Files.readAllBytes(aside.get(0))); // kept untouched for inspection
+        }
+        reopened.addShape(s, rect(30, 30)); // the fresh journal works
+        assertSameBoard(reopened, open(1 << 20), s);
+    }
+
+    @Test
+    void publishesNothingItCouldNotJournal() throws IOException {
+        BoardRegistry registry = new BoardRegistry(dir.toString(), 60_000, 1 << 24, true, 1 << 20);
+        PaintService paint = new PaintService(registry, io);
+        BoardSession s = BoardSession.of("failing", "a");
+        paint.addShape(s, rect(0, 0));
+        paint.addShape(s, rect(50, 50));
+        paint.selectShapeAt(s, 5, 5);
+        List<Shape> before = paint.getShapes(s);
+        Board board = registry.get("failing");
+        long version = board.snapshot().version();
+        board.getJournal().close(); // every append fails from here on
+
+        assertThrows(UncheckedIOException.class, () -> paint.updateColor(s, "#ff0000"));
+        assertThrows(UncheckedIOException.class, () -> paint.addShape(s, rect(100, 100)));
+        assertEquals(version, board.snapshot().version());
+        assertEquals(ids(before), ids(paint.getShapes(s)));
+        assertEquals(2, board.getShapes().size());
+        assertEquals("#000", board.getShapes().get(before.get(0).getId()).getColor());
+    }
+
+    @Test
+    void failedClearOrLoadLeavesEverythingAsPublished() throws IOException {
+        BoardRegistry registry = new BoardRegistry(dir.toString(), 60_000, 1 << 24, true, 1 << 20);
+        PaintService paint = new PaintService(registry, io);
+        BoardSession s = BoardSession.of("full", "a");
+        for (int i = 0; i < 3; i++)
+            paint.addShape(s, rect(i * 50, 0));
+        List<Shape> before = paint.getShapes(s);
+        Board board = registry.get("full");
+        int steps = board.getHistory().getUndoDepth();
+        board.getJournal().close(); // every append fails from here on
+
+        // both publish a full delta, which lists no deletions
+        assertThrows(UncheckedIOException.class, () -> paint.clearBoard(s));
+        assertUnchanged(board, before, steps);
+        ByteArrayOutputStream drawing = new ByteArrayOutputStream();
+        io.write(List.of(rect(500, 500)), drawing, DrawingFormat.JSON, false);
+        MockMultipartFile upload = new MockMultipartFile("file", "drawing.json", "application/json",
+                drawing.toByteArray());
+        assertThrows(UncheckedIOException.class, () -> paint.loadFromFile(s, upload));
+        assertUnchanged(board, before, steps);
+        assertSameBoard(paint, open(1 << 20), s); // and the journal still has the same board
+    }
+
+    private static void assertUnchanged(Board board, List<Shape> published, int undoSteps) {
+        assertEquals(ids(published), ids(board.snapshot().shapes()));
+        assertEquals(ids(published), ids(board.getShapes().list()));
+        assertEquals(undoSteps, board.getHistory().getUndoDepth());
+    }
+
+    private Shape rect(double x, double y) {
+        return factory.createShape("rectangle", Map.of("x1", x, "y1", y, "x2", x + 20, "y2", y + 20,
+                "color", "#000"));
+    }
+
+    private void assertSameBoard(PaintService expected, PaintService actual, BoardSession s) {
+        List<Shape> a = expected.getShapes(s), b = actual.getShapes(s);
+        assertEquals(ids(a), ids(b));
+        for (int i = 0; i < a.size(); i++) {
+            assertEquals(a.get(i).getX(), b.get(i).getX());
+            assertEquals(a.get(i).getY(), b.get(i).getY());
+            assertEquals(a.get(i).getColor(), b.get(i).getColor());
+        }
+    }
+
+    private static List<String> ids(List<Shape> shapes) {
+        return shapes.stream().map(Shape::getId).toList();
+    }
+}
@@ -0,0 +1,61 @@
+package com.painter.web_painter.Service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+// Per-board gauges follow edits, undo and clearing; saves are timed per format
+class BoardMetricsTests {
+
+    @TempDir
+    Path dir;
+
+    private final ShapeFactory factory = new ShapeFactory();
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+
+    private double gauge(String name, String board) {
+        return meters.get(name).tag("board", board).gauge().value();
+    }
+
+    @Test
+    void gaugesTrackBoardsAndHistory() throws Exception {
+        BoardRegistry boards = new BoardRegistry(dir.toString(), 60_000, 1 << 24);
+        PaintService paint = new PaintService(boards, new DrawingIO(), meters);
+        BoardMetrics metrics = new BoardMetrics(boards);
+        metrics.bindTo(meters);
+
+        BoardSession session = BoardSession.of("metrics", "c");
+        paint.addShape(session, factory.createShape("rectangle", Map.of("x1", 0, "y1", 0, "x2", 10, "y2", 10)));
+        paint.addShape(session, factory.createShape("freehand", Map.of("points",
+                List.of(Map.of("x", 0, "y", 0), Map.of("x", 5, "y", 9), Map.of("x", 10, "y", 0)))));
+        paint.undo(session);
+        metrics.refresh();
+
+        assertEquals(1, gauge("painter.board.shapes", "metrics"));
+        assertEquals(0, gauge("painter.board.points", "metrics"));
+        assertEquals(1, gauge("painter.history.undo.depth", "metrics"));
+        assertEquals(1, gauge("painter.history.redo.depth", "metrics"));
+        assertTrue(gauge("painter.history.retained", "metrics") > 0);
+
+        paint.redo(session);
+        metrics.refresh();
+        assertEquals(3, gauge("painter.board.points", "metrics"));
+
+        paint.save(paint.getSnapshot(session), OutputStream.nullOutputStream(), DrawingFormat.JSON, false, true);
+        assertEquals(1, meters.get("painter.save").tag("format", "json").tag("outcome", "success").timer().count());
+
+        paint.clearBoard(session);
+        metrics.refresh();
+        assertEquals(0, gauge("painter.board.shapes", "metrics"));
+        assertEquals(0, gauge("painter.board.points", "metrics"));
+        assertNull(meters.find("painter.board.shapes").tag("board", "other").gauge());
+    }
+}
@@ -0,0 +1,106 @@
+package com.painter.web_painter.Service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import com.painter.web_painter.model.Shape;
+
+// Selections are per client and per board, idle boards are unloaded and reloaded intact, ids are checked
+// where they come in, and a board only remembers its recent clients
+class BoardSessionTests {
+
+    @TempDir
+    Path dir;
+
+    private final ShapeFactory factory = new ShapeFactory();
+
+    @Test
+    void selectionAndClipboardArePerClient() {
+        PaintService paint = new PaintService(new BoardRegistry(dir.toString(), 60_000, 1 << 24), new DrawingIO());
+        BoardSession alice = BoardSession.of("shared", "alice"), bob = BoardSession.of("shared", "bob");
+        BoardSession elsewhere = BoardSession.of("other", "alice");
+        paint.addShape(alice, rect(0));
+        paint.addShape(bob, rect(50));
+        paint.addShape(elsewhere, rect(100));
+
+        paint.selectShapeAt(alice, 5, 5);
+        paint.selectShapeAt(bob, 55, 5);
+        assertEquals(0, paint.getSelectedShape(alice).getX());
+        assertEquals(50, paint.getSelectedShape(bob).getX());
+        assertEquals(100, paint.getSelectedShape(elsewhere).getX()); // same client, other board
+
+        paint.copySelected(alice);
+        paint.pasteSelected(bob, 300, 0); // bob copied nothing
+        assertEquals(2, paint.getShapes(bob).size());
+        paint.pasteSelected(alice, 300, 0);
+        assertEquals(3, paint.getShapes(alice).size());
+        assertEquals(300, paint.getSelectedShape(alice).getX());
+        assertEquals(50, paint.getSelectedShape(bob).getX());
+        paint.deleteSelected(bob);
+        assertEquals(300, paint.getSelectedShape(alice).getX());
+        assertEquals(1, paint.getShapes(elsewhere).size());
+    }
+
+    @Test
+    void idleBoardsAreUnloadedAndComeBack() {
+        for (boolean journaled : new boolean[] { false, true }) {
+            Path boards = dir.resolve("journaled-" + journaled);
+            BoardRegistry registry = new BoardRegistry(boards.toString(), -1_000, 1 << 24, journaled, 1 << 20);
+            PaintService paint = new PaintService(registry, new DrawingIO());
+            BoardSession s = BoardSession.of("idle", "c");
+            paint.addShape(s, rect(0));
+            paint.addShape(s, rect(50));
+            List<String> before = paint.getShapes(s).stream().map(Shape::getId).toList();
+            Board resident = registry.get("idle");
+
+            registry.passivateIdle(); // everything counts as idle with a negative ttl
+            assertTrue(registry.getActiveBoards().isEmpty(), "journaled=" + journaled);
+            assertTrue(resident.isRetired());
+            assertEquals(before, paint.getShapes(s).stream().map(Shape::getId).toList());
+            assertNotSame(resident, registry.get("idle"));
+            paint.addShape(s, rect(100)); // the reloaded board takes writes as usual
+            assertEquals(3, paint.getShapes(s).size());
+            registry.shutdown();
+        }
+    }
+
+    @Test
+    void refusesIdsThatArentNames() {
+        assertEquals(new BoardSession(BoardSession.DEFAULT, BoardSession.DEFAULT), BoardSession.of(null, " "));
+        assertEquals(new BoardSession("team-1", "0b6f_c3"), BoardSession.of("team-1", "0b6f_c3"));
+        for (String bad : new String[] { "../etc", "a b", "x".repeat(65), "café", "a\nb" }) {
+            assertThrows(IllegalArgumentException.class, () -> BoardSession.of(bad, null), bad);
+            assertThrows(IllegalArgumentException.class, () -> BoardSession.of(null, bad), bad);
+        }
+    }
+
+    @Test
+    void forgetsTheLeastRecentClients() {
+        Board board = new BoardRegistry(dir.toString(), 60_000, 1 << 24).get("clients");
+        board.lock();
+        try {
+            Board.ClientState first = board.client("first"), active = board.client("active");
+            for (int i = 0; i < Board.MAX_CLIENTS; i++) {
+                board.client("other-" + i);
+                if (i % 100 == 0)
+                    board.client("active");
+            }
+            assertSame(active, board.client("active"));
+            assertNotSame(first, board.client("first")); // dropped, comes back with a fresh state
+        } finally {
+            board.unlock();
+        }
+    }
+
+    private Shape rect(double x) {
+        return factory.createShape("rectangle", Map.of("x1", x, "y1", 0, "x2", x + 10, "y2", 10));
+    }
+}
@@ -0,0 +1,103 @@
+package com.painter.web_painter.Service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import com.painter.web_painter.model.Bounds;
+import com.painter.web_painter.model.Shape;
+import com.painter.web_painter.model.TimelineEntry;
+
+// Any kept version materializes exactly as it was published, from heap or spilled keyframes
+class BoardTimelineTests {
+
+    @TempDir
+    Path dir;
+
+    private final ShapeFactory factory = new ShapeFactory();
+    private final DrawingIO io = new DrawingIO();
+    private final BoardSession session = BoardSession.of("timeline", "c");
+
+    @Test
+    void everyVersionMaterializesAsPublished() throws IOException {
+        PaintService paint = new PaintService(
+                new BoardRegistry(dir.toString(), 60_000, 1 << 24, false, 0, 50, 8, 1 << 26, ""), io);
+        List<BoardSnapshot> published = new ArrayList<>();
+        published.add(paint.getSnapshot(session));
+        Random rnd = new Random(3);
+        for (int i = 0; i < 120; i++) {
+            int x = rnd.nextInt(500), y = rnd.nextInt(500);
+            switch (i % 6) {
+                case 0, 1 -> paint.addShape(session,
+                        factory.createShape("rectangle", Map.of("x1", x, "y1", y, "x2", x + 20, "y2", y + 20)));
+                case 2 -> {
+                    paint.selectShapeAt(session, x + 10, y + 10);
+                    paint.selectInRect(session, new Bounds(0, 0, 250, 250));
+                    paint.moveSelection(session, 5, 5);
+                }
+                case 3 -> paint.undo(session);
+                case 4 -> {
+                    paint.selectInRect(session, new Bounds(250, 250, 600, 600));
+                    paint.deleteSelection(session);
+                }
+                default -> paint.clearBoard(session);
+            }
+            if (published.get(published.size() - 1).version() != paint.getVersion(session))
+                published.add(paint.getSnapshot(session));
+        }
+
+        List<TimelineEntry> timeline = paint.getTimeline(session);
+        assertEquals(published.size(), timeline.size());
+        for (int i = published.size() - 1; i >= 0; i--) {
+            assertEquals(published.get(i).version(), timeline.get(i).version());
+            assertEquals(json(published.get(i).shapes()), json(paint.getShapesAt(session, published.get(i).version())));
+        }
+        assertNull(paint.getShapesAt(session, published.get(0).version() - 1));
+    }
+
+    @Test
+    void spilledKeyframesStayOutOfHeapAndAreTrimmed() throws IOException {
+        Path spill = dir.resolve("keyframes");
+        Board board = new Board("spill", 1 << 24, new BoardTimeline.Settings(4, 50_000, spill, Runnable::run));
+        List<List<Shape>> published = new ArrayList<>();
+        List<Long> versions = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            board.getShapes().add(factory.createShape("circle", Map.of("x1", i, "y1", i, "x2", i + 5, "y2", i)));
+            board.publish();
+            published.add(board.snapshot().shapes());
+            versions.add(board.snapshot().version());
+        }
+        BoardTimeline timeline = board.getTimeline();
+        assertTrue(timeline.size() < 400, "oldest versions are trimmed");
+        assertTrue(timeline.getRetainedBytes() <= 50_000);
+        assertNull(timeline.shapesAt(versions.get(0)));
+        for (int i = 400 - timeline.size() + 1; i < 400; i++)
+            assertEquals(json(published.get(i)), json(timeline.shapesAt(versions.get(i)))); // read back from disk
+        // one file per kept keyframe, the trimmed ones are gone
+        try (Stream<Path> files = Files.list(spill.resolve("spill"))) {
+            assertEquals((timeline.size() + 3) / 4, files.count(), 1);
+        }
+
+        board.retire();
+        assertFalse(Files.exists(spill.resolve("spill")));
+    }
+
+    private String json(List<Shape> shapes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        io.write(shapes, out, DrawingFormat.JSON, false);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,79 @@
+package com.painter.web_painter.Service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import com.painter.web_painter.model.ChangeSet;
+import com.painter.web_painter.model.Shape;
+
+// Deltas stay deltas on boards of any size; only old tombstones and a clear force a full resync
+class ChangeLogTests {
+    private final ShapeFactory factory = new ShapeFactory();
+
+    @Test
+    void largeBoardsStillGetDeltas() {
+        ShapeStore store = new ShapeStore();
+        Shape first = rect(0);
+        store.add(first);
+        for (int i = 1; i < 150_000; i++)
+            store.add(rect(i));
+        long seen = store.getVersion();
+        Shape moved = first.clone();
+        moved.setX(-50);
+        store.replace(moved);
+
+        ChangeSet delta = store.changesSince(seen);
+        assertFalse(delta.full());
+        assertEquals(1, delta.upserts().size());
+        assertEquals(first.getId(), delta.upserts().get(0).shape().getId());
+        assertFalse(store.changesSince(seen - 149_999).full()); // reaches back to the first add
+    }
+
+    @Test
+    void clearingMovesTheHorizon() {
+        ShapeStore store = new ShapeStore();
+        store.add(rect(0));
+        long seen = store.getVersion();
+        store.clear();
+        long cleared = store.getVersion();
+        store.add(rect(1));
+
+        assertTrue(store.changesSince(seen).full());
+        ChangeSet delta = store.changesSince(cleared);
+        assertFalse(delta.full());
+        assertEquals(List.of(), delta.deleted());
+        assertEquals(1, delta.upserts().size());
+    }
+
+    // Compacting the log makes new arrays; lists published before keep reading the old ones
+    @Test
+    void publishedListsKeepTheirDeltasThroughCompaction() {
+        ShapeStore store = new ShapeStore();
+        Shape moving = rect(0);
+        store.add(moving);
+        store.add(rect(1));
+        long seen = store.getVersion();
+        ShapeList early = store.list();
+        for (int i = 1; i <= 1000; i++) {
+            moving = moving.clone();
+            moving.setX(i);
+            store.replace(moving);
+        }
+        ShapeList late = store.list();
+
+        assertEquals(List.of(), early.changesSince(seen).upserts());
+        assertEquals(1, early.changesSince(seen - 1).upserts().size());
+        ChangeSet delta = late.changesSince(seen);
+        assertEquals(1, delta.upserts().size());
+        assertEquals(1000, delta.upserts().get(0).shape().getX());
+        assertEquals(2, late.changesSince(seen - 2).upserts().size());
+    }
+
+    private Shape rect(int i) {
+        return factory.createShape("rectangle", Map.of("x1", i, "y1", 0, "x2", i + 10, "y2", 10));
+    }
+}
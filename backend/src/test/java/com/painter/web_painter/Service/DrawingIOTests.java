@@ -0,0 +1,170 @@
+package com.painter.web_painter.Service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import org.junit.jupiter.api.Test;
+import com.painter.web_painter.model.*;
+
+// Save/load round trips for every loadable format, the SVG export and the binary format's size advantage
+class DrawingIOTests {
+    private final DrawingIO io = new DrawingIO();
+
+    @Test
+    void everySubtypeRoundTripsExactly() throws IOException {
+        List<Shape> shapes = new ArrayList<>();
+        shapes.add(new Rectangle(1.5, 2.25, 30, 40, "#ff0000", "transparent"));
+        shapes.add(new Square(-3, 4, 12.125, "#00ff00", "#00ff00"));
+        shapes.add(new Circle(10, 20, Math.PI, "#0000ff", "transparent"));
+        shapes.add(new Ellipse(5, 6, 7.1, 8.2, "#ff0000", "transparent"));
+        shapes.add(new Triangle(0, 0, 10, 0, 5, 1e-9, "#123456", "#abcdef"));
+        shapes.add(new LineSegment(1, 1, 100.5, -7, "#ff0000"));
+        PackedPoints fixed = new PackedPoints();
+        fixed.add(1, 2);
+        fixed.add(1.5, -2.25);
+        fixed.add(1000.125, 0);
+        shapes.add(new FreehandShape(fixed, "#ff0000", "transparent"));
+        PackedPoints raw = new PackedPoints();
+        raw.add(0.1, 1.0 / 3);
+        raw.add(-0.0, 987654321.0625); // just inside the coordinate limit
+        shapes.add(new FreehandShape(raw, "#ff0000", "transparent"));
+        shapes.add(new FreehandShape(new PackedPoints(), "#ff0000", "transparent"));
+        for (int i = 0; i < shapes.size(); i++) {
+            shapes.get(i).setId("id-" + i + "-é");
+            shapes.get(i).setStrokeWidth(i + 0.5);
+        }
+
+        String expected = toJson(shapes);
+        for (DrawingFormat format : loadable())
+            assertEquals(expected, toJson(roundTrip(shapes, format)), format + " round trip");
+    }
+
+    @Test
+    void outOfRangeCoordinatesAreRejected() throws IOException {
+        for (double bad : new double[] { 1e12, -1e12, Double.NaN, Double.POSITIVE_INFINITY }) {
+            List<Shape> shapes = List.of(new Rectangle(0, bad, 10, 10, "#000000", "transparent"));
+            for (DrawingFormat format : loadable()) {
+                byte[] bytes = encode(shapes, format);
+                assertThrows(IllegalArgumentException.class, () -> decode(bytes, format), format + " " + bad);
+            }
+        }
+    }
+
+    // A stroke claiming a billion points but ending right after the count must not allocate for them up front
+    @Test
+    void truncatedStrokeWithHugeCountFailsCleanly() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(new byte[] { 'W', 'P', 'B', BinaryDrawingCodec.VERSION });
+        BinaryDrawingCodec.writeVarint(out, 1);
+        out.writeByte(6); // freehand
+        BinaryDrawingCodec.writeString(out, "s");
+        BinaryDrawingCodec.writeVarint(out, 0);
+        BinaryDrawingCodec.writeVarint(out, 0);
+        for (int i = 0; i < 3; i++)
+            out.writeDouble(0);
+        BinaryDrawingCodec.writeVarint(out, Integer.MAX_VALUE / 2);
+        out.writeByte(0);
+        byte[] truncated = bytes.toByteArray();
+        assertThrows(IOException.class, () -> BinaryDrawingCodec.read(new ByteArrayInputStream(truncated), n -> {
+        }, s -> {
+        }));
+        assertThrows(IOException.class, () -> decode(truncated, DrawingFormat.BINARY));
+    }
+
+    // XML reads an empty element back as "", so nulls are only checked for the other formats
+    @Test
+    void nullsSurvive() throws IOException {
+        Shape s = new LineSegment(0, 0, 1, 1, null);
+        s.setId(null);
+        s.setFillColor(null);
+        for (DrawingFormat format : List.of(DrawingFormat.JSON, DrawingFormat.BINARY)) {
+            Shape back = roundTrip(List.of(s), format).get(0);
+            assertEquals(null, back.getId());
+            assertEquals(null, back.getColor());
+            assertEquals(null, back.getFillColor());
+        }
+    }
+
+    // Timing lives in bench/BoardBenchmarks; this only guards the point of the binary format
+    @Test
+    void binaryIsWellUnderHalfTheJsonSize() throws IOException {
+        List<Shape> board = syntheticBoard(500, 200);
+        assertTrue(encode(board, DrawingFormat.BINARY).length < encode(board, DrawingFormat.JSON).length / 2);
+    }
+
+    @Test
+    void svgHasOneElementPerShape() throws Exception {
+        List<Shape> board = syntheticBoard(300, 20);
+        XMLStreamReader r = XMLInputFactory.newInstance()
+                .createXMLStreamReader(new ByteArrayInputStream(encode(board, DrawingFormat.SVG)));
+        Map<String, Integer> counts = new HashMap<>();
+        while (r.hasNext())
+            if (r.next() == XMLStreamConstants.START_ELEMENT)
+                counts.merge(r.getLocalName(), 1, Integer::sum);
+        assertEquals(Map.of("svg", 1, "path", 100, "rect", 100, "circle", 100), counts);
+    }
+
+    private static List<DrawingFormat> loadable() {
+        return Arrays.stream(DrawingFormat.values()).filter(DrawingFormat::isLoadable).toList();
+    }
+
+    // Mix of primitives and mouse-like freehand strokes on a half-pixel grid
+    static List<Shape> syntheticBoard(int count, int pointsPerStroke) {
+        Random rnd = new Random(42);
+        String[] colors = { "#000000", "#ff0000", "#00aa00", "#0000ff", "transparent" };
+        List<Shape> shapes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            double x = rnd.nextInt(4000), y = rnd.nextInt(4000);
+            String color = colors[rnd.nextInt(4)], fill = colors[rnd.nextInt(5)];
+            Shape s;
+            if (i % 3 == 0) {
+                PackedPoints points = new PackedPoints(pointsPerStroke);
+                for (int p = 0; p < pointsPerStroke; p++) {
+                    x += (rnd.nextInt(9) - 4) * 0.5;
+                    y += (rnd.nextInt(9) - 4) * 0.5;
+                    points.add(x, y);
+                }
+                s = new FreehandShape(points, color, fill);
+            } else if (i % 3 == 1) {
+                s = new Rectangle(x, y, rnd.nextInt(300), rnd.nextInt(300), color, fill);
+            } else {
+                s = new Circle(x, y, rnd.nextInt(150), color, fill);
+            }
+            s.setId(java.util.UUID.randomUUID().toString());
+            shapes.add(s);
+        }
+        return shapes;
+    }
+
+    private List<Shape> roundTrip(List<Shape> shapes, DrawingFormat format) throws IOException {
+        return decode(encode(shapes, format), format);
+    }
+
+    private byte[] encode(List<Shape> shapes, DrawingFormat format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        io.write(shapes, out, format, false);
+        return out.toByteArray();
+    }
+
+    private List<Shape> decode(byte[] bytes, DrawingFormat format) throws IOException {
+        return io.read(new ByteArrayInputStream(bytes), format, new LoadProgress(bytes.length));
+    }
+
+    private String toJson(List<Shape> shapes) throws IOException {
+        return new String(encode(shapes, DrawingFormat.JSON), "UTF-8");
+    }
+}
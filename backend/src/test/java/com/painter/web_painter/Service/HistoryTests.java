@@ -0,0 +1,103 @@
+package com.painter.web_painter.Service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import com.painter.web_painter.model.Shape;
+
+// Undo and redo walk the deltas back and forth to the exact same boards, ids and z-order included
+class HistoryTests {
+
+    @TempDir
+    Path dir;
+
+    private final ShapeFactory factory = new ShapeFactory();
+    private final BoardSession session = BoardSession.of("history", "c");
+
+    private Shape rect(double x) {
+        return factory.createShape("rectangle", Map.of("x1", x, "y1", 0, "x2", x + 10, "y2", 10));
+    }
+
+    @Test
+    void undoAndRedoRoundTrip() {
+        BoardRegistry registry = new BoardRegistry(dir.toString(), 60_000, 1 << 24);
+        PaintService paint = new PaintService(registry, new DrawingIO());
+        List<String> states = new ArrayList<>();
+        states.add(json(paint.getShapes(session)));
+        List<Runnable> commands = List.of(
+                () -> paint.addShape(session, rect(0)),
+                () -> paint.addShape(session, rect(50)),
+                () -> paint.addShape(session, rect(100)),
+                () -> paint.selectShapeAt(session, 5, 5),
+                () -> paint.updateColor(session, "#ff0000"),
+                () -> paint.bringToFront(session),
+                () -> paint.moveBackward(session),
+                () -> {
+                    paint.startMove(session);
+                    paint.moveSelected(session, 3, 4);
+                    paint.moveSelected(session, 3, 4);
+                    paint.endMove(session);
+                },
+                () -> {
+                    paint.startMove(session);
+                    paint.resizeSelected(session, "bottom-right", 10, 10);
+                    paint.endMove(session);
+                },
+                () -> {
+                    paint.copySelected(session);
+                    paint.pasteSelected(session, 200, 200);
+                },
+                () -> paint.sendToBack(session),
+                () -> {
+                    paint.selectShapeAt(session, 55, 5);
+                    paint.deleteSelected(session);
+                });
+        for (Runnable command : commands) {
+            command.run();
+            String state = json(paint.getShapes(session));
+            if (!state.equals(states.get(states.size() - 1)))
+                states.add(state);
+        }
+        // one step per command that changed the board; selecting alone is none
+        int steps = states.size() - 1;
+        assertEquals(steps, registry.get("history").getHistory().getUndoDepth());
+
+        for (int i = steps - 1; i >= 0; i--) {
+            paint.undo(session);
+            assertEquals(states.get(i), json(paint.getShapes(session)), "undo to state " + i);
+        }
+        for (int i = 1; i <= steps; i++) {
+            paint.redo(session);
+            assertEquals(states.get(i), json(paint.getShapes(session)), "redo to state " + i);
+        }
+    }
+
+    @Test
+    void budgetDropsTheOldestSteps() {
+        BoardRegistry registry = new BoardRegistry(dir.toString(), 60_000, 4096);
+        PaintService paint = new PaintService(registry, new DrawingIO());
+        for (int i = 0; i < 200; i++)
+            paint.addShape(session, rect(i * 20));
+        BoardHistory history = registry.get("history").getHistory();
+        assertTrue(history.getUndoDepth() < 200);
+        assertTrue(history.getRetainedBytes() <= 4096);
+
+        int depth = history.getUndoDepth();
+        for (int i = 0; i < depth + 5; i++) // undoing past what is kept is a no-op
+            paint.undo(session);
+        List<Shape> left = paint.getShapes(session);
+        assertEquals(200 - depth, left.size());
+        assertEquals(0, left.get(0).getX()); // the oldest shapes stay
+    }
+
+    private static String json(List<Shape> shapes) {
+        return new String(new ShapeJsonCache().toJson(shapes), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,112 @@
+package com.painter.web_painter.Service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import com.painter.web_painter.model.Bounds;
+import com.painter.web_painter.model.Circle;
+import com.painter.web_painter.model.PackedPoints;
+import com.painter.web_painter.model.Rectangle;
+import com.painter.web_painter.model.Shape;
+
+// Marquee/lasso selection and bulk edits, each bulk edit being a single undo step
+class MultiSelectionTests {
+
+    @TempDir
+    Path dir;
+
+    private final ShapeFactory factory = new ShapeFactory();
+    private final BoardSession session = BoardSession.of("multi", "c");
+
+    // 40 x 40 grid of 10x10 rectangles, 20px apart
+    private PaintService grid() {
+        PaintService paint = new PaintService(new BoardRegistry(dir.toString(), 60_000, 1 << 26), new DrawingIO());
+        for (int i = 0; i < 40; i++)
+            for (int j = 0; j < 40; j++)
+                paint.addShape(session, factory.createShape("rectangle",
+                        Map.of("x1", i * 20, "y1", j * 20, "x2", i * 20 + 10, "y2", j * 20 + 10)));
+        return paint;
+    }
+
+    @Test
+    void marqueeSelectsOnlyEnclosedShapes() {
+        PaintService paint = grid();
+        // covers columns/rows 0..2 completely; column 3 (x 60..70) only partly
+        List<String> ids = paint.selectInRect(session, new Bounds(-5, -5, 65, 55));
+        assertEquals(9, ids.size());
+        assertEquals(ids, paint.getSelection(session));
+
+        paint.selectShapeAt(session, 5, 5);
+        assertEquals(1, paint.getSelection(session).size());
+    }
+
+    @Test
+    void lassoUsesThePolygonNotItsBox() {
+        PaintService paint = grid();
+        PackedPoints triangle = new PackedPoints();
+        triangle.add(-5, -5);
+        triangle.add(200, -5);
+        triangle.add(-5, 200);
+        List<String> ids = paint.selectInLasso(session, triangle);
+        // cells (i, j) whose far corner (20i + 13, 20j + 13) is below the hypotenuse x + y < 195
+        int expected = 0;
+        for (int i = 0; i < 40; i++)
+            for (int j = 0; j < 40; j++)
+                if ((20 * i + 13) + (20 * j + 13) < 195 && 20 * i - 3 > -5 && 20 * j - 3 > -5)
+                    expected++;
+        assertEquals(expected, ids.size());
+    }
+
+    @Test
+    void bulkEditsAreOneUndoStep() {
+        PaintService paint = grid();
+        List<Shape> original = paint.getShapes(session);
+        List<String> ids = paint.selectInRect(session, new Bounds(-5, -5, 1000, 1000));
+        assertEquals(1600, ids.size()); // above the parallel threshold
+
+        paint.moveSelection(session, 7, -3);
+        paint.recolorSelection(session, "#ff0000", null);
+        for (Shape s : paint.getShapes(session)) {
+            Rectangle moved = (Rectangle) s;
+            assertEquals("#ff0000", moved.getColor());
+            assertEquals(0, (moved.getX() - 7) % 20, 1e-9);
+        }
+        paint.undo(session);
+        paint.undo(session);
+        assertEquals(json(original), json(paint.getShapes(session)));
+
+        paint.scaleSelection(session, 2);
+        Rectangle first = (Rectangle) paint.getShapes(session).get(0);
+        assertEquals(20, first.getWidth(), 1e-9);
+        paint.undo(session);
+        assertEquals(json(original), json(paint.getShapes(session)));
+
+        paint.deleteSelection(session);
+        assertTrue(paint.getShapes(session).isEmpty());
+        assertTrue(paint.getSelection(session).isEmpty());
+        paint.undo(session);
+        assertEquals(json(original), json(paint.getShapes(session)));
+    }
+
+    @Test
+    void scaleKeepsTheSelectionCentered() {
+        PaintService paint = new PaintService(new BoardRegistry(dir.toString(), 60_000, 1 << 24), new DrawingIO());
+        paint.addShape(session, factory.createShape("circle", Map.of("x1", 100, "y1", 100, "x2", 110, "y2", 100)));
+        paint.selectShapeAt(session, 100, 100);
+        paint.scaleSelection(session, 3);
+        Circle c = (Circle) paint.getShapes(session).get(0);
+        assertEquals(100, c.getX(), 1e-9);
+        assertEquals(30, c.getRadius(), 1e-9);
+    }
+
+    // Shapes are materialized afresh on every read, so lists are compared by content
+    private static String json(List<Shape> shapes) {
+        return new String(new ShapeJsonCache().toJson(shapes), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,185 @@
+package com.painter.web_painter.Service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import com.painter.web_painter.model.Bounds;
+import com.painter.web_painter.model.ChangeSet;
+import com.painter.web_painter.model.Circle;
+import com.painter.web_painter.model.Ellipse;
+import com.painter.web_painter.model.LineSegment;
+import com.painter.web_painter.model.Rectangle;
+import com.painter.web_painter.model.Shape;
+import com.painter.web_painter.model.Square;
+import com.painter.web_painter.model.Triangle;
+
+// Shapes kept as columns come back and serialize exactly as stored, and published lists ignore later writes
+// to the shapes and to their order, also when looked up by id, area or version
+class ShapeColumnsTests {
+
+    private final ShapeFactory factory = new ShapeFactory();
+    private final DrawingIO io = new DrawingIO();
+
+    @Test
+    void materializesAndWritesEveryKindAsJacksonWould() throws IOException {
+        List<Shape> shapes = new ArrayList<>();
+        shapes.add(new Rectangle(1.5, 2, 30, 40, "#112233", "transparent"));
+        Square square = new Square(-3, 1e7, 7, "#112233", "#ffffff");
+        square.setId(UUID.randomUUID().toString().toUpperCase()); // not a canonical id: kept as a string
+        shapes.add(square);
+        Circle circle = new Circle(10, 20, 0.1 + 0.2, null, "rgba(0, 0, 0, 0.5)");
+        circle.setId("circle-7");
+        shapes.add(circle);
+        shapes.add(new Ellipse(0, 0, Double.NaN, Double.POSITIVE_INFINITY, "#abc", null));
+        shapes.add(new LineSegment(0, 0, 1.0 / 3, -4, "blue \"é\"\n"));
+        Triangle triangle = new Triangle(-1, -2, 3, 4, 5, -6.25, "#000", "#000");
+        triangle.setStrokeWidth(0.25);
+        shapes.add(triangle);
+        shapes.add(factory.createShape("freehand", Map.of("points",
+                List.of(Map.of("x", 0.5, "y", 1), Map.of("x", 2, "y", 3))))); // kept as the object
+
+        ShapeStore store = new ShapeStore();
+        shapes.forEach(store::add);
+        ShapeList list = store.list();
+        assertSame(shapes.get(6), list.get(6));
+        for (int i = 0; i < shapes.size(); i++)
+            assertEquals(shapes.get(i).getClass(), list.get(i).getClass());
+        for (boolean pretty : new boolean[] { false, true }) {
+            byte[] expected = plain(shapes, pretty);
+            assertArrayEquals(expected, plain(new ArrayList<>(list), pretty), "materialized, pretty=" + pretty);
+            ByteArrayOutputStream columnar = new ByteArrayOutputStream();
+            io.write(list, new ShapeJsonCache(), columnar, DrawingFormat.JSON, pretty);
+            assertArrayEquals(expected, columnar.toByteArray(), "columnar, pretty=" + pretty);
+        }
+    }
+
+    @Test
+    void publishedListsIgnoreLaterWrites() {
+        ShapeStore store = new ShapeStore();
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) // several chunks
+            ids.add(add(store, i * 20));
+        ShapeList before = store.list();
+        String json = json(before);
+        Bounds area = new Bounds(0, 0, 100, 10);
+        List<String> visible = ids(before.within(area));
+        ChangeSet lastAdds = before.changesSince(store.getVersion() - 10);
+
+        for (int i = 0; i < ids.size(); i++) {
+            if (i % 3 == 0) {
+                store.remove(ids.get(i));
+            } else {
+                Rectangle moved = (Rectangle) store.get(ids.get(i)).clone();
+                moved.setY(100);
+                store.replace(moved);
+            }
+        }
+        for (int i = 0; i < 500; i++) // reuses the freed rows
+            add(store, -1000 - i * 20);
+
+        assertEquals(json, json(before));
+        assertEquals(3000, before.size());
+        assertEquals(2500, store.size());
+        assertEquals(List.of(ids.get(0), ids.get(1), ids.get(2), ids.get(3), ids.get(4), ids.get(5)), visible);
+        assertEquals(visible, ids(before.within(area)));
+        assertEquals(List.of(), store.within(area));
+        assertEquals(ids.subList(2990, 3000), ids(lastAdds.upserts().stream().map(u -> u.shape()).toList()));
+        ChangeSet again = before.changesSince(lastAdds.version() - 10);
+        assertEquals(lastAdds.version(), again.version());
+        assertEquals(ids.subList(2990, 3000), ids(again.upserts().stream().map(u -> u.shape()).toList()));
+        assertEquals(0, before.get(ids.get(0)).getY());
+        assertEquals(0, before.get(ids.get(1)).getY());
+        for (int i = 0; i < ids.size(); i++) {
+            Shape s = store.get(ids.get(i));
+            if (i % 3 == 0)
+                assertNull(s);
+            else
+                assertEquals(100, s.getY());
+        }
+        assertEquals(ids.get(1), store.topMostAt(25, 105).getId());
+        assertNull(store.topMostAt(25, 5));
+    }
+
+    @Test
+    void publishedListsKeepTheirOrder() {
+        ShapeStore store = new ShapeStore();
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) // several z-order blocks
+            ids.add(add(store, i * 20));
+        ShapeList before = store.list();
+        String json = json(before);
+
+        for (int i = 0; i + 1 < ids.size(); i += 2)
+            store.swap(ids.get(i), ids.get(i + 1));
+        ShapeList swapped = store.list();
+        store.insert(store.get(ids.get(2999)), store.bottomZ());
+        store.remove(ids.get(1500));
+        assertEquals(ids.get(1), swapped.get(0).getId());
+        assertEquals(ids.get(2999), store.list().get(0).getId());
+        store.clear();
+
+        assertEquals(json, json(before));
+        assertEquals(ids.get(0), before.get(0).getId());
+        assertEquals(3000, swapped.size());
+        assertEquals(ids.get(2998), swapped.get(2999).getId());
+        assertEquals(0, store.list().size());
+        assertThrows(IndexOutOfBoundsException.class, () -> swapped.get(3000));
+        assertThrows(IndexOutOfBoundsException.class, () -> store.list().get(0));
+    }
+
+    @Test
+    void recoloringReusesColorCodes() {
+        ShapeStore store = new ShapeStore();
+        String id = add(store, 0);
+        add(store, 20); // keeps the default color in use throughout
+        List<ShapeList> published = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            Rectangle recolored = (Rectangle) store.get(id).clone();
+            recolored.setColor(String.format("#%06x", i));
+            recolored.setFillColor(i % 2 == 0 ? "transparent" : String.format("#%06x", i));
+            store.replace(recolored);
+            if (i % 1000 == 0)
+                published.add(store.list());
+        }
+        store.remove(id);
+
+        assertTrue(store.colorCodes() <= 8, "codes handed out: " + store.colorCodes());
+        for (int i = 0; i < published.size(); i++) {
+            Shape s = published.get(i).get(0);
+            assertEquals(String.format("#%06x", i * 1000), s.getColor());
+            assertEquals("transparent", s.getFillColor());
+        }
+    }
+
+    private static List<String> ids(List<Shape> shapes) {
+        return shapes.stream().map(Shape::getId).toList();
+    }
+
+    // Adds a 10x10 rectangle at (x, 0) and returns its id
+    private String add(ShapeStore store, double x) {
+        Shape s = factory.createShape("rectangle", Map.of("x1", x, "y1", 0, "x2", x + 10, "y2", 10));
+        store.add(s);
+        return s.getId();
+    }
+
+    private byte[] plain(List<Shape> shapes, boolean pretty) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        io.write(shapes, out, DrawingFormat.JSON, pretty);
+        return out.toByteArray();
+    }
+
+    private static String json(List<Shape> shapes) {
+        return new String(new ShapeJsonCache().toJson(shapes));
+    }
+}
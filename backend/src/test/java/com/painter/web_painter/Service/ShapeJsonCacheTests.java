@@ -0,0 +1,88 @@
+package com.painter.web_painter.Service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import com.painter.web_painter.model.FreehandShape;
+import com.painter.web_painter.model.LineSegment;
+import com.painter.web_painter.model.PackedPoints;
+import com.painter.web_painter.model.Shape;
+
+// Lists assembled from cached fragments match plain Jackson output, and only edited shapes are re-serialized
+class ShapeJsonCacheTests {
+
+    @TempDir
+    Path dir;
+
+    private final ShapeFactory factory = new ShapeFactory();
+    private final DrawingIO io = new DrawingIO();
+    private final BoardSession session = BoardSession.of("json", "c");
+
+    @Test
+    void matchesJacksonOutputInEveryForm() throws IOException {
+        List<Shape> shapes = new ArrayList<>();
+        shapes.add(factory.createShape("rectangle", Map.of("x1", 1.5, "y1", 2, "x2", 30, "y2", 40)));
+        shapes.add(factory.createShape("circle", Map.of("x1", 10, "y1", 20, "x2", 13, "y2", 24)));
+        PackedPoints points = new PackedPoints();
+        points.add(0.1, 1.0 / 3);
+        points.add(-2, 1e300); // beyond what the factory accepts, but still written exactly
+        shapes.add(new FreehandShape(points, "#000000", "transparent"));
+        shapes.add(new LineSegment(0, 0, 1, 1, null)); // null id and color
+        ShapeJsonCache cache = new ShapeJsonCache();
+        for (List<Shape> list : List.of(List.<Shape>of(), shapes)) {
+            for (boolean pretty : new boolean[] { false, true })
+                for (int pass = 0; pass < 2; pass++) // fresh fragments, then cached ones
+                    assertArrayEquals(plain(list, pretty), cached(cache, list, pretty), "pretty=" + pretty);
+            assertArrayEquals(plain(list, false), cache.toJson(list));
+        }
+    }
+
+    @Test
+    void onlyChangedShapesAreSerializedAgain() {
+        PaintService paint = new PaintService(new BoardRegistry(dir.toString(), 60_000, 1 << 24), io);
+        // freehand strokes: primitives are written straight from the store's columns and never cached
+        for (int i = 0; i < 100; i++)
+            paint.addShape(session, factory.createShape("freehand", Map.of("points",
+                    List.of(Map.of("x", i * 20, "y", 0), Map.of("x", i * 20 + 10, "y", 10)))));
+        BoardSnapshot before = paint.getSnapshot(session);
+        paint.toJson(before);
+        paint.selectShapeAt(session, 5, 5);
+        paint.moveSelected(session, 3, 3);
+        BoardSnapshot after = paint.getSnapshot(session);
+        String json = new String(paint.toJson(after));
+
+        ShapeJsonCache cache = after.json();
+        assertSame(before.json(), cache);
+        assertNotSame(cache.fragment(before.shapes().get(0), false), cache.fragment(after.shapes().get(0), false));
+        for (int i = 1; i < 100; i++)
+            assertSame(cache.fragment(before.shapes().get(i), false), cache.fragment(after.shapes().get(i), false));
+        assertEquals(100, cache.size());
+        assertEquals(new String(cache.toJson(after.shapes())), json);
+
+        paint.clearBoard(session);
+        paint.toJson(paint.getSnapshot(session));
+        assertEquals(0, cache.size()); // fragments of removed shapes are dropped
+    }
+
+    private byte[] plain(List<Shape> shapes, boolean pretty) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        io.write(shapes, out, DrawingFormat.JSON, pretty);
+        return out.toByteArray();
+    }
+
+    private byte[] cached(ShapeJsonCache cache, List<Shape> shapes, boolean pretty) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        io.write(shapes, cache, out, DrawingFormat.JSON, pretty);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,128 @@
+package com.painter.web_painter.Service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import com.painter.web_painter.model.Bounds;
+import com.painter.web_painter.model.Shape;
+
+// Grid lookups agree with a full scan and finish for boxes at any coordinates; the factory refuses unusable ones
+class SpatialIndexTests {
+
+    @Test
+    @Timeout(10)
+    void boxesBeyondTheGridAreKeptAside() {
+        SpatialIndex index = new SpatialIndex();
+        index.put(0, new Bounds(1e12, 0, 1e12 + 10, 10));
+        index.put(1, new Bounds(-1e300, -1e300, -1e300 + 1, 5));
+        index.put(2, new Bounds(Double.NaN, 0, 10, 10));
+        index.put(3, new Bounds(0, 0, 10, 10));
+        assertEquals(4, index.size());
+        assertArrayEquals(new int[] { 0 }, index.candidatesAt(1e12 + 5, 5));
+        assertArrayEquals(new int[] { 0 }, index.query(new Bounds(1e12, 0, 1e12 + 1, 1)));
+        assertArrayEquals(new int[] { 3 }, index.query(new Bounds(1, 1, 2, 2)));
+        index.remove(0);
+        index.remove(1);
+        index.remove(2);
+        assertEquals(0, index.query(new Bounds(1e12, 0, 1e12 + 1, 1)).length);
+        assertEquals(new Bounds(0, 0, 10, 10), index.extent());
+    }
+
+    @Test
+    @Timeout(10)
+    void boxesSpanningTheBoardGoToCoarserCells() {
+        Random rnd = new Random(5);
+        SpatialIndex index = new SpatialIndex();
+        Bounds[] boxes = new Bounds[20_000];
+        for (int row = 0; row < boxes.length; row++) {
+            double size = Math.pow(10, 1 + rnd.nextInt(9)); // 10 up to 1e9 wide
+            double x = (rnd.nextDouble() * 2 - 1) * 1e9, y = (rnd.nextDouble() * 2 - 1) * 1e9;
+            boxes[row] = new Bounds(x, y, x + size * rnd.nextDouble(), y + size * rnd.nextDouble());
+            index.put(row, boxes[row]);
+        }
+        assertEquals(0, index.oversizedCount());
+        SpatialIndex.Frozen frozen = index.freeze();
+        for (int row = 0; row < boxes.length; row += 2)
+            index.remove(row);
+
+        for (int i = 0; i < 200; i++) {
+            double x = (rnd.nextDouble() * 2 - 1) * 1e9, y = (rnd.nextDouble() * 2 - 1) * 1e9;
+            Bounds area = new Bounds(x, y, x + rnd.nextDouble() * 1e4, y + rnd.nextDouble() * 1e4);
+            List<Integer> all = new ArrayList<>(), live = new ArrayList<>();
+            for (int row = 0; row < boxes.length; row++)
+                if (boxes[row].intersects(area)) {
+                    all.add(row);
+                    if (row % 2 == 1)
+                        live.add(row);
+                }
+            assertEquals(all, sorted(frozen.query(area)), "frozen " + area);
+            assertEquals(live, sorted(index.query(area)), "live " + area);
+        }
+    }
+
+    @Test
+    @Timeout(30)
+    void hitTestsAndQueriesMatchAFullScan() {
+        Random rnd = new Random(11);
+        ShapeFactory factory = new ShapeFactory();
+        ShapeStore store = new ShapeStore();
+        String[] kinds = { "rectangle", "square", "circle", "ellipse", "line", "triangle" };
+        // a dense cluster at the origin, one far out on the negative side and a few shapes spanning the board
+        double[][] clusters = { { 0, 500, 60 }, { -9.99e8, 5_000, 800 }, { 0, 3e8, 3e8 } };
+        for (int i = 0; i < 3000; i++) {
+            double[] c = clusters[i < 1500 ? 0 : i < 2990 ? 1 : 2];
+            double x1 = c[0] + (rnd.nextDouble() * 2 - 1) * c[1], y1 = c[0] + (rnd.nextDouble() * 2 - 1) * c[1];
+            double x2 = x1 + (rnd.nextDouble() * 2 - 1) * c[2], y2 = y1 + (rnd.nextDouble() * 2 - 1) * c[2];
+            store.add(factory.createShape(kinds[i % kinds.length],
+                    Map.of("x1", x1, "y1", y1, "x2", x2, "y2", y2, "fillColor", "#fff")));
+        }
+        List<Shape> all = store.list();
+
+        for (int i = 0; i < 2000; i++) {
+            double[] c = clusters[i % 3];
+            double x = c[0] + (rnd.nextDouble() * 2 - 1) * (c[1] + c[2]);
+            double y = c[0] + (rnd.nextDouble() * 2 - 1) * (c[1] + c[2]);
+            Shape expected = null;
+            for (Shape s : all)
+                if (ShapeGeometry.hitTest(s, x, y))
+                    expected = s; // bottom to top: the last hit is the top-most
+            Shape actual = store.topMostAt(x, y);
+            assertEquals(expected == null ? null : expected.getId(), actual == null ? null : actual.getId(),
+                    "hit at " + x + ", " + y);
+
+            double w = rnd.nextDouble() * c[1] / 4, h = rnd.nextDouble() * c[1] / 4;
+            Bounds area = new Bounds(x, y, x + w, y + h);
+            assertEquals(ids(all.stream().filter(s -> ShapeGeometry.bounds(s).intersects(area)).toList()),
+                    ids(store.within(area)), "query " + area);
+        }
+        Bounds everything = new Bounds(-2e9, -2e9, 2e9, 2e9);
+        assertEquals(ids(all), ids(store.within(everything)));
+    }
+
+    @Test
+    void factoryRefusesCoordinatesOutsideTheLimit() {
+        ShapeFactory factory = new ShapeFactory();
+        for (Object bad : new Object[] { 1e12, -1e12, "NaN", "Infinity" })
+            assertThrows(IllegalArgumentException.class, () -> factory.createShape("rectangle",
+                    Map.of("x1", bad, "y1", 0, "x2", 10, "y2", 10)), String.valueOf(bad));
+        assertThrows(IllegalArgumentException.class, () -> factory.createShape("freehand",
+                Map.of("points", List.of(Map.of("x", 0, "y", 2e9)))));
+        factory.createShape("rectangle", Map.of("x1", -1e8, "y1", 0, "x2", 1e8, "y2", 10));
+    }
+
+    private static List<Integer> sorted(int[] rows) {
+        return Arrays.stream(rows).sorted().boxed().toList();
+    }
+
+    private static List<String> ids(List<Shape> shapes) {
+        return shapes.stream().map(Shape::getId).toList();
+    }
+}
@@ -0,0 +1,81 @@
+package com.painter.web_painter.Service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import com.painter.web_painter.model.FreehandShape;
+import com.painter.web_painter.model.PackedPoints;
+import com.painter.web_painter.model.SimplifyResult;
+
+// Simplified strokes keep both ends and stay within the tolerance of every sample they drop
+class StrokeSimplifierTests {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void keepsEndpointsAndStaysWithinTolerance() {
+        Random rnd = new Random(5);
+        PackedPoints stroke = new PackedPoints();
+        double x = 0, y = 0;
+        for (int i = 0; i < 5000; i++) { // a jittery random walk
+            x += rnd.nextDouble() * 4 - 1;
+            y += rnd.nextGaussian() * 2;
+            stroke.add(x, y);
+        }
+        for (double tolerance : new double[] { 0.25, 1, 5, 50 }) {
+            PackedPoints kept = StrokeSimplifier.simplify(stroke, tolerance);
+            assertTrue(kept.size() >= 2 && kept.size() < stroke.size(), "tolerance " + tolerance);
+            assertEquals(stroke.getX(0), kept.getX(0));
+            assertEquals(stroke.getY(stroke.size() - 1), kept.getY(kept.size() - 1));
+            // kept points are a subsequence; each dropped one is near the segment between its kept neighbours
+            int k = 0;
+            for (int i = 0; i < stroke.size(); i++) {
+                if (stroke.getX(i) == kept.getX(k) && stroke.getY(i) == kept.getY(k)) {
+                    k++;
+                    continue;
+                }
+                double d = ShapeGeometry.distanceSqToSegment(stroke.getX(i), stroke.getY(i), kept.getX(k - 1),
+                        kept.getY(k - 1), kept.getX(k), kept.getY(k));
+                assertTrue(d <= tolerance * tolerance, "point " + i + " at tolerance " + tolerance);
+            }
+            assertEquals(kept.size(), k);
+        }
+        assertSame(stroke, StrokeSimplifier.simplify(stroke, 0)); // off
+        PackedPoints straight = PackedPoints.wrap(new double[] { 0, 0, 1, 1, 2, 2, 3, 3.01, 4, 4 });
+        assertEquals(2, StrokeSimplifier.simplify(straight, 0.1).size());
+        PackedPoints zigzag = PackedPoints.wrap(new double[] { 0, 0, 1, 3, 2, 0, 3, 3, 4, 0 });
+        assertSame(zigzag, StrokeSimplifier.simplify(zigzag, 1)); // nothing to drop
+    }
+
+    @Test
+    void factoryCountsWhatItDropsAndBoardsSimplifyAsOneStep() {
+        List<Map<String, Object>> points = new ArrayList<>();
+        for (int i = 0; i <= 100; i++)
+            points.add(Map.of("x", i, "y", i % 2 == 0 ? 0 : 0.1));
+        ShapeFactory off = new ShapeFactory(0), on = new ShapeFactory(0.5);
+        assertEquals(101, ((FreehandShape) off.createShape("freehand", Map.of("points", points))).getPoints().size());
+        assertEquals(new SimplifyResult(1, 101, 101), off.getSimplifyStats());
+        assertEquals(2, ((FreehandShape) on.createShape("freehand", Map.of("points", points))).getPoints().size());
+        assertEquals(99, on.getSimplifyStats().getPointsSaved());
+
+        PaintService paint = new PaintService(new BoardRegistry(dir.toString(), 60_000, 1 << 24), new DrawingIO());
+        BoardSession s = BoardSession.of("simplify", "c");
+        for (int i = 0; i < 3; i++)
+            paint.addShape(s, off.createShape("freehand", Map.of("points", points)));
+        assertEquals(new SimplifyResult(3, 303, 6), paint.simplifyStrokes(s, 0.5));
+        assertEquals(new SimplifyResult(0, 6, 6), paint.simplifyStrokes(s, 0.5)); // leaves no undo step
+        paint.undo(s);
+        assertEquals(3, paint.getShapes(s).size());
+        assertEquals(101, ((FreehandShape) paint.getShapes(s).get(2)).getPoints().size());
+        assertEquals(101, ((FreehandShape) paint.getShapes(s).get(0)).getPoints().size());
+    }
+}
@@ -0,0 +1,69 @@
+package com.painter.web_painter.Service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.awt.image.BufferedImage;
+import java.nio.file.Path;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import com.painter.web_painter.model.Bounds;
+
+/**
+ * Tiles are drawn once and reused until a change repaints their area, and are shared by every scale
+ * within a zoom level.
+ */
+class TileRendererTests {
+    private final ShapeFactory factory = new ShapeFactory();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void redrawsOnlyTilesThatChanged() {
+        BoardRegistry boards = new BoardRegistry(dir.toString(), 60_000, 1 << 24);
+        PaintService paint = new PaintService(boards, new DrawingIO());
+        TileRenderer renderer = new TileRenderer(boards, 64, 2, 4096, 2);
+        BoardSession s = BoardSession.of("render", "a");
+        paint.addShape(s, factory.createShape("rectangle",
+                Map.of("x1", 10, "y1", 10, "x2", 100, "y2", 100, "color", "#000000", "fillColor", "#ff0000")));
+        paint.addShape(s, factory.createShape("circle",
+                Map.of("x1", 700, "y1", 100, "x2", 720, "y2", 100, "color", "#0000ff")));
+        Bounds area = new Bounds(0, 0, 1024, 512); // 4 x 2 tiles
+
+        BufferedImage img = renderer.render(s, area, 1);
+        assertEquals(0xffff0000, img.getRGB(50, 50));
+        assertEquals(0xffffffff, img.getRGB(300, 300));
+        assertEquals(8, renderer.getTilesRendered());
+
+        renderer.render(s, area, 1);
+        assertEquals(8, renderer.getTilesRendered());
+
+        // moving the circle within tile (2, 0) only repaints that tile
+        paint.selectShapeAt(s, 700, 100);
+        paint.moveSelected(s, 20, 0);
+        img = renderer.render(s, area, 1);
+        assertEquals(9, renderer.getTilesRendered());
+        assertEquals(0xffff0000, img.getRGB(50, 50));
+
+        // the same area at another scale is a different tile grid
+        img = renderer.render(s, area, 0.5);
+        assertEquals(0xffff0000, img.getRGB(25, 25));
+        assertEquals(11, renderer.getTilesRendered());
+
+        // scales between two zoom levels share the tiles of the level above (here 2^(-1/4) = 0.84), shrunk
+        // to the requested size
+        long drawn = renderer.getTilesRendered();
+        for (double scale : new double[] { 0.8, 0.75, 0.72 }) {
+            img = renderer.render(s, area, scale);
+            assertEquals((int) Math.ceil(1024 * scale), img.getWidth());
+            assertEquals(0xffff0000, img.getRGB((int) (50 * scale), (int) (50 * scale)));
+            assertEquals(0xffffffff, img.getRGB((int) (300 * scale), (int) (300 * scale)));
+        }
+        assertEquals(drawn + 8, renderer.getTilesRendered());
+
+        paint.clearBoard(s);
+        img = renderer.render(s, area, 1);
+        assertEquals(0xffffffff, img.getRGB(50, 50));
+        assertEquals(drawn + 16, renderer.getTilesRendered());
+    }
+}
@@ -0,0 +1,76 @@
+package com.painter.web_painter.Service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import com.painter.web_painter.model.Bounds;
+import com.painter.web_painter.model.FreehandShape;
+import com.painter.web_painter.model.Shape;
+
+// Viewport queries only return what meets the area, and only zoomed-out strokes are decimated
+class ViewportQueryTests {
+
+    @TempDir
+    Path dir;
+
+    private final ShapeFactory factory = new ShapeFactory();
+    private final BoardSession session = BoardSession.of("viewport", "c");
+
+    private PaintService board() {
+        PaintService paint = new PaintService(new BoardRegistry(dir.toString(), 60_000, 1 << 24), new DrawingIO());
+        for (int i = 0; i < 20; i++)
+            for (int j = 0; j < 20; j++)
+                paint.addShape(session, factory.createShape("rectangle",
+                        Map.of("x1", i * 100, "y1", j * 100, "x2", i * 100 + 50, "y2", j * 100 + 50)));
+        return paint;
+    }
+
+    @Test
+    void returnsOnlyIntersectingShapesInDrawingOrder() {
+        PaintService paint = board();
+        BoardSnapshot visible = paint.getShapesIn(session, new Bounds(120, 120, 320, 220), 1);
+        assertEquals(paint.getVersion(session), visible.version());
+        // columns 1..3 (x 100..350) meet 120..320, rows 1..2 (y 100..250) meet 120..220
+        assertEquals(6, visible.shapes().size());
+        List<String> all = paint.getShapes(session).stream().map(Shape::getId).toList();
+        int last = -1;
+        for (Shape s : visible.shapes()) {
+            int z = all.indexOf(s.getId());
+            assertTrue(z > last);
+            last = z;
+        }
+        assertEquals(0, paint.getShapesIn(session, new Bounds(5000, 5000, 6000, 6000), 1).shapes().size());
+    }
+
+    @Test
+    void decimatesStrokesOnlyWhenZoomedOut() {
+        PaintService paint = board();
+        List<Map<String, Object>> points = new ArrayList<>();
+        for (int i = 0; i < 1000; i++)
+            points.add(Map.of("x", 10 + i * 0.2, "y", 10 + Math.sin(i / 50.0) * 20));
+        paint.addShape(session, factory.createShape("freehand", Map.of("points", points)));
+        FreehandShape stored = (FreehandShape) paint.getShapes(session).get(400);
+        Bounds area = new Bounds(0, 0, 300, 300);
+
+        FreehandShape full = stroke(paint.getShapesIn(session, area, 1).shapes());
+        assertSame(stored, full);
+        FreehandShape coarse = stroke(paint.getShapesIn(session, area, 0.05).shapes());
+        assertEquals(stored.getId(), coarse.getId());
+        assertTrue(coarse.getPoints().size() < stored.getPoints().size() / 10, "" + coarse.getPoints().size());
+        assertEquals(1000, stored.getPoints().size());
+    }
+
+    private static FreehandShape stroke(List<Shape> shapes) {
+        for (Shape s : shapes)
+            if (s instanceof FreehandShape)
+                return (FreehandShape) s;
+        throw new AssertionError("no stroke returned");
+    }
+}
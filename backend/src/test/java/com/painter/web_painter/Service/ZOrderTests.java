@@ -0,0 +1,77 @@
+package com.painter.web_painter.Service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import com.painter.web_painter.model.Shape;
+
+// Front, back, forward and backward reorder the board like the same moves on a plain list, and undo puts it back
+class ZOrderTests {
+
+    @TempDir
+    Path dir;
+
+    private final ShapeFactory factory = new ShapeFactory();
+    private final BoardSession session = BoardSession.of("order", "c");
+
+    @Test
+    void reordersLikeAList() {
+        BoardRegistry registry = new BoardRegistry(dir.toString(), 60_000, 1 << 24);
+        PaintService paint = new PaintService(registry, new DrawingIO());
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 40; i++) { // side by side, so each is selected by its own point
+            Shape s = factory.createShape("rectangle", Map.of("x1", i * 20, "y1", 0, "x2", i * 20 + 10, "y2", 10));
+            paint.addShape(session, s);
+            expected.add(s.getId());
+        }
+        BoardHistory history = registry.get("order").getHistory();
+        List<List<String>> seen = new ArrayList<>();
+        List<Integer> depths = new ArrayList<>();
+        Random rnd = new Random(3);
+        for (int step = 0; step < 2000; step++) {
+            int i = rnd.nextInt(40);
+            paint.selectShapeAt(session, i * 20 + 5, 5);
+            String id = paint.getSelectedShape(session).getId();
+            int at = expected.indexOf(id);
+            seen.add(new ArrayList<>(expected));
+            depths.add(history.getUndoDepth());
+            switch (rnd.nextInt(4)) {
+                case 0 -> {
+                    paint.bringToFront(session);
+                    expected.add(expected.remove(at));
+                }
+                case 1 -> {
+                    paint.sendToBack(session);
+                    expected.add(0, expected.remove(at));
+                }
+                case 2 -> {
+                    paint.moveForward(session);
+                    if (at + 1 < expected.size())
+                        Collections.swap(expected, at, at + 1);
+                }
+                default -> {
+                    paint.moveBackward(session);
+                    if (at > 0)
+                        Collections.swap(expected, at, at - 1);
+                }
+            }
+            assertEquals(expected, ids(paint.getShapes(session)), "step " + step);
+        }
+        for (int step = seen.size() - 1; step >= seen.size() - 200; step--) {
+            while (history.getUndoDepth() > depths.get(step)) // forward at the top leaves no step
+                paint.undo(session);
+            assertEquals(seen.get(step), ids(paint.getShapes(session)), "undo to step " + step);
+        }
+    }
+
+    private static List<String> ids(List<Shape> shapes) {
+        return shapes.stream().map(Shape::getId).toList();
+    }
+}
@@ -0,0 +1,112 @@
+package com.painter.web_painter.bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockMultipartFile;
+import com.painter.web_painter.Service.BoardSession;
+import com.painter.web_painter.Service.DrawingFormat;
+import com.painter.web_painter.Service.PaintService;
+import com.painter.web_painter.model.FreehandShape;
+import com.painter.web_painter.model.Shape;
+
+/**
+ * Board operations against synthetic boards of 1k/10k/100k shapes. Every mutation also pays for
+ * publishing a new snapshot, so the numbers include that. The save and load benchmarks compare the
+ * drawing formats; the size of each encoding is printed once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class BoardBenchmarks {
+    private static final int BIG_STROKE_POINTS = 20_000;
+
+    @Param({ "1000", "10000", "100000" })
+    int shapes;
+
+    private final BoardSession session = BoardSession.of("bench", "bench");
+    private PaintService paint;
+    private double[] probes;
+    private int next;
+    private FreehandShape bigStroke;
+    private MockMultipartFile json, xml, binary;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        List<Shape> board = SyntheticBoard.shapes(shapes, 42);
+        paint = SyntheticBoard.service(session, board);
+        Random rnd = new Random(7);
+        probes = new double[2048];
+        for (int i = 0; i < probes.length; i++)
+            probes[i] = rnd.nextDouble() * SyntheticBoard.SIZE;
+        bigStroke = SyntheticBoard.stroke(rnd, 2000, 2000, BIG_STROKE_POINTS, "#000000");
+        paint.addShape(session, bigStroke);
+        selectBigStroke();
+        json = SyntheticBoard.file(board, DrawingFormat.JSON);
+        xml = SyntheticBoard.file(board, DrawingFormat.XML);
+        binary = SyntheticBoard.file(board, DrawingFormat.BINARY);
+        // JMH only measures time, so the encoded size of each format goes to the run log next to the scores
+        System.out.printf("%n%d shapes encode to: json %d bytes, xml %d bytes, binary %d bytes%n", shapes,
+                json.getSize(), xml.getSize(), binary.getSize());
+    }
+
+    // The stroke was added last, so it is on top at its own first point
+    private void selectBigStroke() {
+        paint.selectShapeAt(session, bigStroke.getPoints().getX(0), bigStroke.getPoints().getY(0));
+    }
+
+    @Benchmark
+    public void selectShapeAt() {
+        int i = next = (next + 2) & (probes.length - 1);
+        paint.selectShapeAt(session, probes[i], probes[i + 1]);
+    }
+
+    // One recorded change (a color edit) followed by its undo and redo
+    @Benchmark
+    public void editUndoRedo() {
+        paint.updateColor(session, (next++ & 1) == 0 ? "#ff0000" : "#00ff00");
+        paint.undo(session);
+        paint.redo(session);
+    }
+
+    @Benchmark
+    public void moveSelectedBigStroke() {
+        paint.moveSelected(session, (next++ & 1) == 0 ? 1 : -1, 0);
+    }
+
+    @Benchmark
+    public void saveJson() throws IOException {
+        paint.save(paint.getSnapshot(session), OutputStream.nullOutputStream(), DrawingFormat.JSON, false, false);
+    }
+
+    @Benchmark
+    public void saveXml() throws IOException {
+        paint.save(paint.getSnapshot(session), OutputStream.nullOutputStream(), DrawingFormat.XML, false, false);
+    }
+
+    @Benchmark
+    public void saveBinary() throws IOException {
+        paint.save(paint.getSnapshot(session), OutputStream.nullOutputStream(), DrawingFormat.BINARY, false, false);
+    }
+
+    @Benchmark
+    public void loadJson() throws IOException {
+        paint.loadFromFile(session, json);
+    }
+
+    @Benchmark
+    public void loadXml() throws IOException {
+        paint.loadFromFile(session, xml);
+    }
+
+    @Benchmark
+    public void loadBinary() throws IOException {
+        paint.loadFromFile(session, binary);
+    }
+}
@@ -0,0 +1,235 @@
+package com.painter.web_painter.bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.painter.web_painter.WebPainterApplication;
+import com.painter.web_painter.model.TraceEvent;
+
+/**
+ * End-to-end load replay: starts the application in-process on a random port, replays recorded
+ * sessions (see SessionRecorder, painter.trace.file) or synthetic ones with M concurrent users at N
+ * times the recorded speed, and reports throughput, p50/p99 latency per endpoint and heap growth.
+ *
+ * <pre>
+ * mvn -Pload verify -Dload.args="--synthetic=mixed --sessions=12 --users=8 --speed=4"
+ * mvn -Pload verify -Dload.args="--trace=traces/sessions.jsonl --users=50 --boards=5 --speed=2"
+ * </pre>
+ *
+ * Options: --trace=file | --synthetic=freehand|drag|paste|mixed (with --sessions, --events), --users (M),
+ * --speed (N, 0 = no pauses), --boards (boards the users are spread over, default one per user),
+ * --record=file (also record the replay), --report=file (JSON, default target/load-report.json).
+ * Every user plays its share of the sessions one after another as client user-&lt;i&gt; on board
+ * load-&lt;i mod boards&gt;.
+ */
+public class LoadHarness {
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    record Config(List<List<TraceEvent>> sessions, int users, double speed, int boards, String record) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = new HashMap<>();
+        for (String a : args) {
+            if (!a.startsWith("--"))
+                throw new IllegalArgumentException("Unexpected argument " + a);
+            int eq = a.indexOf('=');
+            opts.put(eq < 0 ? a.substring(2) : a.substring(2, eq), eq < 0 ? "true" : a.substring(eq + 1));
+        }
+        List<List<TraceEvent>> sessions = opts.containsKey("trace") ? readTrace(Path.of(opts.get("trace")))
+                : SyntheticSessions.generate(opts.getOrDefault("synthetic", "mixed"),
+                        Integer.parseInt(opts.getOrDefault("sessions", "12")),
+                        Integer.parseInt(opts.getOrDefault("events", "200")), 42);
+        int users = Integer.parseInt(opts.getOrDefault("users", "4"));
+        Config config = new Config(sessions, users, Double.parseDouble(opts.getOrDefault("speed", "1")),
+                Integer.parseInt(opts.getOrDefault("boards", String.valueOf(users))), opts.get("record"));
+        Map<String, Object> report = run(config);
+        String json = JSON.writerWithDefaultPrettyPrinter().writeValueAsString(report);
+        System.out.println(json);
+        File out = new File(opts.getOrDefault("report", "target/load-report.json"));
+        if (out.getAbsoluteFile().getParentFile() != null)
+            out.getAbsoluteFile().getParentFile().mkdirs();
+        Files.writeString(out.toPath(), json);
+        System.out.println("Report written to " + out.getAbsolutePath());
+    }
+
+    // Groups a trace by (board, client) into sessions ordered by time
+    static List<List<TraceEvent>> readTrace(Path trace) throws IOException {
+        Map<String, List<TraceEvent>> byClient = new LinkedHashMap<>();
+        try (BufferedReader in = Files.newBufferedReader(trace, StandardCharsets.UTF_8)) {
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                if (line.isBlank())
+                    continue;
+                TraceEvent e = JSON.readValue(line, TraceEvent.class);
+                byClient.computeIfAbsent(e.board() + "/" + e.client(), k -> new ArrayList<>()).add(e);
+            }
+        }
+        List<List<TraceEvent>> sessions = new ArrayList<>(byClient.values());
+        for (List<TraceEvent> s : sessions)
+            s.sort((a, b) -> Long.compare(a.t(), b.t()));
+        return sessions;
+    }
+
+    static Map<String, Object> run(Config config) throws Exception {
+        if (config.sessions().isEmpty())
+            throw new IllegalArgumentException("No sessions to replay");
+        // devtools would restart main() in its own class loader, without our arguments
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        Path boardsDir = Files.createTempDirectory("painter-load");
+        // passed as command line arguments so that they win over application.properties
+        List<String> args = new ArrayList<>(List.of("--server.port=0", "--management.server.port=-1",
+                "--painter.boards.dir=" + boardsDir, "--logging.level.root=WARN"));
+        if (config.record() != null)
+            args.add("--painter.trace.file=" + config.record());
+        try (ConfigurableApplicationContext app = new SpringApplicationBuilder(WebPainterApplication.class)
+                .run(args.toArray(String[]::new))) {
+            String base = "http://127.0.0.1:" + app.getEnvironment().getProperty("local.server.port");
+            return replay(base, config);
+        } finally {
+            FileSystemUtils.deleteRecursively(boardsDir);
+        }
+    }
+
+    private static Map<String, Object> replay(String base, Config config) throws Exception {
+        HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        Map<String, List<Long>> latencies = new ConcurrentHashMap<>();
+        Map<String, AtomicLong> errors = new ConcurrentHashMap<>();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        long heapBefore = memory.getHeapMemoryUsage().getUsed();
+        AtomicLong heapPeak = new AtomicLong(heapBefore);
+        Thread sampler = Thread.ofPlatform().daemon().start(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                heapPeak.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+
+        List<List<TraceEvent>> sessions = config.sessions();
+        List<Thread> users = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int u = 0; u < config.users(); u++) {
+            List<List<TraceEvent>> mine = new ArrayList<>();
+            if (sessions.size() >= config.users()) {
+                for (int k = u; k < sessions.size(); k += config.users())
+                    mine.add(sessions.get(k));
+            } else {
+                mine.add(sessions.get(u % sessions.size()));
+            }
+            String board = "load-" + (u % Math.max(1, config.boards())), client = "user-" + u;
+            users.add(Thread.ofVirtual().start(() -> {
+                try {
+                    for (List<TraceEvent> session : mine)
+                        play(http, base, board, client, session, config.speed(), latencies, errors);
+                } catch (Exception e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            }));
+        }
+        for (Thread t : users)
+            t.join();
+        long elapsedNs = System.nanoTime() - start;
+        sampler.interrupt();
+        if (!failures.isEmpty())
+            throw new IllegalStateException("Replay failed", failures.get(0));
+        System.gc();
+        long heapAfter = memory.getHeapMemoryUsage().getUsed();
+
+        Map<String, Object> endpoints = new TreeMap<>();
+        long requests = 0, errorCount = 0;
+        for (Map.Entry<String, List<Long>> e : latencies.entrySet()) {
+            long[] sorted = e.getValue().stream().mapToLong(Long::longValue).sorted().toArray();
+            long failed = errors.getOrDefault(e.getKey(), new AtomicLong()).get();
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("count", sorted.length);
+            stats.put("errors", failed);
+            stats.put("p50Ms", percentile(sorted, 0.50) / 1e6);
+            stats.put("p99Ms", percentile(sorted, 0.99) / 1e6);
+            stats.put("maxMs", sorted[sorted.length - 1] / 1e6);
+            endpoints.put(e.getKey(), stats);
+            requests += sorted.length;
+            errorCount += failed;
+        }
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("users", config.users());
+        report.put("boards", Math.min(config.users(), Math.max(1, config.boards())));
+        report.put("speed", config.speed());
+        report.put("sessions", sessions.size());
+        report.put("requests", requests);
+        report.put("errors", errorCount);
+        report.put("durationMs", elapsedNs / 1e6);
+        report.put("throughputPerSec", requests / (elapsedNs / 1e9));
+        report.put("heapBeforeBytes", heapBefore);
+        report.put("heapAfterBytes", heapAfter);
+        report.put("heapPeakBytes", heapPeak.get());
+        report.put("heapGrowthBytes", heapAfter - heapBefore);
+        report.put("endpoints", endpoints);
+        return report;
+    }
+
+    // Sends the session's calls in order, keeping their recorded spacing divided by speed
+    private static void play(HttpClient http, String base, String board, String client, List<TraceEvent> session,
+            double speed, Map<String, List<Long>> latencies, Map<String, AtomicLong> errors) throws Exception {
+        long t0 = session.get(0).t(), started = System.nanoTime();
+        for (TraceEvent e : session) {
+            if (speed > 0) {
+                long due = started + (long) ((e.t() - t0) * 1e6 / speed);
+                long wait = due - System.nanoTime();
+                if (wait > 0)
+                    Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+            }
+            if (e.contentType() != null && e.contentType().startsWith("multipart/"))
+                continue; // uploads are recorded without their file
+            HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(base + e.path()))
+                    .header("X-Board-Id", board).header("X-Client-Id", client);
+            if (e.body() != null)
+                request.header("Content-Type", e.contentType() == null ? "application/json" : e.contentType())
+                        .method(e.method(), HttpRequest.BodyPublishers.ofString(e.body()));
+            else
+                request.method(e.method(), HttpRequest.BodyPublishers.noBody());
+            long sent = System.nanoTime();
+            HttpResponse<Void> response = http.send(request.build(), HttpResponse.BodyHandlers.discarding());
+            long took = System.nanoTime() - sent;
+            String endpoint = e.method() + " " + e.path().split("\\?", 2)[0];
+            latencies.computeIfAbsent(endpoint, k -> Collections.synchronizedList(new ArrayList<>()))
+                    .add(took);
+            if (response.statusCode() >= 400)
+                errors.computeIfAbsent(endpoint, k -> new AtomicLong()).incrementAndGet();
+        }
+    }
+
+    // Nearest-rank percentile
+    private static long percentile(long[] sorted, double p) {
+        int rank = (int) Math.ceil(p * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+    }
+}
@@ -0,0 +1,34 @@
+package com.painter.web_painter.bench;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import com.painter.web_painter.model.TraceEvent;
+
+// A short synthetic replay, recorded on the way, can itself be read back and replayed
+class LoadHarnessTests {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void recordedReplayCanBeReplayed() throws Exception {
+        List<List<TraceEvent>> sessions = SyntheticSessions.generate("mixed", 3, 10, 1);
+        Path trace = dir.resolve("trace.jsonl");
+        Map<String, Object> report = LoadHarness.run(new LoadHarness.Config(sessions, 3, 0, 2, trace.toString()));
+        assertEquals(30L, report.get("requests"));
+        assertEquals(0L, report.get("errors"));
+        assertTrue(((Map<?, ?>) report.get("endpoints")).containsKey("POST /api/create"));
+
+        List<List<TraceEvent>> recorded = LoadHarness.readTrace(trace);
+        assertEquals(3, recorded.size());
+        Map<String, Object> again = LoadHarness.run(new LoadHarness.Config(recorded, 3, 0, 1, null));
+        assertEquals(30L, again.get("requests"));
+        assertEquals(0L, again.get("errors"));
+    }
+}
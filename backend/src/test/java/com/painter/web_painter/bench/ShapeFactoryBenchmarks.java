@@ -0,0 +1,45 @@
+package com.painter.web_painter.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import com.painter.web_painter.Service.ShapeFactory;
+import com.painter.web_painter.model.Shape;
+
+// Turning request payloads into shapes, with and without stroke simplification
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ShapeFactoryBenchmarks {
+    @Param({ "0", "0.5" })
+    double tolerance;
+
+    private ShapeFactory factory;
+    private Map<String, Object> rectangle;
+    private Map<String, Object> stroke;
+
+    @Setup
+    public void setUp() {
+        factory = new ShapeFactory(tolerance);
+        rectangle = Map.of("x1", 10, "y1", 20, "x2", 110, "y2", 80, "color", "#000000");
+        List<Map<String, Object>> points = new ArrayList<>();
+        for (int i = 0; i < 500; i++)
+            points.add(Map.of("x", 100 + i * 0.5, "y", 100 + Math.sin(i / 20.0) * 40));
+        stroke = Map.of("points", points, "color", "#000000");
+    }
+
+    @Benchmark
+    public Shape createRectangle() {
+        return factory.createShape("rectangle", rectangle);
+    }
+
+    @Benchmark
+    public Shape createFreehand500() {
+        return factory.createShape("freehand", stroke);
+    }
+}
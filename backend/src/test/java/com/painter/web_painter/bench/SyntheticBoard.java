@@ -0,0 +1,77 @@
+package com.painter.web_painter.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import org.springframework.mock.web.MockMultipartFile;
+import com.painter.web_painter.Service.BoardRegistry;
+import com.painter.web_painter.Service.BoardSession;
+import com.painter.web_painter.Service.DrawingFormat;
+import com.painter.web_painter.Service.DrawingIO;
+import com.painter.web_painter.Service.PaintService;
+import com.painter.web_painter.model.*;
+
+// Builds boards of rectangles, circles and short mouse-like strokes over a 4000x4000 area
+final class SyntheticBoard {
+    static final double SIZE = 4000;
+
+    private SyntheticBoard() {
+    }
+
+    static List<Shape> shapes(int count, long seed) {
+        Random rnd = new Random(seed);
+        String[] colors = { "#000000", "#ff0000", "#00aa00", "#0000ff" };
+        List<Shape> shapes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            double x = rnd.nextInt((int) SIZE), y = rnd.nextInt((int) SIZE);
+            String color = colors[rnd.nextInt(colors.length)];
+            Shape s;
+            if (i % 3 == 0)
+                s = stroke(rnd, x, y, 50, color);
+            else if (i % 3 == 1)
+                s = new Rectangle(x, y, 10 + rnd.nextInt(60), 10 + rnd.nextInt(60), color, "transparent");
+            else
+                s = new Circle(x, y, 5 + rnd.nextInt(30), color, "transparent");
+            s.setId(UUID.randomUUID().toString());
+            shapes.add(s);
+        }
+        return shapes;
+    }
+
+    static FreehandShape stroke(Random rnd, double x, double y, int points, String color) {
+        PackedPoints pts = new PackedPoints(points);
+        for (int p = 0; p < points; p++) {
+            x += (rnd.nextInt(9) - 4) * 0.5;
+            y += (rnd.nextInt(9) - 4) * 0.5;
+            pts.add(x, y);
+        }
+        return new FreehandShape(pts, color, "transparent");
+    }
+
+    // A service on a throwaway directory (no journal) with the shapes loaded into one board
+    static PaintService service(BoardSession session, List<Shape> shapes) {
+        try {
+            String dir = Files.createTempDirectory("painter-bench").toString();
+            PaintService paint = new PaintService(new BoardRegistry(dir, Long.MAX_VALUE, 1 << 26), new DrawingIO());
+            paint.loadFromFile(session, file(shapes, DrawingFormat.BINARY));
+            return paint;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static MockMultipartFile file(List<Shape> shapes, DrawingFormat format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new DrawingIO().write(shapes, out, format, false);
+        return new MockMultipartFile("file", "board." + extension(format), null, out.toByteArray());
+    }
+
+    private static String extension(DrawingFormat format) {
+        return format == DrawingFormat.BINARY ? "bin" : format.name().toLowerCase();
+    }
+}
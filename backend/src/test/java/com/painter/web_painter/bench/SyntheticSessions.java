@@ -0,0 +1,99 @@
+package com.painter.web_painter.bench;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.painter.web_painter.model.TraceEvent;
+
+/**
+ * Generates client sessions in the trace format for load replay. Kinds:
+ * freehand (long strokes every ~80ms), drag (one shape dragged with a move every 16ms),
+ * paste (a copied shape pasted every 8ms) and mixed (sessions cycle through the other three).
+ */
+final class SyntheticSessions {
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private SyntheticSessions() {
+    }
+
+    static List<List<TraceEvent>> generate(String kind, int sessions, int eventsPerSession, long seed) {
+        Random rnd = new Random(seed);
+        String[] kinds = { "freehand", "drag", "paste" };
+        List<List<TraceEvent>> result = new ArrayList<>();
+        for (int i = 0; i < sessions; i++) {
+            String k = kind.equals("mixed") ? kinds[i % kinds.length] : kind;
+            Session s = new Session("c" + i);
+            switch (k) {
+                case "freehand" -> freehand(s, rnd, eventsPerSession);
+                case "drag" -> drag(s, rnd, eventsPerSession);
+                case "paste" -> paste(s, rnd, eventsPerSession);
+                default -> throw new IllegalArgumentException("Unknown session kind " + k);
+            }
+            result.add(s.events);
+        }
+        return result;
+    }
+
+    private static void freehand(Session s, Random rnd, int events) {
+        for (int i = 0; i < events; i++) {
+            List<Map<String, Object>> points = new ArrayList<>();
+            double x = rnd.nextInt(2000), y = rnd.nextInt(2000);
+            for (int p = 300 + rnd.nextInt(1200); p > 0; p--) {
+                x += rnd.nextGaussian() * 2;
+                y += rnd.nextGaussian() * 2;
+                points.add(Map.of("x", x, "y", y));
+            }
+            s.post("/api/create", Map.of("type", "freehand", "params", Map.of("points", points, "color", "#000000")));
+            s.t += 40 + rnd.nextInt(80);
+        }
+    }
+
+    private static void drag(Session s, Random rnd, int events) {
+        double x = rnd.nextInt(2000), y = rnd.nextInt(2000);
+        s.post("/api/create", Map.of("type", "rectangle",
+                "params", Map.of("x1", x, "y1", y, "x2", x + 80, "y2", y + 60, "color", "#0000ff")));
+        s.post("/api/select", Map.of("x", x + 40, "y", y + 30));
+        s.post("/api/move/start", null);
+        for (int i = 3; i < events - 1; i++) {
+            s.t += 16;
+            s.post("/api/move", Map.of("dx", rnd.nextInt(5) - 2, "dy", rnd.nextInt(5) - 2));
+        }
+        s.post("/api/move/end", null);
+    }
+
+    private static void paste(Session s, Random rnd, int events) {
+        double x = rnd.nextInt(2000), y = rnd.nextInt(2000);
+        s.post("/api/create", Map.of("type", "circle",
+                "params", Map.of("x1", x, "y1", y, "x2", x + 15, "y2", y, "color", "#ff0000")));
+        s.post("/api/select", Map.of("x", x, "y", y));
+        s.post("/api/copy", null);
+        for (int i = 3; i < events; i++) {
+            s.t += 8;
+            s.post("/api/paste", Map.of("x", rnd.nextInt(4000), "y", rnd.nextInt(4000)));
+        }
+    }
+
+    private static final class Session {
+        final String client;
+        final List<TraceEvent> events = new ArrayList<>();
+        long t = 0;
+
+        Session(String client) {
+            this.client = client;
+        }
+
+        void post(String path, Map<String, Object> body) {
+            try {
+                String json = body == null ? null : JSON.writeValueAsString(new LinkedHashMap<>(body));
+                events.add(new TraceEvent(t, "load", client, "POST", path, json == null ? null : "application/json",
+                        json));
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
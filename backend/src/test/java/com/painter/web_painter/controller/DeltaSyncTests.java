@@ -0,0 +1,90 @@
+package com.painter.web_painter.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.painter.web_painter.Service.BoardSession;
+import com.painter.web_painter.Service.PaintService;
+import com.painter.web_painter.Service.ShapeFactory;
+import com.painter.web_painter.model.Shape;
+
+// GET /api/shapes: ?since= returns only what changed, the version is the ETag, and stale clients get everything
+@SpringBootTest(properties = { "painter.boards.dir=target/test-boards", "painter.journal.enabled=false" })
+@AutoConfigureMockMvc
+class DeltaSyncTests {
+    private static final String BOARD = "delta-sync";
+
+    @Autowired
+    MockMvc mvc;
+
+    @Autowired
+    PaintService paint;
+
+    private final ShapeFactory factory = new ShapeFactory();
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final BoardSession session = BoardSession.of(BOARD, "c");
+
+    @Test
+    void deltasEtagsAndResyncs() throws Exception {
+        Shape a = rect(0), b = rect(50);
+        paint.addShape(session, a);
+        MvcResult all = mvc.perform(get("/api/shapes").header("X-Board-Id", BOARD)).andExpect(status().isOk())
+                .andReturn();
+        String etag = all.getResponse().getHeader("ETag");
+        long seen = paint.getVersion(session);
+        assertEquals("\"" + seen + "\"", etag);
+        assertEquals(1, mapper.readTree(all.getResponse().getContentAsString()).size());
+
+        mvc.perform(get("/api/shapes").header("X-Board-Id", BOARD).header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+        mvc.perform(get("/api/shapes").param("since", String.valueOf(seen)).header("X-Board-Id", BOARD)
+                .header("If-None-Match", etag)).andExpect(status().isNotModified());
+
+        paint.addShape(session, b);
+        paint.selectShapeAt(session, 5, 5);
+        paint.deleteSelected(session);
+        JsonNode delta = since(seen);
+        assertFalse(delta.get("full").asBoolean());
+        assertEquals(paint.getVersion(session), delta.get("version").asLong());
+        assertEquals(List.of(b.getId()), ids(delta.get("upserts")));
+        assertEquals(a.getId(), delta.get("deleted").get(0).asText());
+        assertTrue(ids(since(delta.get("version").asLong()).get("upserts")).isEmpty()); // caught up
+
+        for (long stale : new long[] { 0, paint.getVersion(session) + 1000 }) { // from before a restart, or bogus
+            JsonNode resync = since(stale);
+            assertTrue(resync.get("full").asBoolean());
+            assertEquals(List.of(b.getId()), ids(resync.get("upserts")));
+        }
+    }
+
+    private JsonNode since(long version) throws Exception {
+        MvcResult result = mvc.perform(get("/api/shapes").param("since", String.valueOf(version))
+                .header("X-Board-Id", BOARD)).andExpect(status().isOk()).andReturn();
+        assertEquals("\"" + paint.getVersion(session) + "\"", result.getResponse().getHeader("ETag"));
+        return mapper.readTree(result.getResponse().getContentAsString());
+    }
+
+    private static List<String> ids(JsonNode upserts) {
+        List<String> ids = new ArrayList<>();
+        upserts.forEach(u -> ids.add(u.get("shape").get("id").asText()));
+        return ids;
+    }
+
+    private Shape rect(double x) {
+        return factory.createShape("rectangle", Map.of("x1", x, "y1", 0, "x2", x + 10, "y2", 10));
+    }
+}
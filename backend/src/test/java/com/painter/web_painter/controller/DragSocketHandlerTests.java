@@ -0,0 +1,142 @@
+package com.painter.web_painter.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import com.painter.web_painter.Service.Board;
+import com.painter.web_painter.Service.BoardRegistry;
+import com.painter.web_painter.Service.BoardSession;
+import com.painter.web_painter.Service.DrawingIO;
+import com.painter.web_painter.Service.PaintService;
+import com.painter.web_painter.Service.ShapeFactory;
+import com.painter.web_painter.model.Rectangle;
+
+// Drag messages are summed and applied once per tick as one undo step, per board on their own threads:
+// a board held by a long write doesn't hold up the others
+class DragSocketHandlerTests {
+
+    @TempDir
+    Path dir;
+
+    private DragSocketHandler handler;
+
+    @AfterEach
+    void stop() {
+        if (handler != null)
+            handler.shutdown();
+    }
+
+    @Test
+    @Timeout(30)
+    void busyBoardDoesNotDelayOtherBoards() throws Exception {
+        BoardRegistry registry = new BoardRegistry(dir.toString(), 60_000, 1 << 24);
+        PaintService paint = new PaintService(registry, new DrawingIO());
+        handler = new DragSocketHandler(paint, 3_600_000); // ticks are driven by the test
+        for (String board : new String[] { "a", "b" }) {
+            BoardSession session = BoardSession.of(board, "c");
+            paint.addShape(session, new ShapeFactory().createShape("rectangle",
+                    Map.of("x1", 0, "y1", 0, "x2", 10, "y2", 10)));
+            paint.selectShapeAt(session, 5, 5);
+        }
+        BlockingQueue<String> sentA = new LinkedBlockingQueue<>(), sentB = new LinkedBlockingQueue<>();
+        WebSocketSession a = socket("1", "a", sentA), b = socket("2", "b", sentB);
+        handler.afterConnectionEstablished(a);
+        handler.afterConnectionEstablished(b);
+        handler.handleMessage(a, new TextMessage("{\"op\":\"start\"}"));
+        handler.handleMessage(b, new TextMessage("{\"op\":\"start\"}"));
+
+        Board busy = registry.get("a");
+        busy.lock(); // e.g. a long batch on board a
+        try {
+            for (WebSocketSession s : new WebSocketSession[] { a, b })
+                handler.handleMessage(s, new TextMessage("{\"op\":\"move\",\"dx\":10,\"dy\":0}"));
+            handler.tick();
+            assertNotNull(sentB.poll(5, TimeUnit.SECONDS));
+            assertEquals(10, paint.getSelectedShape(BoardSession.of("b", "c")).getX());
+            handler.handleMessage(a, new TextMessage("{\"op\":\"move\",\"dx\":5,\"dy\":0}"));
+            handler.tick(); // board a's flush is still waiting: skipped, its deltas keep summing
+            assertNull(sentA.poll(100, TimeUnit.MILLISECONDS));
+        } finally {
+            busy.unlock();
+        }
+        assertNotNull(sentA.poll(5, TimeUnit.SECONDS));
+        handler.tick();
+        handler.afterConnectionClosed(a, CloseStatus.NORMAL); // flushes what is left and ends the drag
+        handler.afterConnectionClosed(b, CloseStatus.NORMAL);
+        assertEquals(15, paint.getSelectedShape(BoardSession.of("a", "c")).getX());
+    }
+
+    @Test
+    @Timeout(30)
+    void coalescesADragIntoOneUndoStep() throws Exception {
+        BoardRegistry registry = new BoardRegistry(dir.toString(), 60_000, 1 << 24);
+        PaintService paint = new PaintService(registry, new DrawingIO());
+        handler = new DragSocketHandler(paint, 3_600_000);
+        BoardSession session = BoardSession.of("a", "c");
+        paint.addShape(session, new ShapeFactory().createShape("rectangle",
+                Map.of("x1", 0, "y1", 0, "x2", 10, "y2", 10)));
+        paint.selectShapeAt(session, 5, 5);
+        long before = paint.getVersion(session);
+        int steps = registry.get("a").getHistory().getUndoDepth();
+        BlockingQueue<String> sent = new LinkedBlockingQueue<>();
+        WebSocketSession socket = socket("1", "a", sent);
+        handler.afterConnectionEstablished(socket);
+
+        handler.handleMessage(socket, new TextMessage("{\"op\":\"start\"}"));
+        for (int i = 0; i < 100; i++)
+            handler.handleMessage(socket, new TextMessage("{\"op\":\"move\",\"dx\":1,\"dy\":2}"));
+        handler.handleMessage(socket,
+                new TextMessage("{\"op\":\"resize\",\"anchor\":\"bottom-right\",\"dx\":3,\"dy\":3}"));
+        handler.handleMessage(socket,
+                new TextMessage("{\"op\":\"resize\",\"anchor\":\"bottom-right\",\"dx\":2,\"dy\":2}"));
+        assertEquals(before, paint.getVersion(session)); // nothing is applied before a tick
+        handler.tick();
+        assertNotNull(sent.poll(5, TimeUnit.SECONDS));
+        assertEquals(before + 2, paint.getVersion(session)); // one move and one resize
+        assertNull(sent.poll(100, TimeUnit.MILLISECONDS)); // one message back per tick
+        for (int i = 0; i < 10; i++)
+            handler.handleMessage(socket, new TextMessage("{\"op\":\"move\",\"dx\":1,\"dy\":0}"));
+        handler.handleMessage(socket, new TextMessage("{\"op\":\"end\"}"));
+
+        Rectangle moved = (Rectangle) paint.getSelectedShape(session);
+        assertEquals(110, moved.getX());
+        assertEquals(200, moved.getY());
+        assertEquals(15, moved.getWidth());
+        assertEquals(steps + 1, registry.get("a").getHistory().getUndoDepth());
+        paint.undo(session);
+        Rectangle restored = (Rectangle) paint.getSelectedShape(session);
+        assertEquals(0, restored.getX());
+        assertEquals(10, restored.getWidth());
+        handler.afterConnectionClosed(socket, CloseStatus.NORMAL);
+    }
+
+    // A connected drag socket that records what is sent to it
+    static WebSocketSession socket(String id, String board, BlockingQueue<String> sent) throws Exception {
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn(id);
+        when(session.getUri()).thenReturn(URI.create("ws://localhost/api/drag?board=" + board + "&client=c"));
+        when(session.isOpen()).thenReturn(true);
+        doAnswer(call -> sent.add(((WebSocketMessage<?>) call.getArgument(0)).getPayload().toString()))
+                .when(session).sendMessage(any());
+        return session;
+    }
+}
@@ -0,0 +1,60 @@
+package com.painter.web_painter.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+// /api/simplify/stats counts every stroke created (all samples kept by default) and /api/simplify reports savings
+@SpringBootTest(properties = { "painter.boards.dir=target/test-boards", "painter.journal.enabled=false" })
+@AutoConfigureMockMvc
+class SimplifyEndpointTests {
+    private static final String BOARD = "simplify-endpoint";
+
+    @Autowired
+    MockMvc mvc;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void statsAndBoardSimplification() throws Exception {
+        JsonNode before = stats();
+        List<Map<String, Object>> points = new ArrayList<>();
+        for (int i = 0; i <= 50; i++)
+            points.add(Map.of("x", i, "y", i % 2 == 0 ? 0 : 0.1));
+        String stroke = mapper.writeValueAsString(Map.of("type", "freehand", "params", Map.of("points", points)));
+        mvc.perform(post("/api/create").header("X-Board-Id", BOARD).contentType(MediaType.APPLICATION_JSON)
+                .content(stroke)).andExpect(status().isOk());
+
+        JsonNode after = stats();
+        assertEquals(1, after.get("strokes").asLong() - before.get("strokes").asLong());
+        assertEquals(51, after.get("pointsBefore").asLong() - before.get("pointsBefore").asLong());
+        assertEquals(51, after.get("pointsAfter").asLong() - before.get("pointsAfter").asLong());
+
+        String answer = mvc.perform(post("/api/simplify").header("X-Board-Id", BOARD)
+                .contentType(MediaType.APPLICATION_JSON).content("{\"tolerance\":0.5}")).andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        JsonNode result = mapper.readTree(answer);
+        assertEquals(1, result.get("strokes").asInt());
+        assertEquals(51, result.get("pointsBefore").asLong());
+        assertEquals(2, result.get("pointsAfter").asLong());
+        assertEquals(49, result.get("pointsSaved").asLong());
+    }
+
+    private JsonNode stats() throws Exception {
+        return mapper.readTree(mvc.perform(get("/api/simplify/stats")).andExpect(status().isOk()).andReturn()
+                .getResponse().getContentAsString());
+    }
+}
@@ -0,0 +1,52 @@
+package com.painter.web_painter.model;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+
+// Freehand points survive JSON both as [{x,y},...] and flat [x0,y0,...], and XML, without losing precision
+class PackedPointsTests {
+    private static final double[] FLAT = { 0, 0, -1.5, 2.25, 0.1 + 0.2, 1e-7, 987654321.125, -3 };
+
+    private final ObjectMapper json = new ObjectMapper();
+
+    @Test
+    void roundTripsBothJsonForms() throws Exception {
+        FreehandShape stroke = new FreehandShape(PackedPoints.wrap(FLAT.clone()), "#000", null);
+
+        String objects = json.writeValueAsString(stroke);
+        assertTrue(objects.contains("\"points\":[{\"x\":0.0,\"y\":0.0},{\"x\":-1.5,\"y\":2.25},"));
+        assertArrayEquals(FLAT, points(objects));
+
+        String flat = json.writer().withAttribute(PackedPointsSerializer.FLAT, true).writeValueAsString(stroke);
+        assertTrue(flat.contains("\"points\":[0.0,0.0,-1.5,2.25,0.30000000000000004,1.0E-7,"));
+        assertArrayEquals(FLAT, points(flat));
+
+        // what clients send: integers, unknown fields, a missing coordinate
+        assertArrayEquals(new double[] { 1, 2, 3, 0 },
+                points("{\"type\":\"freehand\",\"points\":[{\"x\":1,\"y\":2,\"pressure\":0.5},{\"x\":3}]}"));
+        assertArrayEquals(new double[] { 1, 2 }, points("{\"type\":\"freehand\",\"points\":[1,2]}"));
+        assertArrayEquals(new double[0], points("{\"type\":\"freehand\",\"points\":[]}"));
+        assertThrows(JsonMappingException.class, () -> points("{\"type\":\"freehand\",\"points\":[\"a\"]}"));
+    }
+
+    @Test
+    void roundTripsXml() throws Exception {
+        XmlMapper xml = new XmlMapper();
+        for (double[] flat : new double[][] { FLAT, { 4, 5 } }) { // one point is read back from a lone element
+            String written = xml.writeValueAsString(new FreehandShape(PackedPoints.wrap(flat.clone()), "#000", null));
+            FreehandShape read = (FreehandShape) xml.readValue(written, Shape.class);
+            assertArrayEquals(flat, read.getPoints().toFlatArray());
+        }
+    }
+
+    private double[] points(String shape) throws Exception {
+        return ((FreehandShape) json.readValue(shape, Shape.class)).getPoints().toFlatArray();
+    }
+}